@@ -0,0 +1,49 @@
+package assignment;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of same-sized byte arrays, so every response doesn't allocate (and throw away) its own
+ * buffers.
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final int maxPooled;
+    private final ArrayDeque<byte[]> free;
+
+    /**
+     * @param bufferSize the size of every buffer handed out
+     * @param maxPooled the most buffers to hold onto when they aren't in use
+     */
+    public BufferPool(int bufferSize, int maxPooled) {
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        free = new ArrayDeque<>(maxPooled);
+    }
+
+    /**
+     * @return the size of the buffers in this pool
+     */
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * takes a buffer out of the pool, allocating one if none are free
+     * @return a buffer of getBufferSize() bytes, with unspecified contents
+     */
+    public synchronized byte[] acquire() {
+        byte[] buffer = free.poll();
+        return buffer == null ? new byte[bufferSize] : buffer;
+    }
+
+    /**
+     * returns a buffer to the pool; it must not be used by the caller afterwards
+     * @param buffer a buffer obtained from acquire()
+     */
+    public synchronized void release(byte[] buffer) {
+        if (buffer != null && buffer.length == bufferSize && free.size() < maxPooled) {
+            free.push(buffer);
+        }
+    }
+}
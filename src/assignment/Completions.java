@@ -0,0 +1,234 @@
+package assignment;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Completes the start of a word to the words in the index that start with it and are on the most
+ * pages. The words are sorted, so those starting with any prefix are a range of them, and a
+ * prefix is a node of the trie over them. Every node with more than TOP_K words below it keeps
+ * its TOP_K best; anything smaller is just sorted when it's asked for. So a completion costs two
+ * binary searches and never looks at more than TOP_K words, however many words there are.
+ * <p>
+ * The words are kept as one char array rather than Strings, like PostingStore's dictionary, so
+ * the garbage collector has little to trace.
+ */
+public class Completions implements Serializable {
+    private static final long serialVersionUID = 1L;
+    // the most completions kept for each prefix
+    public static final int TOP_K = 10;
+
+    // every word, in order: word i is chars[starts[i]] up to chars[starts[i + 1]]
+    private final char[] chars;
+    private final int[] starts;
+    // how many pages each word is on
+    private final int[] frequencies;
+    // the nodes with more than TOP_K words, by their range of words (first << 32 | end), sorted,
+    // and the best TOP_K words of each, one node after another
+    private final long[] nodes;
+    private final int[] best;
+
+    /**
+     * builds the completions of every word in an index
+     * @param index the index
+     */
+    public Completions(WebIndex index) {
+        String[] words = new String[index.getTermCount()];
+        int count = 0;
+        for (int term = 0; term < words.length; term++) {
+            String word = index.getTerm(term);
+            // words only in the text of links aren't on any page to complete to
+            if (index.getDocFrequency(word) > 0) {
+                words[count++] = word;
+            }
+        }
+        words = Arrays.copyOf(words, count);
+        Arrays.sort(words);
+
+        int length = 0;
+        for (String word : words) {
+            length += word.length();
+        }
+        chars = new char[length];
+        starts = new int[count + 1];
+        frequencies = new int[count];
+        for (int i = 0; i < count; i++) {
+            words[i].getChars(0, words[i].length(), chars, starts[i]);
+            starts[i + 1] = starts[i] + words[i].length();
+            frequencies[i] = index.getDocFrequency(words[i]);
+        }
+
+        ArrayList<Long> found = new ArrayList<>();
+        ArrayList<int[]> lists = new ArrayList<>();
+        build(0, count, 0, found, lists);
+
+        // the nodes were found children first, so sort them by range for binary searching
+        Integer[] order = new Integer[found.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (Integer a, Integer b) -> Long.compare(found.get(a), found.get(b)));
+        nodes = new long[order.length];
+        best = new int[order.length * TOP_K];
+        for (int i = 0; i < order.length; i++) {
+            nodes[i] = found.get(order[i]);
+            System.arraycopy(lists.get(order[i]), 0, best, i * TOP_K, TOP_K);
+        }
+    }
+
+    /**
+     * finds the best words of a node and each node below it, keeping those of the big ones
+     * @param first the node's first word
+     * @param end the index after its last word
+     * @param depth the length of the node's prefix, which all its words share
+     * @return its best words, best first, up to TOP_K of them
+     */
+    private int[] build(int first, int end, int depth, List<Long> found, List<int[]> lists) {
+        if (end - first <= TOP_K) {
+            return top(first, end);
+        }
+
+        // the prefix itself, if it's a word, sorts first; then the words for each next char
+        int[] candidates = new int[0];
+        int child = first;
+        if (length(child) == depth) {
+            candidates = new int[] {child++};
+        }
+        while (child < end) {
+            char c = charAt(child, depth);
+            int childEnd = child + 1;
+            while (childEnd < end && charAt(childEnd, depth) == c) {
+                childEnd++;
+            }
+
+            if (child == first && childEnd == end) {
+                // every word goes the same way, so this node has the same words as its child
+                return build(child, childEnd, depth + 1, found, lists);
+            }
+            int[] childBest = build(child, childEnd, depth + 1, found, lists);
+            int[] merged = Arrays.copyOf(candidates, candidates.length + childBest.length);
+            System.arraycopy(childBest, 0, merged, candidates.length, childBest.length);
+            candidates = merged;
+            child = childEnd;
+        }
+
+        int[] top = Arrays.copyOf(sortByFrequency(candidates), TOP_K);
+        found.add((long) first << 32 | end);
+        lists.add(top);
+        return top;
+    }
+
+    /**
+     * @return the words in a range, best first, up to TOP_K of them
+     */
+    private int[] top(int first, int end) {
+        int[] words = new int[end - first];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = first + i;
+        }
+        int[] sorted = sortByFrequency(words);
+        return sorted.length > TOP_K ? Arrays.copyOf(sorted, TOP_K) : sorted;
+    }
+
+    /**
+     * @return the words, on the most pages first, and in order where that's the same
+     */
+    private int[] sortByFrequency(int[] words) {
+        // the words are in order already, and this sort is stable, so ties stay in order
+        Integer[] boxed = new Integer[words.length];
+        for (int i = 0; i < words.length; i++) {
+            boxed[i] = words[i];
+        }
+        Arrays.sort(boxed, (Integer a, Integer b) -> Integer.compare(frequencies[b], frequencies[a]));
+        int[] sorted = new int[words.length];
+        for (int i = 0; i < words.length; i++) {
+            sorted[i] = boxed[i];
+        }
+        return sorted;
+    }
+
+    /**
+     * @param prefix the start of a word, in lower case, as words are indexed
+     * @param limit the most completions to return; no more than TOP_K are kept
+     * @return the words starting with the prefix that are on the most pages, best first
+     */
+    public List<String> complete(String prefix, int limit) {
+        int first = search(prefix, false);
+        int end = search(prefix, true);
+        limit = Math.min(limit, TOP_K);
+
+        int[] words;
+        int from, count;
+        if (end - first <= TOP_K) {
+            words = top(first, end);
+            from = 0;
+            count = Math.min(limit, words.length);
+        } else {
+            words = best;
+            from = Arrays.binarySearch(nodes, (long) first << 32 | end) * TOP_K;
+            count = limit;
+        }
+
+        List<String> completions = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            completions.add(word(words[i]));
+        }
+        return completions;
+    }
+
+    /**
+     * @param after whether to find the first word past those starting with the prefix, rather
+     *              than the first that starts with it
+     * @return the index of that word
+     */
+    private int search(String prefix, boolean after) {
+        int low = 0, high = frequencies.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = comparePrefix(mid, prefix);
+            if (cmp < 0 || (after && cmp == 0)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * compares a word, cut to the prefix's length, to the prefix
+     */
+    private int comparePrefix(int word, String prefix) {
+        int start = starts[word];
+        int length = Math.min(length(word), prefix.length());
+        for (int i = 0; i < length; i++) {
+            char c = chars[start + i];
+            char p = prefix.charAt(i);
+            if (c != p) {
+                return c - p;
+            }
+        }
+        return length == prefix.length() ? 0 : -1;
+    }
+
+    /**
+     * @return how many words there are to complete to
+     */
+    public int size() {
+        return frequencies.length;
+    }
+
+    private int length(int word) {
+        return starts[word + 1] - starts[word];
+    }
+
+    private char charAt(int word, int i) {
+        return chars[starts[word] + i];
+    }
+
+    private String word(int word) {
+        return new String(chars, starts[word], length(word));
+    }
+}
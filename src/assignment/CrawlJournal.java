@@ -0,0 +1,474 @@
+package assignment;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of a crawl, one entry per page the crawler finished with, so a crawl that
+ * dies part way can be resumed. Each entry holds what the CrawlingMarkupHandler took from the
+ * page (its words, title, headings, links and anchor text), which is all it needs to index the
+ * page again without fetching or parsing it. Replaying the entries in order rebuilds the index,
+ * the set of URLs seen, and, as the URLs seen that no entry is for, the frontier.
+ * <p>
+ * Entries are VBytes, with words as IDs in a dictionary the journal builds up as it goes, and
+ * links as what they don't share with the link before, so an entry is well under half the size
+ * of the page it's of.
+ * <p>
+ * Entries are written as their length, their CRC32 and then their bytes, so one cut short by a
+ * crash is noticed and dropped. They're buffered, and only flushed and synced to disk at
+ * checkpoints, every CHECKPOINT_MILLIS or so; pages whose entries didn't make it are fetched again.
+ * All of this happens on the journal's own thread, while the crawl carries on.
+ */
+public class CrawlJournal implements Closeable {
+    private static final long CHECKPOINT_MILLIS = 10000;
+    // entries bigger than this can only be corrupt, however many words a page has
+    private static final int MAX_ENTRY_LENGTH = 1 << 30;
+    private static final int MAX_QUEUED = 256;
+
+    private final File file;
+    // how much of the file is complete entries, found by replay()
+    private long validLength;
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private long lastCheckpoint;
+    // entries, and checkpoints, waiting to be written by the journal's own thread, so encoding
+    // and writing them costs the crawl's thread nothing
+    private final ArrayBlockingQueue<Object> queue = new ArrayBlockingQueue<>(MAX_QUEUED);
+    private volatile Thread writer;
+    // what went wrong writing, if anything has
+    private volatile IOException failure;
+    // each entry is put together here first, so its length and CRC32 can go in front of it
+    private final VByte entryBytes = new VByte(1 << 16);
+    private final CRC32 crc = new CRC32();
+    // every distinct word in the journal so far, in the order they first appeared, by ID
+    private final ArrayList<String> dictionary = new ArrayList<>();
+    private final HashMap<String, Integer> wordIds = new HashMap<>();
+
+    /**
+     * One page the crawler finished with. A page that couldn't be fetched or parsed has only its
+     * URL and the new URLs it was found to link to before it failed.
+     */
+    public static class Entry {
+        // the page's canonical URL
+        public final String url;
+        // whether the page was parsed to the end, and so has words and was indexed
+        public final boolean parsed;
+        public final long fetchTime;
+        // the page's title, as it was indexed, or null
+        public final String title;
+        public final List<String> words;
+        public final List<String> titleWords;
+        public final List<String> headingWords;
+        // the canonical URLs of the page's links, in the order they were found
+        public final List<String> links;
+        // the links with anchor text, as where they are in links, in increasing order, and the
+        // words of each
+        public final int[] anchorLinks;
+        public final List<List<String>> anchorWords;
+
+        /**
+         * an entry for a page that was parsed to the end
+         */
+        public Entry(String url, long fetchTime, String title, List<String> words, List<String> titleWords,
+                     List<String> headingWords, List<String> links, int[] anchorLinks,
+                     List<List<String>> anchorWords) {
+            this(url, true, fetchTime, title, words, titleWords, headingWords, links, anchorLinks, anchorWords);
+        }
+
+        /**
+         * an entry for a page that couldn't be fetched or parsed
+         * @param links the new URLs it linked to before it failed
+         */
+        public Entry(String url, List<String> links) {
+            this(url, false, 0, null, Collections.emptyList(), Collections.emptyList(), Collections.emptyList(),
+                    links, new int[0], Collections.emptyList());
+        }
+
+        private Entry(String url, boolean parsed, long fetchTime, String title, List<String> words,
+                      List<String> titleWords, List<String> headingWords, List<String> links,
+                      int[] anchorLinks, List<List<String>> anchorWords) {
+            this.url = url;
+            this.parsed = parsed;
+            this.fetchTime = fetchTime;
+            this.title = title;
+            this.words = words;
+            this.titleWords = titleWords;
+            this.headingWords = headingWords;
+            this.links = links;
+            this.anchorLinks = anchorLinks;
+            this.anchorWords = anchorWords;
+        }
+    }
+
+    /**
+     * Something done with each entry of a journal being replayed.
+     */
+    public interface Visitor {
+        void visit(Entry entry) throws IOException;
+    }
+
+    /**
+     * @param file where the journal is; nothing is read or written until replay() or start()
+     */
+    public CrawlJournal(File file) {
+        this.file = file;
+    }
+
+    /**
+     * reads every complete entry in the journal, in the order they were written, stopping at the
+     * first one that's cut short or corrupt
+     * @param visitor what to do with each entry
+     * @return how many entries there were
+     */
+    public int replay(Visitor visitor) throws IOException {
+        validLength = 0;
+        dictionary.clear();
+        wordIds.clear();
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int count = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            byte[] bytes = new byte[1 << 16];
+            while (true) {
+                int length, checksum;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0 || length > MAX_ENTRY_LENGTH) {
+                        break;
+                    }
+                    if (bytes.length < length) {
+                        bytes = new byte[Math.max(length, bytes.length * 2)];
+                    }
+                    in.readFully(bytes, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+
+                crc.reset();
+                crc.update(bytes, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    System.err.printf("Error: crawl journal %s is corrupt after %d entries%n", file, count);
+                    break;
+                }
+
+                visitor.visit(readEntry(new VByte.Reader(bytes, 0)));
+                validLength += 8 + length;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Starts writing entries after those replay() read, dropping anything after them; if replay()
+     * wasn't called, the journal is started over.
+     */
+    public void start() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(validLength);
+        }
+        fileOut = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileOut, 1 << 16));
+        lastCheckpoint = System.currentTimeMillis();
+
+        writer = new Thread(this::writeQueued, "crawl-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Adds an entry to the end of the journal. It's written on the journal's own thread, so this
+     * only waits if that thread is MAX_QUEUED entries behind.
+     * @param entry the entry, whose lists mustn't change afterwards
+     * @throws IOException if an entry written before couldn't be
+     */
+    public void write(Entry entry) throws IOException {
+        throwFailure();
+        put(entry);
+    }
+
+    /**
+     * writes every entry added so far to disk, and waits for them to be synced, so they survive
+     * a crash
+     */
+    public void checkpoint() throws IOException {
+        Thread current = writer;
+        if (current != null && current.isAlive()) {
+            await(new Checkpoint(false));
+        }
+        throwFailure();
+    }
+
+    /**
+     * checkpoints, then closes the journal
+     */
+    @Override
+    public void close() throws IOException {
+        Thread current = writer;
+        if (current == null) {
+            return;
+        }
+        writer = null;
+        await(new Checkpoint(true));
+        out.close();
+        throwFailure();
+    }
+
+    private void put(Object item) throws IOException {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted writing to the crawl journal");
+        }
+    }
+
+    private void await(Checkpoint checkpoint) throws IOException {
+        put(checkpoint);
+        try {
+            checkpoint.done.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted checkpointing the crawl journal");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void throwFailure() throws IOException {
+        if (failure != null) {
+            throw new IOException("couldn't write to the crawl journal", failure);
+        }
+    }
+
+    /**
+     * the journal's thread: writes each entry as it's queued, flushing every CHECKPOINT_MILLIS,
+     * until it's closed. Once anything fails to be written, nothing more is.
+     */
+    private void writeQueued() {
+        while (true) {
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            try {
+                if (failure != null) {
+                    // nothing more can be written, but checkpoints still mustn't be left waiting
+                } else if (item instanceof Entry) {
+                    append((Entry) item);
+                    if (System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_MILLIS) {
+                        // safe from the crawler dying once they're flushed, and from the machine
+                        // dying once they're synced
+                        out.flush();
+                        fileOut.getChannel().force(false);
+                        lastCheckpoint = System.currentTimeMillis();
+                    }
+                } else {
+                    out.flush();
+                    fileOut.getFD().sync();
+                    lastCheckpoint = System.currentTimeMillis();
+                }
+            } catch (IOException e) {
+                failure = e;
+            }
+
+            if (item instanceof Checkpoint) {
+                Checkpoint checkpoint = (Checkpoint) item;
+                checkpoint.done.complete(null);
+                if (checkpoint.last) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void append(Entry entry) throws IOException {
+        entryBytes.clear();
+        writeEntry(entryBytes, entry);
+
+        crc.reset();
+        crc.update(entryBytes.array(), 0, entryBytes.length());
+        out.writeInt(entryBytes.length());
+        out.writeInt((int) crc.getValue());
+        out.write(entryBytes.array(), 0, entryBytes.length());
+    }
+
+    /**
+     * A request, in the queue with the entries, for everything before it to be synced to disk.
+     */
+    private static class Checkpoint {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        // whether the journal is being closed, so nothing comes after it
+        final boolean last;
+
+        Checkpoint(boolean last) {
+            this.last = last;
+        }
+    }
+
+    /**
+     * closes the journal and deletes it, once the crawl it's of has finished
+     */
+    public void delete() throws IOException {
+        close();
+        if (file.exists() && !file.delete()) {
+            System.err.printf("Error: couldn't delete crawl journal %s%n", file);
+        }
+    }
+
+    private void writeEntry(VByte out, Entry entry) {
+        writeString(out, entry.url);
+        out.write(entry.parsed ? 1 : 0);
+        out.write((int) (entry.fetchTime >>> 32));
+        out.write((int) entry.fetchTime);
+        out.write(entry.title != null ? 1 : 0);
+        if (entry.title != null) {
+            writeString(out, entry.title);
+        }
+        writeWords(out, entry.words);
+        writeWords(out, entry.titleWords);
+        writeWords(out, entry.headingWords);
+        writeUrls(out, entry.url, entry.links);
+        out.write(entry.anchorLinks.length);
+        int previous = 0;
+        for (int i = 0; i < entry.anchorLinks.length; i++) {
+            out.write(entry.anchorLinks[i] - previous);
+            writeWords(out, entry.anchorWords.get(i));
+            previous = entry.anchorLinks[i];
+        }
+    }
+
+    private Entry readEntry(VByte.Reader in) {
+        String url = readString(in);
+        boolean parsed = in.next() != 0;
+        long fetchTime = ((long) in.next() << 32) | (in.next() & 0xffffffffL);
+        String title = in.next() != 0 ? readString(in) : null;
+        List<String> words = readWords(in);
+        List<String> titleWords = readWords(in);
+        List<String> headingWords = readWords(in);
+        List<String> links = readUrls(in, url);
+        int[] anchorLinks = new int[in.next()];
+        List<List<String>> anchorWords = new ArrayList<>(anchorLinks.length);
+        int previous = 0;
+        for (int i = 0; i < anchorLinks.length; i++) {
+            anchorLinks[i] = previous + in.next();
+            anchorWords.add(readWords(in));
+            previous = anchorLinks[i];
+        }
+        return new Entry(url, parsed, fetchTime, title, words, titleWords, headingWords, links, anchorLinks,
+                anchorWords);
+    }
+
+    /**
+     * writes words as their IDs in the journal's dictionary, plus one, adding any that aren't in
+     * it yet as a 0 and then the word
+     */
+    private void writeWords(VByte out, List<String> words) {
+        out.write(words.size());
+        for (String word : words) {
+            Integer id = wordIds.get(word);
+            if (id != null) {
+                out.write(id + 1);
+            } else {
+                out.write(0);
+                writeString(out, word);
+                wordIds.put(word, dictionary.size());
+                dictionary.add(word);
+            }
+        }
+    }
+
+    private List<String> readWords(VByte.Reader in) {
+        int count = in.next();
+        ArrayList<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = in.next();
+            if (id > 0) {
+                words.add(dictionary.get(id - 1));
+            } else {
+                String word = readString(in);
+                wordIds.put(word, dictionary.size());
+                dictionary.add(word);
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    /**
+     * writes URLs as how much each shares with the one before (the first, with the page's own
+     * URL) and then the rest of it, as most links on a page go to the same site
+     */
+    private static void writeUrls(VByte out, String base, List<String> urls) {
+        out.write(urls.size());
+        String previous = base;
+        for (String url : urls) {
+            int shared = 0;
+            int max = Math.min(previous.length(), url.length());
+            while (shared < max && previous.charAt(shared) == url.charAt(shared)) {
+                shared++;
+            }
+            out.write(shared);
+            writeString(out, url, shared);
+            previous = url;
+        }
+    }
+
+    private static List<String> readUrls(VByte.Reader in, String base) {
+        int count = in.next();
+        ArrayList<String> urls = new ArrayList<>(count);
+        String previous = base;
+        for (int i = 0; i < count; i++) {
+            previous = previous.substring(0, in.next()) + readString(in);
+            urls.add(previous);
+        }
+        return urls;
+    }
+
+    private static void writeString(VByte out, String string) {
+        writeString(out, string, 0);
+    }
+
+    /**
+     * writes a string from the given index on as its length and then its chars, each a VByte,
+     * which for ASCII is a byte each
+     */
+    private static void writeString(VByte out, String string, int start) {
+        out.write(string.length() - start);
+        for (int i = start; i < string.length(); i++) {
+            out.write(string.charAt(i));
+        }
+    }
+
+    private static String readString(VByte.Reader in) {
+        char[] chars = new char[in.next()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) in.next();
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,208 @@
+package assignment;
+
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Counters and timers for each stage of a crawl (fetching, parsing and indexing), so it's possible
+ * to tell which one a crawl is bound by. Can print a progress line periodically while the crawl
+ * runs, and a summary when it's done.
+ */
+public class CrawlStats {
+    private final long startNanos = System.nanoTime();
+
+    private final LongAdder pages = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder postings = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final Histogram fetchTime = new Histogram();
+    private final Histogram parseTime = new Histogram();
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    private LongSupplier frontierSize = () -> 0;
+    private LongSupplier seenSize = () -> 0;
+
+    private ScheduledExecutorService reporter;
+    // what had happened as of the last progress report, so it can show current rates
+    private long lastReportNanos = startNanos, lastPages, lastBytes, lastPostings;
+
+    /**
+     * records a page that was fetched successfully
+     * @param bytesRead the size of the page
+     * @param nanos how long it took to fetch
+     */
+    public void pageFetched(long bytesRead, long nanos) {
+        pages.increment();
+        bytes.add(bytesRead);
+        fetchTime.record(nanos);
+    }
+
+    /**
+     * records how long it took to parse (and index) a page
+     * @param nanos the time attoparser reports for the whole document
+     */
+    public void pageParsed(long nanos) {
+        parseTime.record(nanos);
+    }
+
+    /**
+     * records postings being added to the index
+     * @param count how many were added
+     */
+    public void postingsAdded(long count) {
+        postings.add(count);
+    }
+
+    /**
+     * records a page that wasn't indexed because it's a near-duplicate of another
+     */
+    public void duplicateFound() {
+        duplicates.increment();
+    }
+
+    /**
+     * counts an error and reports it as a single line of key=value pairs
+     * @param kind a short name for the kind of error, such as "not_found"
+     * @param url the page the error happened on
+     * @param e the exception, or null
+     */
+    public void error(String kind, Object url, Exception e) {
+        errors.computeIfAbsent(kind, (String k) -> new LongAdder()).increment();
+        System.err.printf("crawl error kind=%s url=%s%s%n", kind, url,
+                e == null ? "" : " exception=" + e.getClass().getName());
+    }
+
+    /**
+     * tells the stats where to read the current frontier and seen-set sizes from
+     */
+    public void setSizes(LongSupplier frontierSize, LongSupplier seenSize) {
+        this.frontierSize = frontierSize;
+        this.seenSize = seenSize;
+    }
+
+    /**
+     * @return how many pages have been fetched so far
+     */
+    public long getPages() {
+        return pages.sum();
+    }
+
+    /**
+     * starts printing a progress line every so often, on a background thread
+     * @param out where to print
+     * @param periodSeconds how often to print
+     */
+    public synchronized void startReporting(PrintStream out, long periodSeconds) {
+        if (reporter != null) {
+            return;
+        }
+
+        reporter = Executors.newSingleThreadScheduledExecutor((Runnable r) -> {
+            Thread thread = new Thread(r, "crawl-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> out.println(progress()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * stops the periodic progress line, if it was started
+     */
+    public synchronized void stopReporting() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * @return one line describing the crawl since the last progress line
+     */
+    public synchronized String progress() {
+        long now = System.nanoTime();
+        double seconds = Math.max(now - lastReportNanos, 1) / 1e9;
+        long currPages = pages.sum(), currBytes = bytes.sum(), currPostings = postings.sum();
+
+        String line = String.format("crawl %.0fs: pages=%d (%.1f/s) bytes=%s (%s/s) postings=%d (%.0f/s) " +
+                        "fetch p50=%s p99=%s parse p50=%s p99=%s frontier=%d seen=%d errors=%d",
+                (now - startNanos) / 1e9,
+                currPages, (currPages - lastPages) / seconds,
+                formatBytes(currBytes), formatBytes((long) ((currBytes - lastBytes) / seconds)),
+                currPostings, (currPostings - lastPostings) / seconds,
+                formatNanos(fetchTime.getValueAtQuantile(0.5)), formatNanos(fetchTime.getValueAtQuantile(0.99)),
+                formatNanos(parseTime.getValueAtQuantile(0.5)), formatNanos(parseTime.getValueAtQuantile(0.99)),
+                frontierSize.getAsLong(), seenSize.getAsLong(), totalErrors());
+
+        lastReportNanos = now;
+        lastPages = currPages;
+        lastBytes = currBytes;
+        lastPostings = currPostings;
+        return line;
+    }
+
+    /**
+     * @return a multi-line summary of the whole crawl
+     */
+    public String summary() {
+        double seconds = Math.max(System.nanoTime() - startNanos, 1) / 1e9;
+        long totalPages = pages.sum();
+
+        StringBuilder summary = new StringBuilder();
+        summary.append(String.format("crawled %d pages in %.1fs (%.1f pages/s)%n", totalPages, seconds, totalPages / seconds));
+        summary.append(String.format("  fetched  %s (%s/s)%n", formatBytes(bytes.sum()), formatBytes((long) (bytes.sum() / seconds))));
+        summary.append(String.format("  fetch    %s%n", describe(fetchTime)));
+        summary.append(String.format("  parse    %s%n", describe(parseTime)));
+        summary.append(String.format("  fetch total %.1fs, parse total %.1fs%n", fetchTime.getSum() / 1e9, parseTime.getSum() / 1e9));
+        summary.append(String.format("  postings %d (%.0f/s)%n", postings.sum(), postings.sum() / seconds));
+        summary.append(String.format("  near-duplicates %d%n", duplicates.sum()));
+        summary.append(String.format("  frontier %d, seen %d%n", frontierSize.getAsLong(), seenSize.getAsLong()));
+
+        summary.append(String.format("  errors   %d", totalErrors()));
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(errors).entrySet()) {
+            summary.append(String.format(" %s=%d", entry.getKey(), entry.getValue().sum()));
+        }
+
+        return summary.toString();
+    }
+
+    private long totalErrors() {
+        long total = 0;
+        for (LongAdder count : errors.values()) {
+            total += count.sum();
+        }
+        return total;
+    }
+
+    private static String describe(Histogram histogram) {
+        return String.format("mean=%s p50=%s p90=%s p99=%s p999=%s max=%s",
+                formatNanos((long) histogram.getMean()),
+                formatNanos(histogram.getValueAtQuantile(0.5)), formatNanos(histogram.getValueAtQuantile(0.9)),
+                formatNanos(histogram.getValueAtQuantile(0.99)), formatNanos(histogram.getValueAtQuantile(0.999)),
+                formatNanos(histogram.getMax()));
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1000000) {
+            return String.format("%.1fus", nanos / 1e3);
+        } else if (nanos < 1000000000) {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+        return String.format("%.2fs", nanos / 1e9);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + "B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1fKB", bytes / 1024.0);
+        }
+        return String.format("%.1fMB", bytes / (1024.0 * 1024));
+    }
+}
@@ -1,7 +1,6 @@
 package assignment;
 
-import java.nio.file.FileSystems;
-import java.nio.file.Path;
+import java.io.IOException;
 import java.util.*;
 import java.net.*;
 import org.attoparser.simple.*;
@@ -11,38 +10,249 @@ import org.attoparser.simple.*;
  * responsible for building the actual web index.
  */
 public class CrawlingMarkupHandler extends AbstractSimpleMarkupHandler {
+    private static final int MAX_TITLE_LENGTH = 200;
+    // elements whose contents aren't text a reader would see: code, styles, the fallback for
+    // browsers without scripts, and markup that's only there for scripts to copy
+    private static final Set<String> SKIPPED_ELEMENTS = new HashSet<>(Arrays.asList("script", "style", "noscript", "template"));
+
     private Page currPage;
+    private URI currURI;
+    private long currFetchTime;
+    // the text of the current page's <title>, while it's being read
+    private StringBuilder title;
+    // the elements enclosing the text being read, outermost first, and how many of them are
+    // titles, headings, and elements whose text is skipped
+    private ArrayList<String> openElements;
+    private int titleDepth;
+    private int headingDepth;
+    private int skippedDepth;
     private LinkedList<URL> newURLs;
-    private HashSet<String> seen;
+    // every URL seen so far, crawled or not, by the fingerprint of its canonical form, to its ID
+    private LongIntHashMap urlIds;
+    private int currUrlId;
     private WebIndex index;
-    private boolean ignoreLastTag; // indicates whether or not we should ignore the last accessed tag
-    private int currWordLoc; // keeps track of current position in the page
+    private CrawlStats stats;
+    // the current page's words, held until the end of the page so it can be checked for duplicates
+    private ArrayList<String> pageWords;
+    // the words of the current page that are also in its title and headings
+    private ArrayList<String> pageTitleWords;
+    private ArrayList<String> pageHeadingWords;
+    // the text of the current page's links to other pages, and the link being read, if any
+    private ArrayList<Anchor> pageAnchors;
+    private Anchor anchor;
+    // anchor text of links to pages that haven't been indexed yet, by URL ID, as how many times
+    // each word is in it. Pages can have thousands of links to them, so only the counts are kept.
+    private HashMap<Integer, HashMap<String, Integer>> pendingAnchors;
+    // doc IDs of earlier pages, by their SimHash
+    private NearDuplicateDetector<Integer> duplicates;
+
+    // the doc ID each crawled URL ended up as
+    private int[] docOfUrl;
+    // the URL IDs the current page links to, and their URLs, in the order they were found
+    private int[] pageLinks;
+    private int pageLinkCount;
+    private ArrayList<String> pageLinkUrls;
+    // the links of every page in doc ID order, as a count and then sorted URL IDs. They can only
+    // be turned into a graph of doc IDs once it's known which URLs were crawled.
+    private VByte linkLog;
+    private boolean graphOutdated;
+    // where each page is logged once it's done with, so the crawl can be resumed, if anywhere
+    private CrawlJournal journal;
 
     public CrawlingMarkupHandler() {
         newURLs = new LinkedList<>();
         index = new WebIndex();
-        seen = new HashSet<>();
-        ignoreLastTag = false;
-        currWordLoc = 1;
+        urlIds = new LongIntHashMap();
+        stats = new CrawlStats();
+        pageWords = new ArrayList<>();
+        pageTitleWords = new ArrayList<>();
+        pageHeadingWords = new ArrayList<>();
+        pageAnchors = new ArrayList<>();
+        pendingAnchors = new HashMap<>();
+        title = new StringBuilder();
+        openElements = new ArrayList<>();
+        duplicates = new NearDuplicateDetector<>();
+        docOfUrl = new int[1024];
+        pageLinks = new int[64];
+        pageLinkUrls = new ArrayList<>();
+        linkLog = new VByte(1 << 16);
+    }
+
+    /**
+     * Records parse times and postings into the given stats from now on.
+     */
+    public void setStats(CrawlStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * Logs every page to the given journal from now on, once it's done with.
+     */
+    public void setJournal(CrawlJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * @return how many URLs the handler has seen, crawled or not
+     */
+    public int seenCount() {
+        return urlIds.size();
     }
 
     /**
     * This method returns the complete index that has been crawled thus far when called.
+    * The link graph and PageRank scores are brought up to date first, if any pages have been
+    * crawled since the last call.
     */
     public Index getIndex() {
+        if (graphOutdated) {
+            LinkGraph graph = buildLinkGraph();
+            index.setLinkGraph(graph, PageRank.compute(graph));
+            graphOutdated = false;
+        }
+
         return index;
     }
 
+    /**
+     * turns the links logged for each page into a graph between doc IDs, leaving out links to
+     * pages that weren't crawled, and pointing links to near-duplicates at the page they duplicate
+     */
+    private LinkGraph buildLinkGraph() {
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        VByte.Reader reader = new VByte.Reader(linkLog.array(), 0);
+        int[] targets = new int[64];
+
+        for (int doc = 0; doc < index.getDocCount(); doc++) {
+            int count = reader.next();
+            if (targets.length < count) {
+                targets = new int[count];
+            }
+            reader.nextDeltas(targets, count);
+
+            int crawled = 0;
+            for (int i = 0; i < count; i++) {
+                int target = targets[i] < docOfUrl.length ? docOfUrl[targets[i]] : -1;
+                if (target >= 0) {
+                    targets[crawled++] = target;
+                }
+            }
+            builder.add(doc, targets, crawled);
+        }
+
+        return builder.build(index.getDocCount());
+    }
+
     /**
     * This method returns any new URLs found to the Crawler; upon being called, the set of new URLs
     * should be cleared.
     */
     public List<URL> newURLs() {
-        return newURLs;
+        List<URL> found = newURLs;
+        newURLs = new LinkedList<>();
+        return found;
     }
 
+    /**
+     * Sets the page that is about to be parsed, which links are resolved against.
+     */
     public void setURL(URL currURL) {
+        currURL = canonicalize(currURL);
+        try {
+            currURI = currURL.toURI();
+        } catch (URISyntaxException e) {
+            currURI = null;
+        }
+
         currPage = new Page(currURL);
+        currFetchTime = System.currentTimeMillis();
+        currUrlId = urlIdOf(currPage.toString());
+    }
+
+    /**
+     * @param url a URL
+     * @return its canonical form, as the handler keeps track of it, or the URL itself if it
+     *         can't be canonicalized
+     */
+    public static URL canonicalize(URL url) {
+        String canonical = UrlCanonicalizer.canonicalize(url.toString());
+        try {
+            return canonical != null ? new URL(canonical) : url;
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+
+    /**
+     * Logs a page that couldn't be fetched or parsed to the journal, along with any new URLs it
+     * was found to link to, so a resumed crawl neither fetches it again nor misses those URLs.
+     * Call this before newURLs().
+     * @param url the page's URL
+     */
+    public void pageFailed(URL url) {
+        ArrayList<String> links = new ArrayList<>(newURLs.size());
+        for (URL link : newURLs) {
+            links.add(link.toString());
+        }
+        writeJournal(new CrawlJournal.Entry(canonicalize(url).toString(), links));
+    }
+
+    /**
+     * Indexes a page logged in a journal by an earlier crawl, as it was indexed then, without
+     * fetching or parsing it again. The new URLs it links to come out of newURLs() as usual.
+     * @param entry the page's entry in the journal
+     */
+    public void replay(CrawlJournal.Entry entry) throws MalformedURLException {
+        setURL(new URL(entry.url));
+        currFetchTime = entry.fetchTime;
+        handleDocumentStart(0, 0, 0);
+        for (String link : entry.links) {
+            addLink(link);
+        }
+        if (!entry.parsed) {
+            return;
+        }
+
+        pageWords.addAll(entry.words);
+        pageTitleWords.addAll(entry.titleWords);
+        pageHeadingWords.addAll(entry.headingWords);
+        for (int i = 0; i < entry.anchorLinks.length; i++) {
+            Anchor link = new Anchor(pageLinks[entry.anchorLinks[i]], entry.anchorLinks[i]);
+            link.words.addAll(entry.anchorWords.get(i));
+            pageAnchors.add(link);
+        }
+        indexPage(entry.title);
+    }
+
+    private void writeJournal(CrawlJournal.Entry entry) {
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            journal.write(entry);
+        } catch (IOException e) {
+            System.err.println("Error: couldn't write to the crawl journal, so this crawl can't be resumed: " + e);
+            journal = null;
+        }
+    }
+
+    /**
+     * @param url a canonical URL
+     * @return its ID, which is assigned the first time it's seen
+     */
+    private int urlIdOf(String url) {
+        int id = urlIds.size();
+        int existing = urlIds.putIfAbsent(UrlCanonicalizer.fingerprint(url), id);
+        if (existing >= 0) {
+            return existing;
+        }
+
+        if (id == docOfUrl.length) {
+            docOfUrl = Arrays.copyOf(docOfUrl, id * 2);
+        }
+        docOfUrl[id] = -1;
+        return id;
     }
 
     /*
@@ -63,8 +273,18 @@ public class CrawlingMarkupHandler extends AbstractSimpleMarkupHandler {
     */
     public void handleDocumentStart(long startTimeNanos, int line, int col) {
         newURLs = new LinkedList<>();
-        seen.add(currPage.toString());
-        currWordLoc = 0;
+        pageWords.clear();
+        pageTitleWords.clear();
+        pageHeadingWords.clear();
+        pageAnchors.clear();
+        anchor = null;
+        pageLinkCount = 0;
+        pageLinkUrls.clear();
+        title.setLength(0);
+        openElements.clear();
+        titleDepth = 0;
+        headingDepth = 0;
+        skippedDepth = 0;
     }
 
     /**
@@ -75,7 +295,116 @@ public class CrawlingMarkupHandler extends AbstractSimpleMarkupHandler {
     * @param line            the line of the document where parsing ends
     * @param col             the column of the document where the parsing ends
     */
-    public void handleDocumentEnd(long endTimeNanos, long totalTimeNanos, int line, int col) {}
+    public void handleDocumentEnd(long endTimeNanos, long totalTimeNanos, int line, int col) {
+        stats.pageParsed(totalTimeNanos);
+
+        String pageTitle = title.toString().trim().replaceAll("\\s+", " ");
+        if (pageTitle.length() > MAX_TITLE_LENGTH) {
+            pageTitle = pageTitle.substring(0, MAX_TITLE_LENGTH);
+        }
+        if (pageTitle.isEmpty()) {
+            pageTitle = null;
+        }
+
+        if (journal != null) {
+            int[] anchorLinks = new int[pageAnchors.size()];
+            ArrayList<List<String>> anchorWords = new ArrayList<>(pageAnchors.size());
+            for (int i = 0; i < anchorLinks.length; i++) {
+                anchorLinks[i] = pageAnchors.get(i).link;
+                anchorWords.add(pageAnchors.get(i).words);
+            }
+            // the journal writes entries later, on its own thread, and these lists are reused
+            writeJournal(new CrawlJournal.Entry(currPage.toString(), currFetchTime, pageTitle,
+                    new ArrayList<>(pageWords), new ArrayList<>(pageTitleWords), new ArrayList<>(pageHeadingWords),
+                    new ArrayList<>(pageLinkUrls), anchorLinks, anchorWords));
+        }
+
+        indexPage(pageTitle);
+    }
+
+    /**
+     * indexes the current page, unless it's a near-duplicate of one already indexed, and records
+     * its links and anchor text
+     * @param pageTitle its title, or null if it doesn't have one
+     */
+    private void indexPage(String pageTitle) {
+        // pages too short to fingerprint reliably are always indexed
+        if (pageWords.size() >= NearDuplicateDetector.MIN_WORDS) {
+            Integer canonical = duplicates.findOrAdd(NearDuplicateDetector.simHash(pageWords), index.getDocCount(),
+                    (Integer doc) -> NearDuplicateDetector.similarity(pageWords, getWords(doc))
+                            >= NearDuplicateDetector.MIN_SIMILARITY);
+            if (canonical != null) {
+                // links to this page count as links to the page it duplicates, but its own links
+                // are assumed to be the same as that page's
+                docOfUrl[currUrlId] = canonical;
+                addPendingAnchors(canonical);
+                stats.duplicateFound();
+                return;
+            }
+        }
+
+        int doc = index.addDocument(currPage.toString(), pageTitle, currFetchTime, pageWords);
+        docOfUrl[currUrlId] = doc;
+        index.addFieldWords(doc, Field.TITLE, pageTitleWords);
+        index.addFieldWords(doc, Field.HEADING, pageHeadingWords);
+        // every word on the page is one posting, and so is each word of a title or heading
+        stats.postingsAdded(pageWords.size() + pageTitleWords.size() + pageHeadingWords.size());
+
+        // anchor text goes to the page it links to, once that page is indexed
+        addPendingAnchors(doc);
+        for (Anchor link : pageAnchors) {
+            int target = docOfUrl[link.target];
+            if (target >= 0) {
+                index.addFieldWords(target, Field.ANCHOR, link.words);
+            } else {
+                HashMap<String, Integer> counts = pendingAnchors.computeIfAbsent(link.target, (Integer id) -> new HashMap<>());
+                for (String word : link.words) {
+                    counts.merge(word, 1, Integer::sum);
+                }
+            }
+            stats.postingsAdded(link.words.size());
+        }
+
+        Arrays.sort(pageLinks, 0, pageLinkCount);
+        int distinct = 0;
+        for (int i = 0; i < pageLinkCount; i++) {
+            if (distinct == 0 || pageLinks[i] != pageLinks[distinct - 1]) {
+                pageLinks[distinct++] = pageLinks[i];
+            }
+        }
+        linkLog.write(distinct);
+        linkLog.writeDeltas(pageLinks, distinct);
+        graphOutdated = true;
+    }
+
+    /**
+     * adds the anchor text of links to the current page that were found before it was indexed
+     * @param doc the doc ID the page ended up as
+     */
+    private void addPendingAnchors(int doc) {
+        HashMap<String, Integer> counts = pendingAnchors.remove(currUrlId);
+        if (counts == null) {
+            return;
+        }
+
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            index.addFieldWord(doc, Field.ANCHOR, entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * @param doc the doc ID of an indexed page
+     * @return its words, from the forward index
+     */
+    private List<String> getWords(int doc) {
+        int[] terms = new int[index.getTokenCount(doc)];
+        int count = index.getTokens(doc, terms, terms.length);
+        ArrayList<String> words = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            words.add(index.getTerm(terms[i]));
+        }
+        return words;
+    }
 
     /**
     * Called at the start of any tag.
@@ -86,108 +415,262 @@ public class CrawlingMarkupHandler extends AbstractSimpleMarkupHandler {
     */
     public void handleOpenElement(String elementName, Map<String, String> attributes, int line, int col) {
         elementName = elementName.toLowerCase();
+        enterElement(elementName);
 
-        if (elementName.equals("script") || elementName.equals("style")) {
-            ignoreLastTag = true;
-            return;
+        if (elementName.equals("a")) {
+            int target = handleLink(attributes);
+            // links to the page itself don't say anything about it
+            if (target >= 0 && target != currUrlId) {
+                anchor = new Anchor(target, pageLinkCount - 1);
+            }
         }
+    }
 
+    /**
+     * Called for elements the parser adds because the document left them out, such as a <tbody>.
+     */
+    @Override
+    public void handleAutoOpenElement(String elementName, Map<String, String> attributes, int line, int col) {
+        enterElement(elementName.toLowerCase());
+    }
+
+    /**
+     * records a link from the current page, and queues its URL if it hasn't been seen before
+     * @param attributes the attributes of the link's element, or null
+     * @return the URL ID of the page it links to, or -1 if it doesn't link to a page
+     */
+    private int handleLink(Map<String, String> attributes) {
         if (attributes == null || attributes.isEmpty()) {
-            return;
+            return -1;
         }
 
         TreeMap<String, String> caselessAttr = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
         caselessAttr.putAll(attributes);
 
-        if (elementName.equals("a")) {
-            String href = caselessAttr.get("href");
-            if (href == null) {
-                return;
-            }
+        String href = caselessAttr.get("href");
+        if (href == null) {
+            return -1;
+        }
 
-            // only examine files that are valid web pages
-            if (!href.contains(".html") && !href.contains(".htm")) {
-                return;
-            }
+        String url = UrlCanonicalizer.canonicalize(currURI, href);
+        // only examine files that are valid web pages
+        if (url == null || !isPage(url)) {
+            return -1;
+        }
+        return addLink(url);
+    }
+
+    /**
+     * records a link from the current page to a web page, and queues its URL if it hasn't been
+     * seen before
+     * @param url the canonical URL of the page it links to
+     * @return that page's URL ID
+     */
+    private int addLink(String url) {
+        int seenBefore = urlIds.size();
+        int id = urlIdOf(url);
+        if (pageLinkCount == pageLinks.length) {
+            pageLinks = Arrays.copyOf(pageLinks, pageLinkCount * 2);
+        }
+        pageLinks[pageLinkCount++] = id;
+        pageLinkUrls.add(url);
+        if (urlIds.size() == seenBefore) {
+            return id;
+        }
 
-            try {
-                // get an absolute path
-                Path basePath = FileSystems.getDefault().getPath(currPage.toString());
-                Path resolvedPath = basePath.getParent().resolve(href);
-                Path absolutePath = resolvedPath.normalize();
-                String path = absolutePath.toString();
+        try {
+            newURLs.add(new URL(url));
+        } catch (MalformedURLException e) {
+            System.err.println("Error in CrawlingMarkupHandler: malformed url");
+        }
+        return id;
+    }
 
-                if (seen.contains(path)) {
-                    return;
-                }
+    /**
+     * pushes an element onto the stack of open elements
+     * @param elementName the element's name, in lower case
+     */
+    private void enterElement(String elementName) {
+        openElements.add(elementName);
+        if (elementName.equals("title")) {
+            titleDepth++;
+        } else if (isHeading(elementName)) {
+            headingDepth++;
+        } else if (SKIPPED_ELEMENTS.contains(elementName)) {
+            skippedDepth++;
+        }
+    }
 
-                seen.add(path);
+    /**
+     * pops elements off the stack of open elements, up to and including the innermost one with
+     * the given name; if none has that name, the close tag didn't match anything and is ignored
+     * @param elementName the element's name, in lower case
+     */
+    private void leaveElement(String elementName) {
+        int depth = openElements.lastIndexOf(elementName);
+        if (depth < 0) {
+            return;
+        }
 
-                URL tmp = new URL(path);
-                newURLs.add(tmp);
-            } catch (MalformedURLException e) {
-                System.err.println("Error in CrawlingMarkupHandler: malformed url");
+        while (openElements.size() > depth) {
+            String name = openElements.remove(openElements.size() - 1);
+            if (name.equals("title")) {
+                titleDepth--;
+            } else if (isHeading(name)) {
+                headingDepth--;
+            } else if (SKIPPED_ELEMENTS.contains(name)) {
+                skippedDepth--;
+            } else if (name.equals("a") && anchor != null) {
+                if (!anchor.words.isEmpty()) {
+                    pageAnchors.add(anchor);
+                }
+                anchor = null;
             }
         }
     }
 
+    private static boolean isHeading(String elementName) {
+        return elementName.length() == 2 && elementName.charAt(0) == 'h'
+                && elementName.charAt(1) >= '1' && elementName.charAt(1) <= '6';
+    }
+
+    /**
+     * @param url a canonical URL
+     * @return whether its path looks like a web page: an .html or .htm file, or a directory on
+     *         a web server
+     */
+    private static boolean isPage(String url) {
+        int end = url.indexOf('?');
+        if (end < 0) {
+            end = url.length();
+        }
+
+        return url.startsWith(".html", end - 5) || url.startsWith(".htm", end - 4)
+                || (url.charAt(end - 1) == '/' && !url.startsWith("file:"));
+    }
+
     /**
     * Called at the end of any tag.
     * @param elementName the element name (such as "div").
     * @param line        the line in the document where this elements appears.
     * @param col         the column in the document where this element appears.
     */
-    public void handleCloseElement(String elementName, int line, int col) {}
+    public void handleCloseElement(String elementName, int line, int col) {
+        leaveElement(elementName.toLowerCase());
+    }
+
+    /**
+     * Called for elements the document didn't close, when the element enclosing them closes.
+     */
+    @Override
+    public void handleAutoCloseElement(String elementName, int line, int col) {
+        leaveElement(elementName.toLowerCase());
+    }
 
     @Override
     public void handleStandaloneElement(String elementName, Map<String,String> attributes, boolean minimized, int line, int col) {
-        if (attributes == null || attributes.size() == 0) {
-            return;
+        // a standalone element has no text, so it never needs to go on the stack
+        if (elementName.equalsIgnoreCase("a")) {
+            handleLink(attributes);
         }
-        
-        handleOpenElement(elementName, attributes, line, col);
+    }
+
+    /**
+     * Comments aren't part of the page's text, so they're left out of the index, along with any
+     * markup inside them.
+     */
+    @Override
+    public void handleComment(char[] buffer, int offset, int len, int line, int col) {
+    }
+
+    /**
+     * CDATA sections only mean something in XML, where browsers don't show them either.
+     */
+    @Override
+    public void handleCDATASection(char[] buffer, int offset, int len, int line, int col) {
     }
 
     /**
     * Called whenever characters are found inside a tag. Note that the parser is not
     * required to return all characters in the tag in a single chunk. Whitespace is
-    * also returned as characters.
+    * also returned as characters. Text anywhere inside a script, style, noscript or template
+    * element is skipped, however many chunks it comes in.
     * @param ch      buffer containing characters; do not modify this buffer
     * @param start   location of 1st character in ch
     * @param length  number of characters in ch
     */
     public void handleText(char ch[], int start, int length, int line, int col) {
-        if (ignoreLastTag) {
-            ignoreLastTag = false;
+        if (skippedDepth > 0) {
             return;
         }
 
-        StringBuilder str = new StringBuilder();
-        for(int i = start; i < start + length; i++) {
-            String curr = Character.toString(ch[i]);
-            if (curr.matches("\\w") || curr.equals("-")) {
-                str.append(curr);
-            } else {
-                addWord(str.toString());
-                str = new StringBuilder();
+        if (titleDepth > 0) {
+            title.append(ch, start, length);
+        }
+
+        int wordStart = -1;
+        for (int i = start; i < start + length; i++) {
+            if (isWordChar(ch[i])) {
+                if (wordStart < 0) {
+                    wordStart = i;
+                }
+            } else if (wordStart >= 0) {
+                addWord(ch, wordStart, i);
+                wordStart = -1;
             }
         }
 
-        if (str.length() != 0) {
-            addWord(str.toString());
+        if (wordStart >= 0) {
+            addWord(ch, wordStart, start + length);
         }
     }
 
     /**
-     * Adds the given word to the index
-     * @param str the word to be add
+     * the same characters as the regex [\w-] (letters, digits, underscores and dashes), without
+     * the cost of a regex per character
      */
-    private void addWord(String str) {
-        if (str.length() == 0) {
-            return;
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+
+    /**
+     * Adds the given word to the current page's words, to be indexed when the page ends
+     * @param ch the buffer holding the word
+     * @param start the index of the word's first character
+     * @param end the index after the word's last character
+     */
+    private void addWord(char[] ch, int start, int end) {
+        char[] word = new char[end - start];
+        for (int i = start; i < end; i++) {
+            char c = ch[i];
+            word[i - start] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
         }
 
-        index.add(str.toLowerCase(), currPage, currWordLoc);
-        currWordLoc++;
+        String str = new String(word);
+        pageWords.add(str);
+        if (titleDepth > 0) {
+            pageTitleWords.add(str);
+        }
+        if (headingDepth > 0) {
+            pageHeadingWords.add(str);
+        }
+        if (anchor != null) {
+            anchor.words.add(str);
+        }
+    }
+
+    /**
+     * The text of a link from the current page, the page it links to, by URL ID, and which of the
+     * page's links it is.
+     */
+    private static class Anchor {
+        final int target;
+        final int link;
+        final ArrayList<String> words = new ArrayList<>();
+
+        Anchor(int target, int link) {
+            this.target = target;
+            this.link = link;
+        }
     }
 }
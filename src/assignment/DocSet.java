@@ -0,0 +1,431 @@
+package assignment;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * An immutable set of doc IDs, stored the way Roaring bitmaps are: doc IDs are split by their
+ * high 16 bits into chunks of 65536, and each chunk that has any docs in it gets a container of
+ * its low 16 bits. A chunk with few docs is a sorted array of them; one with more than
+ * ARRAY_MAX docs is a bitmap, so &, | and ! over common words are done 64 docs at a time.
+ */
+public class DocSet {
+    // the most docs an array container holds; past this, a bitmap (8KB) is smaller
+    static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1 << 10;
+    private static final SetKernels kernels = SetKernels.get();
+
+    public static final DocSet EMPTY = new DocSet(new char[0], new Container[0], 0);
+
+    // the high 16 bits of each chunk's docs, in increasing order, and its container
+    private final char[] keys;
+    private final Container[] containers;
+    private final int chunkCount;
+
+    private DocSet(char[] keys, Container[] containers, int chunkCount) {
+        this.keys = keys;
+        this.containers = containers;
+        this.chunkCount = chunkCount;
+    }
+
+    /**
+     * @param docs doc IDs, in increasing order with no repeats
+     * @param count how many of them there are
+     * @return a set of them
+     */
+    public static DocSet of(int[] docs, int count) {
+        Builder builder = new Builder();
+        for (int i = 0; i < count; i++) {
+            builder.add(docs[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return how many docs are in the set
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < chunkCount; i++) {
+            size += containers[i].cardinality();
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return chunkCount == 0;
+    }
+
+    /**
+     * @param doc a doc ID
+     * @return whether it's in the set
+     */
+    public boolean contains(int doc) {
+        int chunk = Arrays.binarySearch(keys, 0, chunkCount, (char) (doc >>> 16));
+        return chunk >= 0 && containers[chunk].contains((char) doc);
+    }
+
+    /**
+     * calls the given function with every doc in the set, in increasing order
+     */
+    public void forEach(IntConsumer action) {
+        for (int i = 0; i < chunkCount; i++) {
+            containers[i].forEach(keys[i] << 16, action);
+        }
+    }
+
+    /**
+     * @return every doc in the set, in increasing order
+     */
+    public int[] toArray() {
+        int[] docs = new int[size()];
+        int[] count = new int[1];
+        forEach((int doc) -> docs[count[0]++] = doc);
+        return docs;
+    }
+
+    /**
+     * @return the docs in both this set and the other
+     */
+    public DocSet and(DocSet other) {
+        char[] resultKeys = new char[Math.min(chunkCount, other.chunkCount)];
+        Container[] result = new Container[resultKeys.length];
+        int count = 0;
+        for (int i = 0, j = 0; i < chunkCount && j < other.chunkCount; ) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container chunk = containers[i].and(other.containers[j]);
+                if (chunk.cardinality() > 0) {
+                    resultKeys[count] = keys[i];
+                    result[count++] = chunk;
+                }
+                i++;
+                j++;
+            }
+        }
+        return new DocSet(resultKeys, result, count);
+    }
+
+    /**
+     * @return the docs in this set, the other, or both
+     */
+    public DocSet or(DocSet other) {
+        char[] resultKeys = new char[chunkCount + other.chunkCount];
+        Container[] result = new Container[resultKeys.length];
+        int count = 0;
+        int i = 0, j = 0;
+        while (i < chunkCount || j < other.chunkCount) {
+            if (j == other.chunkCount || (i < chunkCount && keys[i] < other.keys[j])) {
+                resultKeys[count] = keys[i];
+                result[count++] = containers[i++];
+            } else if (i == chunkCount || keys[i] > other.keys[j]) {
+                resultKeys[count] = other.keys[j];
+                result[count++] = other.containers[j++];
+            } else {
+                resultKeys[count] = keys[i];
+                result[count++] = containers[i++].or(other.containers[j++]);
+            }
+        }
+        return new DocSet(resultKeys, result, count);
+    }
+
+    /**
+     * @return the docs in this set that aren't in the other
+     */
+    public DocSet andNot(DocSet other) {
+        char[] resultKeys = new char[chunkCount];
+        Container[] result = new Container[chunkCount];
+        int count = 0;
+        for (int i = 0, j = 0; i < chunkCount; i++) {
+            while (j < other.chunkCount && other.keys[j] < keys[i]) {
+                j++;
+            }
+
+            Container chunk = containers[i];
+            if (j < other.chunkCount && other.keys[j] == keys[i]) {
+                chunk = chunk.andNot(other.containers[j]);
+            }
+            if (chunk.cardinality() > 0) {
+                resultKeys[count] = keys[i];
+                result[count++] = chunk;
+            }
+        }
+        return new DocSet(resultKeys, result, count);
+    }
+
+    /**
+     * Builds a DocSet from doc IDs given in increasing order.
+     */
+    public static class Builder {
+        private char[] keys = new char[4];
+        private Container[] containers = new Container[4];
+        private int chunkCount;
+        // the chunk being filled, as an array until it's too big to be one
+        private int currentKey = -1;
+        private char[] values = new char[16];
+        private long[] bitmap;
+        private int cardinality;
+
+        /**
+         * @param doc a doc ID, higher than any added before
+         */
+        public void add(int doc) {
+            int key = doc >>> 16;
+            if (key != currentKey) {
+                finishChunk();
+                currentKey = key;
+            }
+
+            char low = (char) doc;
+            if (bitmap != null) {
+                bitmap[low >>> 6] |= 1L << low;
+            } else if (cardinality == ARRAY_MAX) {
+                bitmap = new long[BITMAP_WORDS];
+                for (int i = 0; i < cardinality; i++) {
+                    bitmap[values[i] >>> 6] |= 1L << values[i];
+                }
+                bitmap[low >>> 6] |= 1L << low;
+            } else {
+                if (cardinality == values.length) {
+                    values = Arrays.copyOf(values, cardinality * 2);
+                }
+                values[cardinality] = low;
+            }
+            cardinality++;
+        }
+
+        /**
+         * @return the set of every doc added
+         */
+        public DocSet build() {
+            finishChunk();
+            return new DocSet(keys, containers, chunkCount);
+        }
+
+        private void finishChunk() {
+            if (cardinality == 0) {
+                return;
+            }
+
+            if (chunkCount == keys.length) {
+                keys = Arrays.copyOf(keys, chunkCount * 2);
+                containers = Arrays.copyOf(containers, chunkCount * 2);
+            }
+            keys[chunkCount] = (char) currentKey;
+            containers[chunkCount++] = bitmap != null ? new BitmapContainer(bitmap, cardinality)
+                    : new ArrayContainer(Arrays.copyOf(values, cardinality));
+
+            bitmap = null;
+            cardinality = 0;
+        }
+    }
+
+    /**
+     * The low 16 bits of the docs in one chunk.
+     */
+    private interface Container {
+        int cardinality();
+
+        boolean contains(char value);
+
+        void forEach(int high, IntConsumer action);
+
+        Container and(Container other);
+
+        Container or(Container other);
+
+        Container andNot(Container other);
+    }
+
+    /**
+     * Up to ARRAY_MAX values, sorted.
+     */
+    private static final class ArrayContainer implements Container {
+        final char[] values;
+
+        ArrayContainer(char[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public int cardinality() {
+            return values.length;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return Arrays.binarySearch(values, value) >= 0;
+        }
+
+        @Override
+        public void forEach(int high, IntConsumer action) {
+            for (char value : values) {
+                action.accept(high | value);
+            }
+        }
+
+        @Override
+        public Container and(Container other) {
+            char[] result = new char[values.length];
+            int count = 0;
+            if (other instanceof BitmapContainer) {
+                long[] words = ((BitmapContainer) other).words;
+                for (char value : values) {
+                    if ((words[value >>> 6] & (1L << value)) != 0) {
+                        result[count++] = value;
+                    }
+                }
+            } else {
+                count = kernels.intersect(values, ((ArrayContainer) other).values, result);
+            }
+            return new ArrayContainer(Arrays.copyOf(result, count));
+        }
+
+        @Override
+        public Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+
+            char[] others = ((ArrayContainer) other).values;
+            char[] result = new char[values.length + others.length];
+            int count = 0;
+            int i = 0, j = 0;
+            while (i < values.length || j < others.length) {
+                if (j == others.length || (i < values.length && values[i] < others[j])) {
+                    result[count++] = values[i++];
+                } else if (i == values.length || values[i] > others[j]) {
+                    result[count++] = others[j++];
+                } else {
+                    result[count++] = values[i++];
+                    j++;
+                }
+            }
+
+            if (count > ARRAY_MAX) {
+                long[] words = new long[BITMAP_WORDS];
+                for (int k = 0; k < count; k++) {
+                    words[result[k] >>> 6] |= 1L << result[k];
+                }
+                return new BitmapContainer(words, count);
+            }
+            return new ArrayContainer(Arrays.copyOf(result, count));
+        }
+
+        @Override
+        public Container andNot(Container other) {
+            char[] result = new char[values.length];
+            int count = 0;
+            for (char value : values) {
+                if (!other.contains(value)) {
+                    result[count++] = value;
+                }
+            }
+            return new ArrayContainer(Arrays.copyOf(result, count));
+        }
+    }
+
+    /**
+     * One bit for each of the 65536 values in a chunk.
+     */
+    private static final class BitmapContainer implements Container {
+        final long[] words;
+        final int cardinality;
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        public boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public void forEach(int high, IntConsumer action) {
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    action.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        public Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+
+            long[] result = new long[BITMAP_WORDS];
+            int count = kernels.and(words, ((BitmapContainer) other).words, result);
+            return fromBitmap(result, count);
+        }
+
+        @Override
+        public Container or(Container other) {
+            long[] result = words.clone();
+            int count = cardinality;
+            if (other instanceof ArrayContainer) {
+                for (char value : ((ArrayContainer) other).values) {
+                    long bit = 1L << value;
+                    if ((result[value >>> 6] & bit) == 0) {
+                        result[value >>> 6] |= bit;
+                        count++;
+                    }
+                }
+            } else {
+                count = kernels.or(result, ((BitmapContainer) other).words, result);
+            }
+            return new BitmapContainer(result, count);
+        }
+
+        @Override
+        public Container andNot(Container other) {
+            long[] result = words.clone();
+            int count = cardinality;
+            if (other instanceof ArrayContainer) {
+                for (char value : ((ArrayContainer) other).values) {
+                    long bit = 1L << value;
+                    if ((result[value >>> 6] & bit) != 0) {
+                        result[value >>> 6] &= ~bit;
+                        count--;
+                    }
+                }
+            } else {
+                count = kernels.andNot(result, ((BitmapContainer) other).words, result);
+            }
+            return fromBitmap(result, count);
+        }
+
+        /**
+         * @return the bitmap as a container, or as an array if it's small enough to be one
+         */
+        private static Container fromBitmap(long[] words, int count) {
+            if (count > ARRAY_MAX) {
+                return new BitmapContainer(words, count);
+            }
+
+            char[] values = new char[count];
+            int k = 0;
+            for (int i = 0; i < words.length; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    values[k++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package assignment;
+
+/**
+ * The parts of a page a word can be found in, besides its body. A word in a page's title or a
+ * heading is also in its body; anchor text is the text of links to the page from other pages.
+ * Queries can be restricted to a field by prefixing a word with its name, as in "title:word".
+ */
+public enum Field {
+    TITLE("title", 4),
+    HEADING("heading", 2),
+    ANCHOR("anchor", 3);
+
+    // what a match in the body is worth; the fields' boosts are relative to it
+    public static final float BODY_BOOST = 1;
+
+    private final String prefix;
+    private final float boost;
+
+    Field(String prefix, float boost) {
+        this.prefix = prefix;
+        this.boost = boost;
+    }
+
+    /**
+     * @return the name used to restrict a query to this field
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * @return what a match in this field adds to a page's score, on top of the body's
+     */
+    public float getBoost() {
+        return boost;
+    }
+
+    /**
+     * @param prefix a field's name, as in a query
+     * @return the field, or null if there isn't one with that name
+     */
+    public static Field fromPrefix(String prefix) {
+        for (Field field : values()) {
+            if (field.prefix.equals(prefix)) {
+                return field;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,206 @@
+package assignment;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Measures the garbage collector's pauses, and query latency, with a big index on the heap and
+ * then with its postings moved off it by WebIndex.moveOffHeap(). The sites HTMLBuilder makes
+ * only use a few thousand words, so this indexes made-up pages instead, of words drawn from a
+ * Zipf distribution over a large vocabulary, as real text is; most of a real index's words are
+ * rare, and each of them costs the heap several objects. Queries run on a few threads while the
+ * main thread forces a full collection every so often, as a busy server eventually would.
+ *
+ * Usage: java assignment.GcBenchmark [PAGES] [SECONDS]
+ */
+public class GcBenchmark {
+    private static final int VOCABULARY = 500000;
+    private static final int WORDS_PER_PAGE = 200;
+    // the first words of each page are its title, and the next few the text of a link to another page
+    private static final int TITLE_WORDS = 6;
+    private static final int ANCHOR_WORDS = 3;
+    private static final int QUERY_THREADS = 2;
+    private static final int GC_INTERVAL_MILLIS = 2000;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws InterruptedException {
+        int pageCount = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        long before = IndexBenchmark.usedHeap();
+        long start = System.nanoTime();
+        WebIndex index = buildIndex(pageCount);
+        System.out.printf("indexed %d pages, %d words in %.1fs%n", index.getDocCount(), index.getTermCount(),
+                (System.nanoTime() - start) / 1e9);
+        WebQueryEngine engine = new WebQueryEngine(index);
+        List<String> queries = makeQueries();
+
+        System.out.printf("on heap:  heap used by the index %.1fMB%n",
+                (IndexBenchmark.usedHeap() - before) / (1024.0 * 1024));
+        run(engine, queries, seconds);
+
+        start = System.nanoTime();
+        index.moveOffHeap();
+        System.out.printf("moved off the heap in %.1fs%n", (System.nanoTime() - start) / 1e9);
+        System.out.printf("off heap: heap used by the index %.1fMB, off it %.1fMB%n",
+                (IndexBenchmark.usedHeap() - before) / (1024.0 * 1024), index.getPostingsSize() / (1024.0 * 1024));
+        run(engine, queries, seconds);
+    }
+
+    /**
+     * indexes made-up pages, each of words drawn from a Zipf distribution
+     */
+    private static WebIndex buildIndex(int pageCount) {
+        // the chance of each word, by rank, is proportional to 1 / rank
+        double[] cumulative = new double[VOCABULARY];
+        double total = 0;
+        for (int rank = 0; rank < VOCABULARY; rank++) {
+            total += 1.0 / (rank + 1);
+            cumulative[rank] = total;
+        }
+
+        Random random = new Random(SEED);
+        WebIndex index = new WebIndex();
+        String[] words = new String[WORDS_PER_PAGE];
+        for (int page = 0; page < pageCount; page++) {
+            for (int i = 0; i < WORDS_PER_PAGE; i++) {
+                int rank = Arrays.binarySearch(cumulative, random.nextDouble() * total);
+                words[i] = word(rank < 0 ? -rank - 1 : rank);
+            }
+            List<String> text = Arrays.asList(words);
+            int doc = index.addDocument("http://example.com/" + page + ".html", null, 0, text);
+            index.addFieldWords(doc, Field.TITLE, text.subList(0, TITLE_WORDS));
+            index.addFieldWords(random.nextInt(doc + 1), Field.ANCHOR,
+                    text.subList(TITLE_WORDS, TITLE_WORDS + ANCHOR_WORDS));
+        }
+        return index;
+    }
+
+    private static String word(int rank) {
+        return "w" + Integer.toString(rank, 36);
+    }
+
+    /**
+     * Words, &, |, negations and phrases, of words neither so common that ranking their matches
+     * takes over nor so rare that they don't match anything.
+     */
+    private static List<String> makeQueries() {
+        Random random = new Random(SEED);
+        List<String> queries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String a = word(100 + random.nextInt(VOCABULARY / 10));
+            String b = word(10 + random.nextInt(1000));
+            switch (i % 5) {
+                case 0:
+                    queries.add(a);
+                    break;
+                case 1:
+                    queries.add(a + " & " + b);
+                    break;
+                case 2:
+                    queries.add(a + " | " + b);
+                    break;
+                case 3:
+                    queries.add("!" + b + " & " + a);
+                    break;
+                default:
+                    queries.add("\"" + b + " " + a + "\"");
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * runs queries on QUERY_THREADS threads for a while, forcing a full collection every
+     * GC_INTERVAL_MILLIS, and reports the collector's pauses and the queries' latency
+     */
+    private static void run(WebQueryEngine engine, List<String> queries, int seconds) throws InterruptedException {
+        // a round of every query first, so the JIT has compiled them before anything's timed
+        for (String query : queries) {
+            engine.query(query);
+        }
+
+        Histogram youngPauses = new Histogram();
+        Histogram fullPauses = new Histogram();
+        NotificationListener listener = (Notification notification, Object handback) -> {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            // concurrent collectors report their whole cycles too, which aren't pauses
+            if (info.getGcName().contains("Concurrent") || info.getGcName().contains("Cycles")) {
+                return;
+            }
+            Histogram pauses = info.getGcAction().contains("major") ? fullPauses : youngPauses;
+            // the collector only reports whole milliseconds
+            pauses.record(info.getGcInfo().getDuration() * 1000000);
+        };
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) bean).addNotificationListener(listener, null, null);
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        Histogram[] latencies = new Histogram[QUERY_THREADS];
+        Thread[] threads = new Thread[QUERY_THREADS];
+        for (int t = 0; t < QUERY_THREADS; t++) {
+            Histogram latency = new Histogram();
+            latencies[t] = latency;
+            Random random = new Random(SEED + t);
+            threads[t] = new Thread(() -> {
+                while (!done.get()) {
+                    long queryStart = System.nanoTime();
+                    engine.query(queries.get(random.nextInt(queries.size())));
+                    latency.recordSince(queryStart);
+                }
+            });
+            threads[t].start();
+        }
+
+        long end = System.currentTimeMillis() + seconds * 1000L;
+        while (System.currentTimeMillis() < end) {
+            Thread.sleep(Math.min(GC_INTERVAL_MILLIS, Math.max(1, end - System.currentTimeMillis())));
+            System.gc();
+        }
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            try {
+                ((NotificationEmitter) bean).removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                // it was added above, so this can't happen
+            }
+        }
+
+        Histogram latency = new Histogram();
+        for (Histogram histogram : latencies) {
+            latency.add(histogram);
+        }
+        // notifications are delivered on another thread, so give the last ones time to arrive
+        Thread.sleep(100);
+        report("young GC", youngPauses);
+        report("full GC", fullPauses);
+        report("query", latency);
+    }
+
+    private static void report(String name, Histogram histogram) {
+        System.out.printf("  %-9s count=%d total=%.1fms p50=%.2fms p99=%.2fms max=%.2fms%n", name,
+                histogram.getCount(), histogram.getSum() / 1e6, histogram.getValueAtQuantile(0.5) / 1e6,
+                histogram.getValueAtQuantile(0.99) / 1e6, histogram.getMax() / 1e6);
+    }
+}
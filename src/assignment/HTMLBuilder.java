@@ -1,145 +1,454 @@
 package assignment;
 
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Scanner;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Generates a set of random connected webpages
+ * Generates a set of random connected webpages, doc0.html to docN.html, and an index.html that
+ * links to them. By default (and always with the two-argument constructor) every pair of pages is
+ * linked with probability 1/2 and words are drawn uniformly from words.txt, as this always did;
+ * Options can instead give a sparse link graph and Zipfian text, for corpora of millions of pages.
+ * <p>
+ * Each page depends only on the seed and its number, never on any other page, so pages are
+ * generated in parallel, streamed straight to their files, and come out the same whatever the
+ * number of threads. Nothing is held in memory per page except, if asked for, its words.
+ * <p>
+ * Usage: java assignment.HTMLBuilder [--pages N] [--words N] [--vocabulary N] [--zipf S]
+ * [--links N] [--degree-exponent G] [--locality P] [--window N] [--dense P] [--index-links N]
+ * [--seed N] [--threads N] [--out DIR] [--serve PORT]
  */
 public class HTMLBuilder {
-    private final ArrayList<String> words = new ArrayList<>();
-    private boolean[][] graph;
-    private HashMap<Integer, HashSet<String>> docWords;
-    private int numPages;
+    private static final String PHRASE = "A quick brown fox jumped over the lazy dog";
+    // pseudo-words, for vocabularies bigger than words.txt, are made of these syllables
+    private static final String CONSONANTS = "bcdfghjklmnprstvz";
+    private static final String VOWELS = "aeiou";
 
     /**
-     * initialize and generate pages
+     * How a corpus is generated. The defaults are a sparse, scale-free site of Zipfian text; the
+     * two-argument constructor sets the original dense, uniform model instead.
+     */
+    public static class Options {
+        public int pages = 1000;
+        public int wordsPerPage = 100;
+        // how many distinct words there are: words.txt, then made-up ones; 0 for only words.txt
+        public int vocabulary = 50000;
+        // the exponent of the Zipf distribution words are drawn from; 0 for uniform
+        public double zipfExponent = 1.0;
+        // the mean number of links on a page; how many a page has follows a power law with
+        // this exponent, which must be above 2 for the mean to exist, up to maxLinks
+        public int meanLinks = 10;
+        public double degreeExponent = 2.5;
+        public int maxLinks = 1000;
+        // the share of links that go to a page at most localWindow away, as links within a site
+        // section do; the rest go to pages picked by a Zipf distribution over their popularity
+        public double locality = 0.7;
+        public int localWindow = 50;
+        // if above 0, every pair of pages is linked both ways with this probability instead,
+        // which takes time (though not memory) quadratic in the number of pages
+        public double linkProbability = 0;
+        // how many pages index.html links to, from doc0 on; -1 for all of them
+        public int indexLinks = 1000;
+        public long seed = 42;
+        public int threads = Runtime.getRuntime().availableProcessors();
+        public File folder = new File("testhtml");
+        // whether to keep each page's words for getDocWords()
+        public boolean recordWords = false;
+    }
+
+    private final Options options;
+    private final String[] words;
+    // the cumulative weight of each word, and each page as a link target, by rank; null where
+    // they're drawn uniformly
+    private final double[] wordWeights;
+    private final double[] pageWeights;
+    // a page's popularity rank times this, mod the number of pages, is its number, so the
+    // popular pages are spread over the site rather than all at the start
+    private final long pageStride;
+    private final HashMap<Integer, HashSet<String>> docWords = new HashMap<>();
+
+    /**
+     * initialize and generate pages, every pair linked with probability 1/2 and each word drawn
+     * uniformly from words.txt, as the tests expect
      * @param numPages the number of pages to create
      * @param wordsPerPage how many words to put on each page
      */
     public HTMLBuilder(int numPages, int wordsPerPage) {
-        try {
-            Scanner reader = new Scanner(new File("words.txt"));
-            while (reader.hasNext()) {
+        this(legacyOptions(numPages, wordsPerPage));
+    }
+
+    private static Options legacyOptions(int numPages, int wordsPerPage) {
+        Options options = new Options();
+        options.pages = numPages;
+        options.wordsPerPage = wordsPerPage;
+        options.vocabulary = 0;
+        options.zipfExponent = 0;
+        options.linkProbability = 0.5;
+        options.indexLinks = -1;
+        options.recordWords = true;
+        return options;
+    }
+
+    /**
+     * initialize and generate pages
+     * @param options how to generate them
+     */
+    public HTMLBuilder(Options options) {
+        if (options.linkProbability <= 0 && options.degreeExponent <= 2) {
+            throw new IllegalArgumentException("the degree exponent must be above 2, not " + options.degreeExponent);
+        }
+        this.options = options;
+        words = loadWords(options.vocabulary);
+        wordWeights = options.zipfExponent > 0 ? zipfWeights(words.length, options.zipfExponent) : null;
+        pageWeights = options.linkProbability <= 0 ? zipfWeights(options.pages, 1.0) : null;
+        long stride = 1000003;
+        while (gcd(stride, Math.max(options.pages, 1)) != 1) {
+            stride += 2;
+        }
+        pageStride = stride;
+
+        // make the folder if it doesn't exist
+        if (!options.folder.exists()) {
+            options.folder.mkdirs();
+        }
+
+        generate();
+        createIndex();
+    }
+
+    /**
+     * returns the words present on each html page, if Options.recordWords was set
+     * @return docWords
+     */
+    public HashMap<Integer, HashSet<String>> getDocWords() {
+        return docWords;
+    }
+
+    /**
+     * @param vocabulary how many words there should be, or 0 for only those in words.txt
+     * @return words.txt's words, then made-up words of consonant-vowel syllables
+     */
+    private static String[] loadWords(int vocabulary) {
+        ArrayList<String> words = new ArrayList<>();
+        try (Scanner reader = new Scanner(new File("words.txt"))) {
+            while (reader.hasNext() && (vocabulary <= 0 || words.size() < vocabulary)) {
                 words.add(reader.next());
             }
-            reader.close();
         } catch (FileNotFoundException e) {
             System.err.println("Failed to read words.txt");
         }
 
-        this.numPages = numPages;
-        graph = new boolean[numPages][numPages];
-        for (int i = 0; i < numPages; i++) {
-            for (int j = 0; j <= i; j++) {
-                graph[i][j] = random();
-                graph[j][i] = graph[i][j];
+        HashSet<String> seen = new HashSet<>(words);
+        for (int i = 0; words.size() < vocabulary; i++) {
+            // i's digits in base 85, one syllable each
+            StringBuilder word = new StringBuilder();
+            int n = i;
+            do {
+                int syllable = n % (CONSONANTS.length() * VOWELS.length());
+                word.append(CONSONANTS.charAt(syllable / VOWELS.length())).append(VOWELS.charAt(syllable % VOWELS.length()));
+                n /= CONSONANTS.length() * VOWELS.length();
+            } while (n > 0);
+            if (word.length() > 2 && seen.add(word.toString())) {
+                words.add(word.toString());
             }
         }
+        return words.toArray(new String[0]);
+    }
 
-        // make the folder if it doesn't exist
-        File folder = new File("testhtml/");
-        if (!folder.exists()) {
-            folder.mkdirs();
+    /**
+     * @return for each rank, the total weight of it and every rank before it, where rank r has
+     *         weight 1 / (r + 1)^exponent
+     */
+    private static double[] zipfWeights(int count, double exponent) {
+        double[] weights = new double[count];
+        double total = 0;
+        for (int rank = 0; rank < count; rank++) {
+            total += Math.pow(rank + 1, -exponent);
+            weights[rank] = total;
         }
+        return weights;
+    }
 
-        docWords = new HashMap<>();
-        for (int i = 0; i < numPages; i++) {
-            writeDocument(i, wordsPerPage);
-        }
+    /**
+     * @return a rank drawn in proportion to its weight
+     */
+    private static int sample(double[] weights, SplittableRandom random) {
+        int rank = Arrays.binarySearch(weights, random.nextDouble() * weights[weights.length - 1]);
+        return rank < 0 ? -rank - 1 : rank;
+    }
 
-        createIndex();
+    private static long gcd(long a, long b) {
+        return b == 0 ? a : gcd(b, a % b);
     }
 
     /**
-     * returns the words present on each html page
-     * @return docWords
+     * a well-mixed 64-bit hash (SplitMix64's finalizer), so nearby inputs give unrelated outputs
      */
-    public HashMap<Integer, HashSet<String>> getDocWords() {
-        return docWords;
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
     }
 
     /**
-     * using Math.random, return true 50% of the time
-     * @return true half the time, false half the time
+     * writes every page, in chunks spread over options.threads threads
+     * @throws UncheckedIOException if a page can't be written
+     * @throws IllegalStateException if generating a page fails some other way, or is interrupted
      */
-    private boolean random() {
-        return ((int)(Math.random() * 100) + 1) >= 51;
+    private void generate() {
+        int chunk = 1024;
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(options.threads, 1));
+        List<Future<?>> chunks = new ArrayList<>();
+        try {
+            for (int start = 0; start < options.pages; start += chunk) {
+                int from = start;
+                int to = Math.min(start + chunk, options.pages);
+                chunks.add(pool.submit(() -> {
+                    StringBuilder body = new StringBuilder(1 << 16);
+                    for (int docNum = from; docNum < to; docNum++) {
+                        writeDocument(docNum, body);
+                    }
+                }));
+            }
+            for (Future<?> future : chunks) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while generating pages", e);
+        } catch (ExecutionException e) {
+            // a corpus with pages missing would quietly skew whatever is run on it
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw (UncheckedIOException) e.getCause();
+            }
+            throw new IllegalStateException("could not generate pages", e.getCause());
+        } finally {
+            // after a failure, stop the chunks still running or waiting; the rest are done already
+            for (Future<?> future : chunks) {
+                future.cancel(true);
+            }
+            pool.shutdown();
+        }
     }
 
     /**
      * generate and write an HTML document
      * @param docNum the number of the document to write
-     * @param numWords how many words to write
+     * @param body where to build it, which is reused from page to page
      */
-    private void writeDocument(int docNum, int numWords) {
-        HashSet<String> words = new HashSet<>();
-        for (int i = 0; i < numWords; i++) {
-            words.add(getRandomWord());
+    private void writeDocument(int docNum, StringBuilder body) {
+        SplittableRandom random = new SplittableRandom(mix(options.seed ^ mix(docNum)));
+        HashSet<String> pageWords = options.recordWords ? new HashSet<>() : null;
+
+        body.setLength(0);
+        body.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\"><title>Document ").append(docNum)
+                .append("</title>\n</head>\n<body>\n<ul>");
+        for (int i = 0; i < options.wordsPerPage; i++) {
+            String word = words[wordWeights != null ? sample(wordWeights, random) : random.nextInt(words.length)];
+            body.append("<li>").append(word).append("</li>\n");
+            if (pageWords != null) {
+                pageWords.add(word);
+            }
         }
-        docWords.put(docNum, words);
 
-        String body = "";
-        body += "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\"><title>Document " + docNum +"</title>\n" +
-                "</head>\n<body>\n<ul>";
+        if (random.nextInt(3) == 0) {
+            body.append("<li>").append(PHRASE).append("</li>\n");
+        }
 
-        for (String str : words) {
-            body += "<li>" + str + "</li>\n";
+        for (int target : links(docNum, random)) {
+            body.append("<a href=\"doc").append(target).append(".html\">LINK ").append(target).append("</a><br>\n");
         }
+        body.append("</ul>\n</body>\n</html>\n");
 
-        if (((int)(Math.random() * 30) + 1) <= 10) {
-            body += "<li>A quick brown fox jumped over the lazy dog</li>\n";
+        if (pageWords != null) {
+            synchronized (docWords) {
+                docWords.put(docNum, pageWords);
+            }
         }
+        write("doc" + docNum + ".html", body);
+    }
 
-        boolean[] links = graph[docNum];
-        for (int i = 0; i < links.length; i++) {
-            if (docNum != i && links[i]) {
-                body += "<a href=\"doc" + i +".html\">LINK " + i + "</a><br>\n";
+    /**
+     * @return the pages a page links to, in increasing order, without repeats or itself
+     */
+    private int[] links(int docNum, SplittableRandom random) {
+        int pages = options.pages;
+        if (options.linkProbability > 0) {
+            // each pair's link is decided by a hash of the pair, so both pages agree on it
+            // without a matrix of every pair
+            int[] targets = new int[16];
+            int count = 0;
+            for (int other = 0; other < pages; other++) {
+                long pair = Math.min(docNum, other) * (long) pages + Math.max(docNum, other);
+                if (other != docNum && (mix(options.seed ^ mix(~pair)) >>> 11) * 0x1.0p-53 < options.linkProbability) {
+                    if (count == targets.length) {
+                        targets = Arrays.copyOf(targets, count * 2);
+                    }
+                    targets[count++] = other;
+                }
             }
+            return Arrays.copyOf(targets, count);
         }
 
-        body += "</ul>\n</body>\n</html>";
+        // a power-law number of links, with the mean asked for: a Pareto distribution's mean is
+        // its minimum times (g - 1) / (g - 2)
+        double exponent = options.degreeExponent;
+        double min = options.meanLinks * (exponent - 2) / (exponent - 1);
+        long degree = (long) Math.ceil(min * Math.pow(1 - random.nextDouble(), -1 / (exponent - 1)));
+        int count = (int) Math.min(degree, Math.min(options.maxLinks, pages - 1));
 
-        try (PrintWriter out = new PrintWriter(new File("testhtml/doc" + docNum + ".html"))) {
-            out.println(body);
-            out.close();
-        } catch (FileNotFoundException e) {
-            System.err.println("Could not write file");
+        // and links down a binary tree of the pages, so every page can be reached from doc0
+        int[] targets = new int[count + 2];
+        for (int i = 0; i < count; i++) {
+            if (random.nextDouble() < options.locality) {
+                int offset = 1 + random.nextInt(Math.max(options.localWindow, 1));
+                targets[i] = Math.floorMod(docNum + (random.nextBoolean() ? offset : -offset), pages);
+            } else {
+                targets[i] = (int) (sample(pageWeights, random) * pageStride % pages);
+            }
+        }
+        int children = 0;
+        for (long child = 2L * docNum + 1; child <= 2L * docNum + 2 && child < pages; child++) {
+            targets[count + children++] = (int) child;
+        }
+        targets = Arrays.copyOf(targets, count + children);
+
+        Arrays.sort(targets);
+        int distinct = 0;
+        for (int target : targets) {
+            if (target != docNum && (distinct == 0 || target != targets[distinct - 1])) {
+                targets[distinct++] = target;
+            }
         }
+        return Arrays.copyOf(targets, distinct);
     }
 
     /**
-     * create an index page containing links to all the pages
+     * create an index page containing links to the pages
      */
     private void createIndex() {
-        String body = "";
-        body += "<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\"><title>Index</title>\n" +
-                "</head>\n<body>\n<ul>";
-
-        for (int i = 0; i < numPages; i++) {
-            body += "<li><a href=\"doc" + i +".html\">LINK " + i + "</a></li>\n";
+        int count = options.indexLinks < 0 ? options.pages : Math.min(options.indexLinks, options.pages);
+        StringBuilder body = new StringBuilder();
+        body.append("<!DOCTYPE html>\n<html>\n<head>\n<meta charset=\"UTF-8\"><title>Index</title>\n")
+                .append("</head>\n<body>\n<ul>");
+        for (int i = 0; i < count; i++) {
+            body.append("<li><a href=\"doc").append(i).append(".html\">LINK ").append(i).append("</a></li>\n");
         }
+        body.append("</ul>\n</body>\n</html>\n");
+        write("index.html", body);
+    }
 
-        body += "</ul>\n</body>\n</html>";
-
-        try (PrintWriter out = new PrintWriter(new File("testhtml/index.html"))) {
-            out.println(body);
-            out.close();
-        } catch (FileNotFoundException e) {
-            System.err.println("Could not write index");
+    /**
+     * @throws UncheckedIOException if the file can't be written
+     */
+    private void write(String name, CharSequence body) {
+        try {
+            Files.write(new File(options.folder, name).toPath(), body.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not write " + name, e);
         }
     }
 
     /**
-     * grabs a random word from the list of words
-     * @return a random word in the list of words
+     * Serves the pages over HTTP, on the loopback address only, so crawls can be run against a
+     * real server rather than file: URLs.
+     * @param port the port to listen on, or 0 for any free one
+     * @return the server, already started; its address says which port it got
      */
-    private String getRandomWord() {
-        return words.get((int)(Math.random() * words.size()));
+    public HttpServer serve(int port) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        Path root = options.folder.toPath().toAbsolutePath().normalize();
+        server.createContext("/", (HttpExchange exchange) -> {
+            try {
+                Path file = root.resolve(exchange.getRequestURI().getPath().substring(1)).normalize();
+                if (!exchange.getRequestMethod().equals("GET") || !file.startsWith(root) || !Files.isRegularFile(file)) {
+                    exchange.sendResponseHeaders(404, -1);
+                    return;
+                }
+
+                byte[] content = Files.readAllBytes(file);
+                exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+                exchange.sendResponseHeaders(200, content.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(content);
+                }
+            } finally {
+                exchange.close();
+            }
+        });
+        server.setExecutor(Executors.newFixedThreadPool(Math.max(options.threads, 1)));
+        server.start();
+        return server;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options = new Options();
+        int port = -1;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                String value = args[i + 1];
+                switch (args[i]) {
+                    case "--pages": options.pages = Integer.parseInt(value); break;
+                    case "--words": options.wordsPerPage = Integer.parseInt(value); break;
+                    case "--vocabulary": options.vocabulary = Integer.parseInt(value); break;
+                    case "--zipf": options.zipfExponent = Double.parseDouble(value); break;
+                    case "--links": options.meanLinks = Integer.parseInt(value); break;
+                    case "--degree-exponent": options.degreeExponent = Double.parseDouble(value); break;
+                    case "--locality": options.locality = Double.parseDouble(value); break;
+                    case "--window": options.localWindow = Integer.parseInt(value); break;
+                    case "--dense": options.linkProbability = Double.parseDouble(value); break;
+                    case "--index-links": options.indexLinks = Integer.parseInt(value); break;
+                    case "--seed": options.seed = Long.parseLong(value); break;
+                    case "--threads": options.threads = Integer.parseInt(value); break;
+                    case "--out": options.folder = new File(value); break;
+                    case "--serve": port = Integer.parseInt(value); break;
+                    default: throw new IllegalArgumentException("unknown option " + args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: java assignment.HTMLBuilder [--pages N] [--words N] [--vocabulary N] [--zipf S] "
+                    + "[--links N] [--degree-exponent G] [--locality P] [--window N] [--dense P] [--index-links N] "
+                    + "[--seed N] [--threads N] [--out DIR] [--serve PORT]");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        HTMLBuilder builder;
+        try {
+            builder = new HTMLBuilder(options);
+        } catch (UncheckedIOException | IllegalStateException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        System.out.printf("generated %d pages in %s in %.1fs%n", options.pages, options.folder,
+                (System.nanoTime() - start) / 1e9);
+
+        if (port >= 0) {
+            HttpServer server = builder.serve(port);
+            System.out.printf("serving at http://127.0.0.1:%d/index.html%n", server.getAddress().getPort());
+        }
     }
 }
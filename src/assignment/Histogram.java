@@ -0,0 +1,150 @@
+package assignment;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-memory histogram of non-negative longs (usually nanoseconds), in the style of
+ * HdrHistogram: values are counted in buckets whose width grows with the value, so every value is
+ * recorded to within about 3% no matter how large it is. Recording is lock-free and never
+ * allocates, so it is cheap enough to do on every request.
+ */
+public class Histogram {
+    // 2^SUB_BITS buckets per power of two, which bounds the relative error to 1/2^SUB_BITS
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * counts one value; negative values are counted as 0
+     * @param value the value to record
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * records the time since the given System.nanoTime() reading
+     * @param startNanos when the thing being timed started
+     * @return the current System.nanoTime(), so consecutive phases can be chained
+     */
+    public long recordSince(long startNanos) {
+        long now = System.nanoTime();
+        record(now - startNanos);
+        return now;
+    }
+
+    /**
+     * @return how many values have been recorded
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of every value recorded
+     */
+    public long getSum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the largest value recorded, or 0 if there are none
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if there are none
+     */
+    public double getMean() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getSum() / n;
+    }
+
+    /**
+     * finds the value at the given quantile. Like HdrHistogram, this reports the largest value
+     * that falls in the same bucket, so it never understates a tail latency.
+     * @param quantile a number from 0 to 1, such as 0.99
+     * @return the value at the quantile, or 0 if nothing has been recorded
+     */
+    public long getValueAtQuantile(double quantile) {
+        // the per-bucket counts and the total aren't updated atomically together, so add up the
+        // buckets rather than trusting getCount()
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestInBucket(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * adds every value recorded in the other histogram to this one
+     * @param other the histogram to add
+     */
+    public void add(Histogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+
+        count.add(other.getCount());
+        sum.add(other.getSum());
+        max.accumulate(other.getMax());
+    }
+
+    /**
+     * the first 2 * SUB_COUNT values each get their own bucket; after that, values with the same
+     * highest bit share SUB_COUNT buckets, split by the next SUB_BITS bits
+     */
+    private static int bucketOf(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift);
+    }
+
+    private static long highestInBucket(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_COUNT - 1;
+        long mantissa = bucket - (long) shift * SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
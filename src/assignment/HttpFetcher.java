@@ -0,0 +1,353 @@
+package assignment;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fetches pages asynchronously with java.net.http.HttpClient, which keeps connections to each
+ * host open and uses HTTP/2 where the server supports it. At most maxInFlight requests are
+ * outstanding at once, and at most maxPerHost of them to any one host; requests beyond that wait
+ * in a per-host queue, so one slow host can't tie up every slot.
+ * <p>
+ * Anything that isn't http: or https: (like the file: URLs of a local crawl) is read with a
+ * PageFetcher instead, on the calling thread.
+ */
+public class HttpFetcher {
+    private static final String USER_AGENT = "314H-Crawler/0.1";
+
+    private final PageFetcher pages;
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final int maxPerHost;
+    private final Semaphore inFlight;
+    private final HashMap<String, Host> hosts = new HashMap<>();
+
+    /**
+     * The outcome of fetching one URL. Exactly one of body and error is set.
+     */
+    public static class Result {
+        public final URL url;
+        // null if the fetch failed; give it back with release()
+        public final PageFetcher.Body body;
+        public final int status;
+        public final Exception error;
+        // how long the fetch took, from being sent (not queued) to the body being read
+        public final long nanos;
+
+        Result(URL url, PageFetcher.Body body, int status, Exception error, long nanos) {
+            this.url = url;
+            this.body = body;
+            this.status = status;
+            this.error = error;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * creates a fetcher with sensible limits for crawling
+     * @param pages where buffers come from, and what reads non-HTTP URLs
+     */
+    public HttpFetcher(PageFetcher pages) {
+        this(pages, 64, 4, Duration.ofSeconds(5), Duration.ofSeconds(15));
+    }
+
+    /**
+     * @param pages where buffers come from, and what reads non-HTTP URLs
+     * @param maxInFlight the most requests that can be outstanding at once
+     * @param maxPerHost the most requests that can be outstanding to one host at once
+     * @param connectTimeout how long to wait for a connection
+     * @param requestTimeout how long to wait for the whole response, once it's been sent
+     */
+    public HttpFetcher(PageFetcher pages, int maxInFlight, int maxPerHost, Duration connectTimeout,
+                       Duration requestTimeout) {
+        this.pages = pages;
+        this.requestTimeout = requestTimeout;
+        this.maxPerHost = maxPerHost;
+        inFlight = new Semaphore(maxInFlight);
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    /**
+     * starts fetching a URL, waiting first if maxInFlight requests are already outstanding
+     * @param url the page to fetch
+     * @return the result, which completes normally even if the fetch fails
+     */
+    public CompletableFuture<Result> fetch(URL url) throws InterruptedException {
+        String protocol = url.getProtocol();
+        if (!protocol.equals("http") && !protocol.equals("https")) {
+            long start = System.nanoTime();
+            try {
+                PageFetcher.Body body = pages.fetch(url);
+                return CompletableFuture.completedFuture(new Result(url, body, 200, null, System.nanoTime() - start));
+            } catch (IOException e) {
+                return CompletableFuture.completedFuture(new Result(url, null, 0, e, System.nanoTime() - start));
+            }
+        }
+
+        inFlight.acquire();
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        Host host;
+        synchronized (hosts) {
+            host = hosts.computeIfAbsent(url.getHost().toLowerCase(), (String h) -> new Host());
+        }
+        host.submit(() -> send(url, host, result));
+        return result;
+    }
+
+    /**
+     * gives a result's buffer back to the pool, if it has one
+     */
+    public void release(Result result) {
+        if (result.body != null) {
+            pages.release(result.body);
+        }
+    }
+
+    /**
+     * @return how many requests have been sent or are queued but haven't finished
+     */
+    public int inFlight() {
+        synchronized (hosts) {
+            int total = 0;
+            for (Host host : hosts.values()) {
+                total += host.active + host.waiting.size();
+            }
+            return total;
+        }
+    }
+
+    private void send(URL url, Host host, CompletableFuture<Result> result) {
+        long start = System.nanoTime();
+
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(url.toURI())
+                    .timeout(requestTimeout)
+                    .header("User-Agent", USER_AGENT)
+                    .header("Accept", "text/html,application/xhtml+xml;q=0.9,*/*;q=0.1")
+                    .GET()
+                    .build();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            finish(host, result, new Result(url, null, 0, e, System.nanoTime() - start));
+            return;
+        }
+
+        PooledBody body = new PooledBody();
+        client.sendAsync(request, body::start)
+                .whenComplete((java.net.http.HttpResponse<ByteBuffer> response, Throwable t) -> {
+                    long nanos = System.nanoTime() - start;
+                    if (t != null) {
+                        Exception e = t.getCause() instanceof Exception ? (Exception) t.getCause()
+                                : t instanceof Exception ? (Exception) t : new IOException(t);
+                        finish(host, result, new Result(url, null, 0, e, nanos));
+                        return;
+                    }
+
+                    finish(host, result, toResult(url, response, nanos));
+                });
+
+        // the request timeout only covers the headers, so bound reading the body too. Giving up on
+        // the body cancels it, which fails the exchange, so the slot is only given back once the
+        // exchange has really stopped.
+        CompletableFuture.delayedExecutor(requestTimeout.toNanos() * 2, TimeUnit.NANOSECONDS)
+                .execute(() -> body.abort(new HttpTimeoutException("timed out reading " + url)));
+    }
+
+    private Result toResult(URL url, java.net.http.HttpResponse<ByteBuffer> response, long nanos) {
+        int status = response.statusCode();
+        ByteBuffer bytes = response.body();
+        if (status != 200) {
+            pages.release(bytes);
+        }
+
+        if (status == 404 || status == 410) {
+            return new Result(url, null, status, new FileNotFoundException(url.toString()), nanos);
+        } else if (status != 200) {
+            return new Result(url, null, status, new IOException("HTTP " + status + " from " + url), nanos);
+        }
+
+        HttpHeaders headers = response.headers();
+
+        // links are relative to wherever we ended up after any redirects
+        URL finalURL = url;
+        try {
+            finalURL = response.uri().toURL();
+        } catch (IOException | IllegalArgumentException e) {
+            // keep the URL we asked for
+        }
+
+        return new Result(finalURL, new PageFetcher.Body(finalURL, bytes,
+                headers.firstValue("Content-Type").orElse(null)), status, null, nanos);
+    }
+
+    private void finish(Host host, CompletableFuture<Result> future, Result result) {
+        host.done();
+        inFlight.release();
+        future.complete(result);
+    }
+
+    /**
+     * Requests to a single host: how many are running, and those waiting for a turn
+     */
+    private class Host {
+        int active;
+        final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+
+        void submit(Runnable request) {
+            synchronized (hosts) {
+                if (active >= maxPerHost) {
+                    waiting.offer(request);
+                    return;
+                }
+                active++;
+            }
+            request.run();
+        }
+
+        void done() {
+            Runnable next;
+            synchronized (hosts) {
+                next = waiting.poll();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            // the slot passes straight to the next request
+            next.run();
+        }
+    }
+
+    /**
+     * Collects a response body into one of the PageFetcher's pooled buffers, rather than a list of
+     * small arrays that then get copied together. Bodies over PageFetcher.MAX_PAGE_SIZE, whether
+     * the server says so up front or just keeps sending, are cancelled rather than read.
+     * <p>
+     * The client calls this from its own threads, and abort() can come from any thread, so
+     * everything that touches the buffer holds the lock.
+     */
+    private class PooledBody implements java.net.http.HttpResponse.BodySubscriber<ByteBuffer> {
+        private final CompletableFuture<ByteBuffer> body = new CompletableFuture<>();
+        // the Content-Length, or -1 if the server didn't send one
+        private long length = -1;
+        private Flow.Subscription subscription;
+        private ByteBuffer buffer;
+        // set once the body has been read, or has failed, after which nothing more is read
+        private boolean done;
+
+        /**
+         * called by the client once the response headers arrive
+         */
+        synchronized PooledBody start(java.net.http.HttpResponse.ResponseInfo info) {
+            length = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+            return this;
+        }
+
+        /**
+         * stops reading the body, if it hasn't been read yet, and gives its buffer back
+         * @param e what the exchange fails with
+         */
+        synchronized void abort(Exception e) {
+            if (!done) {
+                fail(e);
+            }
+        }
+
+        @Override
+        public CompletionStage<ByteBuffer> getBody() {
+            return body;
+        }
+
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (done) {
+                // given up on before the headers arrived
+                subscription.cancel();
+                return;
+            }
+            if (length > PageFetcher.MAX_PAGE_SIZE) {
+                fail(new IOException("page is too large"));
+                return;
+            }
+
+            buffer = pages.acquire(length > 0 ? (int) length + 1 : 0);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public synchronized void onNext(List<ByteBuffer> items) {
+            if (done) {
+                return;
+            }
+
+            for (ByteBuffer item : items) {
+                if (buffer.remaining() < item.remaining()) {
+                    int needed = buffer.position() + item.remaining();
+                    if (needed > PageFetcher.MAX_PAGE_SIZE) {
+                        fail(new IOException("page is too large"));
+                        return;
+                    }
+
+                    ByteBuffer bigger = pages.acquire(Math.min(Math.max(buffer.capacity() * 2, needed),
+                            PageFetcher.MAX_PAGE_SIZE));
+                    buffer.flip();
+                    bigger.put(buffer);
+                    pages.release(buffer);
+                    buffer = bigger;
+                }
+                buffer.put(item);
+            }
+        }
+
+        @Override
+        public synchronized void onError(Throwable throwable) {
+            if (!done) {
+                fail(throwable);
+            }
+        }
+
+        @Override
+        public synchronized void onComplete() {
+            if (done) {
+                return;
+            }
+
+            done = true;
+            buffer.flip();
+            body.complete(buffer);
+        }
+
+        private void fail(Throwable throwable) {
+            done = true;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+            if (buffer != null) {
+                pages.release(buffer);
+                buffer = null;
+            }
+            body.completeExceptionally(throwable);
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package assignment;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A response that is written as UTF-8 bytes straight into a pooled buffer, instead of being built
+ * up as one big String first.
+ * <p>
+ * If the whole body fits in the buffer it is sent with a Content-Length. Otherwise the headers are
+ * sent as soon as the buffer first fills up and the body streams out as it is generated, using
+ * chunked transfer encoding for HTTP/1.1 clients (HTTP/1.0 clients just read until we close the
+ * connection). Either way the body is gzipped when the client accepts it.
+ */
+public class HttpResponse implements Closeable {
+    // the fixed part of a gzip header: magic, deflate, no flags, no mtime, no extra flags, unknown os
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+    // deflaters hold a good chunk of native memory, so they are reused across responses
+    private static final ConcurrentLinkedQueue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+    private final OutputStream out;
+    private final BufferPool pool;
+    private final boolean http11, gzip, headOnly;
+
+    private String status = "200 OK";
+    private String contentType = "text/html; charset=UTF-8";
+    private ArrayList<String> headers = new ArrayList<>();
+
+    // uncompressed body bytes waiting to be sent
+    private byte[] buffer;
+    private int position;
+
+    // compressed body bytes waiting to be sent, only used when gzipping
+    private byte[] zbuffer;
+    private int zposition;
+    private Deflater deflater;
+    private CRC32 crc;
+    private int uncompressedSize;
+
+    private boolean committed, chunked, closed;
+
+    /**
+     * @param out the client's output stream
+     * @param pool the pool to borrow buffers from
+     * @param http11 whether the client speaks HTTP/1.1, and so understands chunked encoding
+     * @param gzip whether to gzip the body
+     * @param headOnly true for HEAD requests, where only the headers are sent
+     */
+    public HttpResponse(OutputStream out, BufferPool pool, boolean http11, boolean gzip, boolean headOnly) {
+        this.out = out;
+        this.pool = pool;
+        this.http11 = http11;
+        this.gzip = gzip;
+        this.headOnly = headOnly;
+        buffer = pool.acquire();
+
+        if (gzip) {
+            zbuffer = pool.acquire();
+            deflater = deflaters.poll();
+            if (deflater == null) {
+                // nowrap since we write the gzip header and trailer ourselves
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            }
+            crc = new CRC32();
+            System.arraycopy(GZIP_HEADER, 0, zbuffer, 0, GZIP_HEADER.length);
+            zposition = GZIP_HEADER.length;
+        }
+    }
+
+    /**
+     * sets the status line, such as "404 Not Found"; must be called before anything is written
+     */
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    /**
+     * sets the Content-Type header; must be called before anything is written
+     */
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    /**
+     * adds a header to the response; must be called before anything is written
+     */
+    public void addHeader(String name, String value) {
+        headers.add(name + ": " + value);
+    }
+
+    /**
+     * writes the string to the body, encoded as UTF-8
+     * @param str the string to write
+     * @return this, so writes can be chained
+     */
+    public HttpResponse write(CharSequence str) throws IOException {
+        return write(str, 0, str.length());
+    }
+
+    /**
+     * writes part of a string to the body, encoded as UTF-8
+     * @param str the string to write from
+     * @param start the index of the first character to write
+     * @param end the index after the last character to write
+     * @return this, so writes can be chained
+     */
+    public HttpResponse write(CharSequence str, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = str.charAt(i);
+            if (c < 0x80 && position < buffer.length) {
+                // the common case, kept as cheap as possible
+                buffer[position++] = (byte) c;
+            } else if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(str.charAt(i + 1))) {
+                writeCodePoint(Character.toCodePoint(c, str.charAt(++i)));
+            } else {
+                writeCodePoint(c);
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * writes a single character to the body
+     * @param c the character to write
+     * @return this, so writes can be chained
+     */
+    public HttpResponse write(char c) throws IOException {
+        writeCodePoint(c);
+        return this;
+    }
+
+    /**
+     * writes a number to the body in decimal, without going through a String
+     * @param n the number to write
+     * @return this, so writes can be chained
+     */
+    public HttpResponse write(long n) throws IOException {
+        if (buffer.length - position < 20) {
+            drain();
+        }
+
+        if (n < 0) {
+            if (n == Long.MIN_VALUE) {
+                return write(Long.toString(n));
+            }
+
+            buffer[position++] = '-';
+            n = -n;
+        }
+
+        // write the digits backwards, then flip them
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n > 0);
+
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+
+        return this;
+    }
+
+    /**
+     * encodes one code point as UTF-8; lone surrogates become '?', like String.getBytes would
+     */
+    private void writeCodePoint(int c) throws IOException {
+        if (buffer.length - position < 4) {
+            drain();
+        }
+
+        if (c < 0x80) {
+            buffer[position++] = (byte) c;
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xc0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        } else if (Character.isSurrogate((char) c) && c < 0x10000) {
+            buffer[position++] = '?';
+        } else if (c < 0x10000) {
+            buffer[position++] = (byte) (0xe0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        } else {
+            buffer[position++] = (byte) (0xf0 | (c >> 18));
+            buffer[position++] = (byte) (0x80 | ((c >> 12) & 0x3f));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            buffer[position++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    /**
+     * sends whatever has been written so far to the client, committing to a streamed response if
+     * that hasn't happened yet
+     */
+    public void flush() throws IOException {
+        drain();
+        if (gzip) {
+            // push out everything the deflater is holding onto
+            deflate(Deflater.SYNC_FLUSH);
+            ship(zbuffer, zposition);
+            zposition = 0;
+        }
+
+        out.flush();
+    }
+
+    /**
+     * finishes the response, then returns the buffers to the pool. The underlying stream is left
+     * open, since the caller owns it.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            byte[] body = buffer;
+            int length = position;
+
+            if (gzip) {
+                crc.update(buffer, 0, position);
+                uncompressedSize += position;
+                deflater.setInput(buffer, 0, position);
+                deflater.finish();
+                deflate(Deflater.NO_FLUSH);
+
+                if (zbuffer.length - zposition < 8) {
+                    ship(zbuffer, zposition);
+                    zposition = 0;
+                }
+                writeIntLE(zbuffer, zposition, (int) crc.getValue());
+                writeIntLE(zbuffer, zposition + 4, uncompressedSize);
+                zposition += 8;
+
+                body = zbuffer;
+                length = zposition;
+            }
+
+            if (!committed) {
+                // the whole body fit in memory, so we know exactly how long it is
+                writeHeaders(length);
+                if (!headOnly) {
+                    out.write(body, 0, length);
+                }
+            } else {
+                ship(body, length);
+                if (chunked && !headOnly) {
+                    out.write(LAST_CHUNK);
+                }
+            }
+
+            out.flush();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * moves the uncompressed buffer along, through the deflater if we're gzipping
+     */
+    private void drain() throws IOException {
+        if (gzip) {
+            crc.update(buffer, 0, position);
+            uncompressedSize += position;
+            deflater.setInput(buffer, 0, position);
+            deflate(Deflater.NO_FLUSH);
+        } else {
+            ship(buffer, position);
+        }
+
+        position = 0;
+    }
+
+    /**
+     * runs the deflater until it has consumed all of its input (or finished, or flushed), shipping
+     * compressed bytes whenever the compressed buffer fills up
+     */
+    private void deflate(int flush) throws IOException {
+        while (true) {
+            int space = zbuffer.length - zposition;
+            int n = deflater.deflate(zbuffer, zposition, space, flush);
+            zposition += n;
+
+            if (zposition == zbuffer.length) {
+                ship(zbuffer, zposition);
+                zposition = 0;
+            } else if (n < space) {
+                // it stopped before running out of room, so there's nothing left to do
+                return;
+            }
+        }
+    }
+
+    /**
+     * sends part of the body to the client
+     */
+    private void ship(byte[] bytes, int length) throws IOException {
+        if (!committed) {
+            writeHeaders(-1);
+        }
+
+        if (length == 0 || headOnly) {
+            return;
+        }
+
+        if (chunked) {
+            out.write(Integer.toHexString(length).getBytes(StandardCharsets.ISO_8859_1));
+            out.write(CRLF);
+            out.write(bytes, 0, length);
+            out.write(CRLF);
+        } else {
+            out.write(bytes, 0, length);
+        }
+        out.flush();
+    }
+
+    /**
+     * writes the status line and headers
+     * @param contentLength the length of the body, or -1 if it is going to be streamed
+     */
+    private void writeHeaders(int contentLength) throws IOException {
+        committed = true;
+        chunked = contentLength < 0 && http11;
+
+        StringBuilder head = new StringBuilder(256);
+        head.append(http11 ? "HTTP/1.1 " : "HTTP/1.0 ").append(status).append("\r\n")
+                .append("Server: 314H/0.1\r\n")
+                .append("Content-Type: ").append(contentType).append("\r\n")
+                .append("Connection: close\r\n");
+
+        if (gzip) {
+            head.append("Content-Encoding: gzip\r\n").append("Vary: Accept-Encoding\r\n");
+        }
+
+        if (contentLength >= 0) {
+            head.append("Content-Length: ").append(contentLength).append("\r\n");
+        } else if (chunked) {
+            head.append("Transfer-Encoding: chunked\r\n");
+        }
+
+        for (String header : headers) {
+            head.append(header).append("\r\n");
+        }
+        head.append("\r\n");
+
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void release() {
+        pool.release(buffer);
+        buffer = null;
+
+        if (gzip) {
+            pool.release(zbuffer);
+            zbuffer = null;
+            deflater.reset();
+            deflaters.offer(deflater);
+            deflater = null;
+        }
+    }
+
+    private static void writeIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+        bytes[offset + 2] = (byte) (value >> 16);
+        bytes[offset + 3] = (byte) (value >> 24);
+    }
+}
@@ -0,0 +1,145 @@
+package assignment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.attoparser.ParseException;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.simple.ISimpleMarkupParser;
+import org.attoparser.simple.SimpleMarkupParser;
+
+/**
+ * Measures how big an index is and how fast it answers queries. Crawls a site the same way the
+ * tests do, then reports the heap the index takes, the size of its index.db, and the latency of
+ * a fixed mix of queries (single words, & and |, negations, and phrases taken from the pages
+ * themselves), after a warm-up round.
+ *
+ * Usage: java assignment.IndexBenchmark START_URL [ROUNDS]
+ */
+public class IndexBenchmark {
+    private static final int QUERIES_PER_KIND = 200;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: java assignment.IndexBenchmark START_URL [ROUNDS]");
+            System.exit(1);
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        long before = usedHeap();
+        long start = System.nanoTime();
+        WebIndex index = crawl(args[0]);
+        System.out.printf("crawled %d pages, %d words in %.1fs%n", index.getDocCount(), index.getTermCount(),
+                (System.nanoTime() - start) / 1e9);
+        System.out.printf("heap used by the index: %.1fMB, of which postings %.1fMB%n",
+                (usedHeap() - before) / (1024.0 * 1024), index.getPostingsSize() / (1024.0 * 1024));
+
+        File file = File.createTempFile("index", ".db");
+        file.deleteOnExit();
+        start = System.nanoTime();
+        index.save(file.getPath());
+        System.out.printf("index.db: %.1fMB, saved in %.1fs%n", file.length() / (1024.0 * 1024),
+                (System.nanoTime() - start) / 1e9);
+
+        WebQueryEngine engine = new WebQueryEngine(index);
+        Map<String, List<String>> queries = makeQueries(index);
+        for (Map.Entry<String, List<String>> kind : queries.entrySet()) {
+            Histogram latency = new Histogram();
+            long results = 0;
+            for (int round = 0; round <= rounds; round++) {
+                for (String query : kind.getValue()) {
+                    long queryStart = System.nanoTime();
+                    int count = engine.query(query).size();
+                    // the first round is only to warm up
+                    if (round > 0) {
+                        latency.recordSince(queryStart);
+                        results += count;
+                    }
+                }
+            }
+
+            System.out.printf("%-8s mean=%.1fus p50=%.1fus p99=%.1fus (%.0f results each)%n", kind.getKey(),
+                    latency.getMean() / 1e3, latency.getValueAtQuantile(0.5) / 1e3,
+                    latency.getValueAtQuantile(0.99) / 1e3, (double) results / latency.getCount());
+        }
+    }
+
+    /**
+     * crawls every page reachable from a URL, one at a time
+     */
+    static WebIndex crawl(String startUrl) throws MalformedURLException {
+        ISimpleMarkupParser parser = new SimpleMarkupParser(ParseConfiguration.htmlConfiguration());
+        CrawlingMarkupHandler handler = new CrawlingMarkupHandler();
+        Deque<URL> remaining = new ArrayDeque<>();
+        remaining.add(new URL(startUrl));
+
+        while (!remaining.isEmpty()) {
+            URL url = remaining.poll();
+            handler.setURL(url);
+            try (InputStreamReader reader = new InputStreamReader(url.openStream())) {
+                parser.parse(reader, handler);
+            } catch (ParseException | IOException e) {
+                System.err.printf("Error: couldn't index %s: %s%n", url, e);
+            }
+            remaining.addAll(handler.newURLs());
+        }
+
+        return (WebIndex) handler.getIndex();
+    }
+
+    /**
+     * picks queries of each kind from the index's own words, the same ones every run
+     */
+    private static Map<String, List<String>> makeQueries(WebIndex index) {
+        Random random = new Random(SEED);
+        LinkedHashMap<String, List<String>> queries = new LinkedHashMap<>();
+        for (String kind : new String[] {"word", "and", "or", "not", "phrase"}) {
+            queries.put(kind, new ArrayList<>());
+        }
+
+        int[] tokens = new int[8];
+        for (int i = 0; i < QUERIES_PER_KIND; i++) {
+            String first = randomWord(index, random);
+            String second = randomWord(index, random);
+            queries.get("word").add(first);
+            queries.get("and").add(first + " & " + second);
+            queries.get("or").add(first + " | " + second);
+            queries.get("not").add(first + " & !" + second);
+
+            // a few words in a row from a random page, so the phrase is always somewhere
+            int doc = random.nextInt(index.getDocCount());
+            int count = index.getTokens(doc, tokens, tokens.length);
+            int length = Math.min(count, 2 + random.nextInt(2));
+            StringBuilder phrase = new StringBuilder("\"");
+            for (int j = count - length; j < count; j++) {
+                phrase.append(index.getTerm(tokens[j])).append(j == count - 1 ? "\"" : " ");
+            }
+            queries.get("phrase").add(length > 0 ? phrase.toString() : first);
+        }
+
+        return queries;
+    }
+
+    private static String randomWord(WebIndex index, Random random) {
+        return index.getTerm(random.nextInt(index.getTermCount()));
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,293 @@
+package assignment;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Just enough JSON for the search API: a small parser for request bodies, and helpers that write
+ * values straight into an HttpResponse instead of building Strings.
+ */
+public class Json {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    // the most objects and arrays that can be inside each other, so a deeply nested body is
+    // rejected rather than overflowing the stack
+    private static final int MAX_DEPTH = 64;
+
+    private final String text;
+    private int position;
+    private int depth;
+
+    private Json(String text) {
+        this.text = text;
+    }
+
+    /**
+     * parses a JSON document. Objects become Maps, arrays become Lists, numbers become Longs if
+     * they are whole and Doubles otherwise.
+     * @param text the JSON document
+     * @return the parsed value, which may be null
+     * @throws IllegalArgumentException if the text isn't valid JSON
+     */
+    public static Object parse(String text) {
+        Json parser = new Json(text);
+        Object value = parser.readValue();
+        parser.skipWhitespace();
+        if (parser.position != text.length()) {
+            throw parser.error("trailing characters");
+        }
+
+        return value;
+    }
+
+    /**
+     * writes a string as a quoted JSON string, escaping as needed
+     * @param out the response to write to
+     * @param str the string, or null
+     */
+    public static void writeString(HttpResponse out, CharSequence str) throws IOException {
+        if (str == null) {
+            out.write("null");
+            return;
+        }
+
+        out.write('"');
+        int start = 0;
+        int length = str.length();
+        for (int i = 0; i < length; i++) {
+            char c = str.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != 0x2028 && c != 0x2029) {
+                continue;
+            }
+
+            // write the run of characters that didn't need escaping in one go
+            out.write(str, start, i);
+            start = i + 1;
+
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write("\\u").write(HEX[c >> 12]).write(HEX[(c >> 8) & 0xf])
+                            .write(HEX[(c >> 4) & 0xf]).write(HEX[c & 0xf]);
+            }
+        }
+
+        out.write(str, start, length);
+        out.write('"');
+    }
+
+    /**
+     * writes a field name and the colon after it
+     * @param out the response to write to
+     * @param name the field name, which is written as-is and so must not need escaping
+     */
+    public static void writeName(HttpResponse out, String name) throws IOException {
+        out.write('"').write(name).write("\":");
+    }
+
+    private Object readValue() {
+        skipWhitespace();
+        if (position >= text.length()) {
+            throw error("unexpected end of input");
+        }
+
+        char c = text.charAt(position);
+        switch (c) {
+            case '{':
+            case '[':
+                if (++depth > MAX_DEPTH) {
+                    throw error("nested more than " + MAX_DEPTH + " deep");
+                }
+                Object nested = c == '{' ? readObject() : readArray();
+                depth--;
+                return nested;
+            case '"':
+                return readString();
+            case 't':
+                return readLiteral("true", Boolean.TRUE);
+            case 'f':
+                return readLiteral("false", Boolean.FALSE);
+            case 'n':
+                return readLiteral("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return readNumber();
+                }
+                throw error("unexpected character '" + c + "'");
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        HashMap<String, Object> object = new HashMap<>();
+        position++;
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return object;
+        }
+
+        while (true) {
+            skipWhitespace();
+            if (peek() != '"') {
+                throw error("expected a field name");
+            }
+            String name = readString();
+            skipWhitespace();
+            expect(':');
+            object.put(name, readValue());
+            skipWhitespace();
+
+            char c = next();
+            if (c == '}') {
+                return object;
+            } else if (c != ',') {
+                throw error("expected ',' or '}'");
+            }
+        }
+    }
+
+    private List<Object> readArray() {
+        ArrayList<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (peek() == ']') {
+            position++;
+            return array;
+        }
+
+        while (true) {
+            array.add(readValue());
+            skipWhitespace();
+
+            char c = next();
+            if (c == ']') {
+                return array;
+            } else if (c != ',') {
+                throw error("expected ',' or ']'");
+            }
+        }
+    }
+
+    private String readString() {
+        position++;
+        StringBuilder str = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return str.toString();
+            } else if (c != '\\') {
+                str.append(c);
+                continue;
+            }
+
+            c = next();
+            switch (c) {
+                case 'b':
+                    str.append('\b');
+                    break;
+                case 'f':
+                    str.append('\f');
+                    break;
+                case 'n':
+                    str.append('\n');
+                    break;
+                case 'r':
+                    str.append('\r');
+                    break;
+                case 't':
+                    str.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > text.length()) {
+                        throw error("bad unicode escape");
+                    }
+                    try {
+                        str.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("bad unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    // \" \\ and \/
+                    str.append(c);
+            }
+        }
+    }
+
+    private Object readNumber() {
+        int start = position;
+        boolean whole = true;
+        while (position < text.length()) {
+            char c = text.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E') {
+                whole = false;
+            } else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9'))) {
+                break;
+            }
+            position++;
+        }
+
+        String number = text.substring(start, position);
+        try {
+            return whole ? (Object) Long.parseLong(number) : (Object) Double.parseDouble(number);
+        } catch (NumberFormatException e) {
+            throw error("bad number '" + number + "'");
+        }
+    }
+
+    private Object readLiteral(String literal, Object value) {
+        if (!text.startsWith(literal, position)) {
+            throw error("unexpected character '" + text.charAt(position) + "'");
+        }
+
+        position += literal.length();
+        return value;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private char peek() {
+        if (position >= text.length()) {
+            throw error("unexpected end of input");
+        }
+
+        return text.charAt(position);
+    }
+
+    private char next() {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private void expect(char c) {
+        if (next() != c) {
+            throw error("expected '" + c + "'");
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("Invalid JSON at " + position + ": " + message);
+    }
+}
@@ -0,0 +1,119 @@
+package assignment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the plain Java SetKernels with the Vector API ones on the doc IDs of real words. Crawls
+ * a site (such as one made by HTMLBuilder) the way IndexBenchmark does, takes random pairs of its
+ * words, and times intersecting their doc IDs as sorted arrays and combining them as bitmaps,
+ * with each kernel, after warming up. Both kernels' answers are checked against each other.
+ * Run it with --add-modules jdk.incubator.vector to include the Vector API kernels.
+ *
+ * Usage: java assignment.KernelBenchmark START_URL [ROUNDS]
+ */
+public class KernelBenchmark {
+    private static final int PAIRS = 500;
+    private static final long SEED = 42;
+    // enough docs for a bitmap chunk
+    private static final int BITMAP_WORDS = 1 << 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: java assignment.KernelBenchmark START_URL [ROUNDS]");
+            System.exit(1);
+        }
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        WebIndex index = IndexBenchmark.crawl(args[0]);
+        System.out.printf("crawled %d pages, %d words%n", index.getDocCount(), index.getTermCount());
+
+        List<SetKernels> kernels = new ArrayList<>();
+        kernels.add(new SetKernels());
+        SetKernels vector = SetKernels.vector();
+        if (vector != null) {
+            kernels.add(vector);
+        } else {
+            System.err.println("Vector API kernels aren't available; run with --add-modules jdk.incubator.vector");
+        }
+        System.out.printf("DocSet is using the %s kernels%n", SetKernels.get().getName());
+
+        // each word's doc IDs in the first 65536 docs, as a DocSet chunk holds them
+        Random random = new Random(SEED);
+        char[][] arrays = new char[2 * PAIRS][];
+        long[][] bitmaps = new long[2 * PAIRS][];
+        for (int i = 0; i < arrays.length; i++) {
+            int[] docs = index.getDocSet(index.getTerm(random.nextInt(index.getTermCount()))).toArray();
+            arrays[i] = new char[docs.length];
+            bitmaps[i] = new long[BITMAP_WORDS];
+            int count = 0;
+            for (int doc : docs) {
+                if (doc < 1 << 16) {
+                    arrays[i][count++] = (char) doc;
+                    bitmaps[i][doc >>> 6] |= 1L << doc;
+                }
+            }
+            arrays[i] = Arrays.copyOf(arrays[i], count);
+        }
+
+        String[] operations = {"intersect", "and", "or", "andNot", "count"};
+        for (String operation : operations) {
+            // the fastest round of each, as the one least disturbed by anything else; the kernels
+            // take turns, so neither gets a quieter machine than the other
+            long[] best = new long[kernels.size()];
+            long[] checksums = new long[kernels.size()];
+            Arrays.fill(best, Long.MAX_VALUE);
+            for (int round = 0; round <= rounds; round++) {
+                for (int k = 0; k < kernels.size(); k++) {
+                    long start = System.nanoTime();
+                    checksums[k] = run(kernels.get(k), operation, arrays, bitmaps);
+                    long time = System.nanoTime() - start;
+                    // the first round is only to warm up
+                    if (round > 0) {
+                        best[k] = Math.min(best[k], time);
+                    }
+                }
+            }
+
+            for (int k = 0; k < kernels.size(); k++) {
+                System.out.printf("%-10s %-20s %8.1fns per pair%n", operation, kernels.get(k).getName(),
+                        (double) best[k] / PAIRS);
+                if (checksums[k] != checksums[0]) {
+                    System.err.printf("Error: %s gave different results for %s to %s%n", kernels.get(k).getName(),
+                            operation, kernels.get(0).getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * runs one operation over every pair of words
+     * @return the total size of the results, to check the kernels against each other
+     */
+    private static long run(SetKernels kernel, String operation, char[][] arrays, long[][] bitmaps) {
+        char[] values = new char[1 << 16];
+        long[] words = new long[BITMAP_WORDS];
+        long total = 0;
+        for (int i = 0; i < arrays.length; i += 2) {
+            switch (operation) {
+                case "intersect":
+                    total += kernel.intersect(arrays[i], arrays[i + 1], values);
+                    break;
+                case "and":
+                    total += kernel.and(bitmaps[i], bitmaps[i + 1], words);
+                    break;
+                case "or":
+                    total += kernel.or(bitmaps[i], bitmaps[i + 1], words);
+                    break;
+                case "andNot":
+                    total += kernel.andNot(bitmaps[i], bitmaps[i + 1], words);
+                    break;
+                default:
+                    total += kernel.cardinality(bitmaps[i]);
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,123 @@
+package assignment;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * The links between pages, stored in compressed sparse row form: the out-links of each page are
+ * kept sorted, as VByte-encoded gaps, one page after another in a single byte array, with an
+ * offset to where each page's links start. On the dense graphs HTMLBuilder makes, most gaps fit in
+ * a single byte, so a link costs about a byte rather than the 30 or more of a boxed set entry.
+ * <p>
+ * Pages are identified by their doc ID, from 0 to size() - 1.
+ */
+public class LinkGraph implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] offsets;
+    private final int[] degrees;
+    private final byte[] links;
+
+    private LinkGraph(int[] offsets, int[] degrees, byte[] links) {
+        this.offsets = offsets;
+        this.degrees = degrees;
+        this.links = links;
+    }
+
+    /**
+     * @return how many pages there are
+     */
+    public int size() {
+        return degrees.length;
+    }
+
+    /**
+     * @param page a doc ID
+     * @return how many distinct pages it links to
+     */
+    public int outDegree(int page) {
+        return degrees[page];
+    }
+
+    /**
+     * decodes the pages a page links to
+     * @param page a doc ID
+     * @param out where to put them, in increasing order; must have room for outDegree(page)
+     * @return how many there are
+     */
+    public int outLinks(int page, int[] out) {
+        new VByte.Reader(links, offsets[page]).nextDeltas(out, degrees[page]);
+        return degrees[page];
+    }
+
+    /**
+     * @return the largest out-degree of any page, so callers know how big a buffer to pass
+     */
+    public int maxOutDegree() {
+        int max = 0;
+        for (int degree : degrees) {
+            max = Math.max(max, degree);
+        }
+        return max;
+    }
+
+    /**
+     * Builds a LinkGraph one page at a time, in doc ID order
+     */
+    public static class Builder {
+        private final VByte links = new VByte(1 << 16);
+        private int[] offsets = new int[1024];
+        private int[] degrees = new int[1024];
+        private int size;
+
+        /**
+         * adds the next page's links; self-links and repeats are dropped
+         * @param page the doc ID, which must be size() (pages with no links can be skipped)
+         * @param targets the doc IDs it links to, in any order; this array is sorted in place
+         * @param count how many of them there are
+         */
+        public void add(int page, int[] targets, int count) {
+            if (page < size) {
+                throw new IllegalArgumentException("pages must be added in order");
+            }
+            while (size <= page) {
+                append(0);
+            }
+
+            Arrays.sort(targets, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (targets[i] != page && (distinct == 0 || targets[i] != targets[distinct - 1])) {
+                    targets[distinct++] = targets[i];
+                }
+            }
+
+            degrees[page] = distinct;
+            links.writeDeltas(targets, distinct);
+        }
+
+        /**
+         * @param pages how many pages the graph has in total, including any with no links at
+         *              the end
+         * @return the finished graph
+         */
+        public LinkGraph build(int pages) {
+            while (size < pages) {
+                append(0);
+            }
+
+            links.trim();
+            return new LinkGraph(Arrays.copyOf(offsets, size), Arrays.copyOf(degrees, size), links.array());
+        }
+
+        private void append(int degree) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+                degrees = Arrays.copyOf(degrees, size * 2);
+            }
+            offsets[size] = links.length();
+            degrees[size] = degree;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package assignment;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a log of queries against a running WebServer and reports its throughput and latency.
+ * <p>
+ * In closed-loop mode (the default) each of the client threads sends a query, waits for the
+ * answer, and sends the next, the way a fixed number of users would. That measures how much the
+ * server can take, but not how long users wait once it's overloaded: a slow response holds back
+ * the requests that would have been sent meanwhile, so they're never timed (coordinated
+ * omission). In open-loop mode, given --rate, requests are due at fixed intervals whatever the
+ * server is doing, and each one's latency is measured from when it was due rather than when a
+ * client thread got round to sending it, so time spent queued behind a slow request is counted,
+ * as in wrk2. The uncorrected service time is reported too, for comparison.
+ * <p>
+ * The log has one query per line, or one JSON object per line with a "query" field. Queries are
+ * sent in order, starting again from the top when the log runs out.
+ * <p>
+ * Usage: java assignment.LoadTester LOG [--url URL] [--threads N] [--rate QPS] [--seconds N]
+ * [--warmup N]
+ */
+public class LoadTester {
+    private final List<String> queries;
+    private final String url;
+    private final int threads;
+    // requests per second in open-loop mode, or 0 for closed-loop
+    private final double rate;
+    private final HttpClient client;
+
+    // when measuring starts and stops, in System.nanoTime()
+    private long measureStart, end;
+    // the next query to send, counted from the start of the run
+    private final AtomicLong next = new AtomicLong();
+    // latency from when each request was due, and from when it was actually sent
+    private final Histogram latency = new Histogram();
+    private final Histogram serviceTime = new Histogram();
+    private final LongAdder succeeded = new LongAdder();
+    // requests that came due but couldn't be sent before the end, as every thread was busy
+    private final LongAdder unsent = new LongAdder();
+    // failed requests, by HTTP status or exception
+    private final ConcurrentHashMap<String, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * @param queries the queries to send, in order
+     * @param url the search endpoint, such as http://localhost:1989/api/search
+     * @param threads how many requests can be outstanding at once
+     * @param rate how many requests to send a second, or 0 to send each as the last one finishes
+     */
+    public LoadTester(List<String> queries, String url, int threads, double rate) {
+        if (queries.isEmpty()) {
+            throw new IllegalArgumentException("there are no queries to send");
+        }
+
+        this.queries = queries;
+        this.url = url + (url.contains("?") ? "&" : "?") + "query=";
+        this.threads = threads;
+        this.rate = rate;
+        // the server answers one request per connection, and doesn't speak HTTP/2
+        client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    /**
+     * reads a query log: one query per line, or one JSON object with a "query" field per line
+     * @param path the log file
+     * @return the queries, skipping blank lines
+     */
+    public static List<String> readLog(String path) throws IOException {
+        List<String> queries = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+
+            if (line.trim().startsWith("{")) {
+                Object entry = Json.parse(line.trim());
+                Object query = entry instanceof Map ? ((Map<?, ?>) entry).get("query") : null;
+                if (query != null) {
+                    queries.add(query.toString());
+                }
+            } else {
+                queries.add(line);
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * sends queries for a while and prints what it measured
+     * @param warmupSeconds how long to send queries before measuring, so the server's JIT has
+     *                      compiled its hot paths
+     * @param seconds how long to measure for
+     */
+    public void run(int warmupSeconds, int seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        measureStart = start + warmupSeconds * 1000000000L;
+        end = measureStart + seconds * 1000000000L;
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                if (rate > 0) {
+                    openLoop(start);
+                } else {
+                    closedLoop();
+                }
+            }, "load-" + t);
+            workers[t].start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        // the last requests may finish a little after the end
+        report((System.nanoTime() - measureStart) / 1e9);
+    }
+
+    /**
+     * sends a query as soon as the last one is answered
+     */
+    private void closedLoop() {
+        while (true) {
+            long sent = System.nanoTime();
+            if (sent >= end) {
+                return;
+            }
+            send(next.getAndIncrement(), sent, sent);
+        }
+    }
+
+    /**
+     * sends each query when it's due, one every 1/rate seconds from the start, or as soon as
+     * possible after that if every thread was busy
+     */
+    private void openLoop(long start) {
+        // requests still due when the time's up are counted, but not sent
+        double interval = 1e9 / rate;
+        while (true) {
+            long ticket = next.getAndIncrement();
+            long due = start + (long) (ticket * interval);
+            if (due >= end) {
+                return;
+            }
+
+            long now;
+            while ((now = System.nanoTime()) < due) {
+                LockSupport.parkNanos(due - now);
+            }
+            if (now < end) {
+                send(ticket, due, now);
+            } else if (due >= measureStart) {
+                unsent.increment();
+            }
+        }
+    }
+
+    /**
+     * sends one query and records how it went, if it was due after the warmup
+     */
+    private void send(long ticket, long due, long sent) {
+        String query = queries.get((int) (ticket % queries.size()));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(url + URLEncoder.encode(query, StandardCharsets.UTF_8)))
+                .timeout(Duration.ofSeconds(30))
+                .GET()
+                .build();
+
+        String error = null;
+        try {
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() / 100 != 2) {
+                error = "HTTP " + response.statusCode();
+            }
+        } catch (IOException e) {
+            error = e.getClass().getSimpleName();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        long done = System.nanoTime();
+        if (due < measureStart) {
+            return;
+        }
+        if (error == null) {
+            succeeded.increment();
+            latency.record(done - due);
+            serviceTime.record(done - sent);
+        } else {
+            errors.computeIfAbsent(error, (String key) -> new LongAdder()).increment();
+        }
+    }
+
+    private void report(double seconds) {
+        long failed = 0;
+        for (LongAdder count : errors.values()) {
+            failed += count.sum();
+        }
+        long total = succeeded.sum() + failed;
+
+        System.out.printf("%s, %d threads: %d requests in %.1fs, %.1f/s, %d errors (%.2f%%)%n",
+                rate > 0 ? String.format("open loop at %.1f/s", rate) : "closed loop", threads, total, seconds,
+                (double) succeeded.sum() / seconds, failed, total == 0 ? 0 : 100.0 * failed / total);
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(errors).entrySet()) {
+            System.out.printf("  %-28s %d%n", entry.getKey(), entry.getValue().sum());
+        }
+        if (unsent.sum() > 0) {
+            // had they been sent, they'd all have taken longer than anything measured
+            System.out.printf("  %d requests fell due but were never sent, as the server fell behind%n", unsent.sum());
+        }
+        if (rate > 0) {
+            report("latency (corrected)", latency);
+        }
+        report(rate > 0 ? "service time" : "latency", serviceTime);
+    }
+
+    private static void report(String name, Histogram histogram) {
+        if (histogram.getCount() == 0) {
+            return;
+        }
+        System.out.printf("  %-20s p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms mean=%.2fms%n", name,
+                histogram.getValueAtQuantile(0.5) / 1e6, histogram.getValueAtQuantile(0.99) / 1e6,
+                histogram.getValueAtQuantile(0.999) / 1e6, histogram.getMax() / 1e6, histogram.getMean() / 1e6);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        String url = "http://localhost:1989/api/search";
+        int threads = 4, seconds = 30, warmup = 5;
+        double rate = 0;
+        String log = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--url": url = args[++i]; break;
+                    case "--threads": threads = Integer.parseInt(args[++i]); break;
+                    case "--rate": rate = Double.parseDouble(args[++i]); break;
+                    case "--seconds": seconds = Integer.parseInt(args[++i]); break;
+                    case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                    default:
+                        if (args[i].startsWith("--") || log != null) {
+                            throw new IllegalArgumentException("unknown option " + args[i]);
+                        }
+                        log = args[i];
+                }
+            }
+            if (log == null) {
+                throw new IllegalArgumentException("no query log given");
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.err.println("Usage: java assignment.LoadTester LOG [--url URL] [--threads N] [--rate QPS] "
+                    + "[--seconds N] [--warmup N]");
+            System.exit(1);
+            return;
+        }
+
+        new LoadTester(readLog(log), url, threads, rate).run(warmup, seconds);
+    }
+}
@@ -0,0 +1,102 @@
+package assignment;
+
+import java.util.Arrays;
+
+/**
+ * A map from longs to non-negative ints, stored in two open-addressed arrays rather than as boxed
+ * keys and values in a HashMap, so each entry costs 12 to 24 bytes instead of around 70.
+ */
+public class LongIntHashMap {
+    private static final float LOAD_FACTOR = 0.6f;
+
+    // a value of -1 marks an empty slot
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap() {
+        this(1024);
+    }
+
+    /**
+     * @param expected how many entries the map is expected to hold
+     */
+    public LongIntHashMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, -1);
+    }
+
+    /**
+     * @param key the key
+     * @return the value for the key, or -1 if it isn't in the map
+     */
+    public int get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = slotOf(key, mask); values[slot] != -1; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * adds a key to the map, unless it's already there
+     * @param key the key
+     * @param value the value for the key, which must not be negative
+     * @return the value already in the map for the key, or -1 if the value was added
+     */
+    public int putIfAbsent(long key, int value) {
+        int mask = keys.length - 1;
+        int slot = slotOf(key, mask);
+        while (values[slot] != -1) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size > keys.length * LOAD_FACTOR) {
+            grow();
+        }
+        return -1;
+    }
+
+    /**
+     * @return how many entries are in the map
+     */
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        Arrays.fill(values, -1);
+
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != -1) {
+                int slot = slotOf(oldKeys[i], mask);
+                while (values[slot] != -1) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static int slotOf(long key, int mask) {
+        // the keys are usually hashes already, but mix anyway in case they aren't
+        long h = key * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -0,0 +1,139 @@
+package assignment;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A registry of counters, gauges and histograms that can be written out in the Prometheus text
+ * exposition format. Metrics are looked up once, when whatever records them is set up, so the cost
+ * of recording is just that of the LongAdder or Histogram itself.
+ * <p>
+ * Every metric belongs to a family (a name, a type and a help string) and is identified within it
+ * by its labels, which are passed already formatted, such as {@code route="/search"}; label()
+ * formats one, escaping its value.
+ */
+public class Metrics {
+    // histograms are recorded in nanoseconds and exported in seconds, as Prometheus prefers
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final LinkedHashMap<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * gets (or creates) a counter
+     * @param name the metric name, which should end in _total
+     * @param help a description of the metric
+     * @param labels the formatted labels, or "" for none
+     * @return the counter to increment
+     */
+    public synchronized LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, help, "counter").metrics.computeIfAbsent(labels, (String l) -> new LongAdder());
+    }
+
+    /**
+     * gets (or creates) a histogram of durations in nanoseconds, exported as a summary in seconds
+     * @param name the metric name, which should end in _seconds
+     * @param help a description of the metric
+     * @param labels the formatted labels, or "" for none
+     * @return the histogram to record into
+     */
+    public synchronized Histogram histogram(String name, String help, String labels) {
+        return (Histogram) family(name, help, "summary").metrics.computeIfAbsent(labels, (String l) -> new Histogram());
+    }
+
+    /**
+     * registers a gauge, whose value is read whenever the metrics are written
+     * @param name the metric name
+     * @param help a description of the metric
+     * @param labels the formatted labels, or "" for none
+     * @param value supplies the current value
+     */
+    public synchronized void gauge(String name, String help, String labels, LongSupplier value) {
+        family(name, help, "gauge").metrics.put(labels, value);
+    }
+
+    /**
+     * formats a label, escaping its value as the text format requires
+     * @param name the label name
+     * @param value the label value, which may contain anything
+     * @return the label, such as {@code route="/search"}
+     */
+    public static String label(String name, String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    /**
+     * writes every metric in the Prometheus text format, version 0.0.4
+     * @param out the response to write to
+     */
+    public synchronized void writeTo(HttpResponse out) throws IOException {
+        for (Map.Entry<String, Family> entry : families.entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.write("# HELP ").write(name).write(' ')
+                    .write(family.help.replace("\\", "\\\\").replace("\n", "\\n")).write('\n');
+            out.write("# TYPE ").write(name).write(' ').write(family.type).write('\n');
+
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                String labels = metric.getKey();
+                Object value = metric.getValue();
+
+                if (value instanceof LongAdder) {
+                    writeSample(out, name, labels, null, Long.toString(((LongAdder) value).sum()));
+                } else if (value instanceof LongSupplier) {
+                    writeSample(out, name, labels, null, Long.toString(((LongSupplier) value).getAsLong()));
+                } else {
+                    Histogram histogram = (Histogram) value;
+                    for (double quantile : QUANTILES) {
+                        writeSample(out, name, labels, label("quantile", Double.toString(quantile)),
+                                seconds(histogram.getValueAtQuantile(quantile)));
+                    }
+                    writeSample(out, name + "_sum", labels, null, seconds(histogram.getSum()));
+                    writeSample(out, name + "_count", labels, null, Long.toString(histogram.getCount()));
+                }
+            }
+        }
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, (String n) -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+
+        return family;
+    }
+
+    private static void writeSample(HttpResponse out, String name, String labels, String extra,
+                                    String value) throws IOException {
+        out.write(name);
+        if (!labels.isEmpty() || extra != null) {
+            out.write('{').write(labels);
+            if (extra != null) {
+                out.write(labels.isEmpty() ? "" : ",").write(extra);
+            }
+            out.write('}');
+        }
+        out.write(' ').write(value).write('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1e9);
+    }
+
+    /**
+     * Metrics that share a name, told apart by their labels
+     */
+    private static class Family {
+        final String help, type;
+        // labels to a LongAdder, LongSupplier or Histogram, depending on the type
+        final LinkedHashMap<String, Object> metrics = new LinkedHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package assignment;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Finds pages whose text is nearly the same as a page that has already been seen, using SimHash:
+ * each page is reduced to a 64-bit fingerprint such that similar pages get fingerprints that
+ * differ in only a few bits. Fingerprints are kept in a banded LSH table: each is split into four
+ * 16-bit bands, and since two fingerprints within MAX_DISTANCE (3) bits of each other must agree
+ * exactly on at least one band, only the pages sharing a band need to be compared. Among
+ * thousands of pages, some unrelated ones will have fingerprints that close by chance, so each
+ * match is confirmed by the caller, for instance by comparing the pages' words with similarity().
+ *
+ * @param <T> what is remembered about each distinct page
+ */
+public class NearDuplicateDetector<T> {
+    // pages whose fingerprints differ in at most this many bits are considered the same
+    public static final int MAX_DISTANCE = 3;
+    // pages with fewer words than this are too short to fingerprint reliably
+    public static final int MIN_WORDS = 8;
+    // the least similarity() two pages can have and still be near-duplicates
+    public static final double MIN_SIMILARITY = 0.8;
+
+    private static final int BANDS = 4;
+    private static final int BAND_BITS = 64 / BANDS;
+    private static final int BAND_MASK = (1 << BAND_BITS) - 1;
+
+    // the start of the chain of fingerprints in each bucket of each band, as an index into
+    // fingerprints, or -1
+    private final int[] heads = new int[BANDS << BAND_BITS];
+    // the next fingerprint in the same bucket, for each band of each fingerprint
+    private int[] next = new int[BANDS * 64];
+    private long[] fingerprints = new long[64];
+    private Object[] values = new Object[64];
+    private int size;
+
+    public NearDuplicateDetector() {
+        Arrays.fill(heads, -1);
+    }
+
+    /**
+     * computes the SimHash of a page from its words. Each distinct word is one feature, however
+     * often it occurs, so boilerplate that repeats on a page (like "link" on every anchor) can't
+     * outweigh everything else. Shingles of several words would make the fingerprint depend on
+     * word order, but they multiply the features one edit changes, so short pages would rarely
+     * match.
+     * @param words the page's words, in order
+     * @return the page's fingerprint
+     */
+    public static long simHash(List<String> words) {
+        long[] features = new long[words.size()];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = hash(words.get(i));
+        }
+        Arrays.sort(features);
+
+        int[] weights = new int[64];
+        for (int i = 0; i < features.length; i++) {
+            if (i > 0 && features[i] == features[i - 1]) {
+                continue;
+            }
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += (int) ((features[i] >>> bit) & 1) * 2 - 1;
+            }
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @param a some words
+     * @param b some more words
+     * @return the Jaccard similarity of the distinct words in each: how many are in both, out of
+     *         how many are in either
+     */
+    public static double similarity(Collection<String> a, Collection<String> b) {
+        HashSet<String> first = new HashSet<>(a);
+        HashSet<String> second = new HashSet<>(b);
+        int both = 0;
+        for (String word : second) {
+            if (first.contains(word)) {
+                both++;
+            }
+        }
+        int either = first.size() + second.size() - both;
+        return either == 0 ? 1 : (double) both / either;
+    }
+
+    /**
+     * looks for an earlier page within MAX_DISTANCE bits of the fingerprint, and remembers this
+     * one if there isn't one
+     * @param fingerprint the page's SimHash
+     * @param value what to remember about the page
+     * @param confirm checks whether an earlier page whose fingerprint is close enough, given what
+     *                was remembered about it, really is a near-duplicate
+     * @return what was remembered about the earlier page, or null if this page is new
+     */
+    @SuppressWarnings("unchecked")
+    public T findOrAdd(long fingerprint, T value, Predicate<T> confirm) {
+        for (int band = 0; band < BANDS; band++) {
+            for (int i = heads[bucketOf(fingerprint, band)]; i != -1; i = next[i * BANDS + band]) {
+                if (Long.bitCount(fingerprints[i] ^ fingerprint) <= MAX_DISTANCE && confirm.test((T) values[i])) {
+                    return (T) values[i];
+                }
+            }
+        }
+
+        if (size == fingerprints.length) {
+            fingerprints = Arrays.copyOf(fingerprints, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+            next = Arrays.copyOf(next, size * 2 * BANDS);
+        }
+
+        fingerprints[size] = fingerprint;
+        values[size] = value;
+        for (int band = 0; band < BANDS; band++) {
+            int bucket = bucketOf(fingerprint, band);
+            next[size * BANDS + band] = heads[bucket];
+            heads[bucket] = size;
+        }
+        size++;
+        return null;
+    }
+
+    /**
+     * @return how many distinct pages have been remembered
+     */
+    public int size() {
+        return size;
+    }
+
+    private static int bucketOf(long fingerprint, int band) {
+        return (band << BAND_BITS) | ((int) (fingerprint >>> (band * BAND_BITS)) & BAND_MASK);
+    }
+
+    private static long hash(String word) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * MurmurHash3's finalizer, so every bit of the feature depends on every bit of the input
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,5 +1,6 @@
 package assignment;
 import java.io.Serializable;
+import java.net.MalformedURLException;
 import java.net.URL;
 
 /**
@@ -7,11 +8,20 @@ import java.net.URL;
  * we provided here is the bare minimum requirement to be a Page - feel free to add anything you
  * want as long as you don't break the getURL method.
  *
- * TODO: Implement this!
+ * Pages in the index are views onto a row of its PageTable, which holds everything about them;
+ * they compare by doc ID. Pages made from a URL (to look one up, say) compare by URL, and hash
+ * the same way as the index's pages do, so the two can be mixed in sets.
  */
 public class Page implements Serializable {
-    // The URL the page was located at.
+    private static final long serialVersionUID = 1L;
+
+    // The URL the page was located at; for views, made when it's first asked for
     private URL url;
+    // the table this page is a row of, and which row, or null and -1
+    private final PageTable table;
+    private final int docId;
+    // the URL string's hashCode(), worked out once
+    private final int hash;
 
     /**
      * Creates a Page with a given URL.
@@ -19,25 +29,75 @@ public class Page implements Serializable {
      */
     public Page(URL url) {
         this.url = url;
+        table = null;
+        docId = -1;
+        hash = url.toString().hashCode();
+    }
+
+    /**
+     * Creates a view of a row of a PageTable.
+     */
+    Page(PageTable table, int docId) {
+        this.table = table;
+        this.docId = docId;
+        hash = table.getURLHash(docId);
     }
 
     /**
      * @return the URL of the page.
      */
-    public URL getURL() { return url; }
+    public URL getURL() {
+        if (url == null) {
+            try {
+                url = new URL(table.getURL(docId));
+            } catch (MalformedURLException e) {
+                // the table only holds URLs that were already parsed once
+                throw new IllegalStateException(e);
+            }
+        }
+        return url;
+    }
+
+    /**
+     * @return the page's doc ID, or -1 if it isn't a page from the index
+     */
+    public int getDocId() {
+        return docId;
+    }
+
+    /**
+     * @return the page's title, or null if it doesn't have one or isn't a page from the index
+     */
+    public String getTitle() {
+        return table == null ? null : table.getTitle(docId);
+    }
+
+    PageTable getTable() {
+        return table;
+    }
 
     @Override
     public boolean equals(Object o) {
-        return (o instanceof Page) && this.url.toString().equals(((Page) o).url.toString());
+        if (this == o) {
+            return true;
+        } else if (!(o instanceof Page)) {
+            return false;
+        }
+
+        Page other = (Page) o;
+        if (table != null && table == other.table) {
+            return docId == other.docId;
+        }
+        return hash == other.hash && toString().equals(other.toString());
     }
 
     @Override
     public int hashCode() {
-        return url.toString().hashCode();
+        return hash;
     }
 
     @Override
     public String toString() {
-        return this.url.toString();
+        return table != null ? table.getURL(docId) : url.toString();
     }
 }
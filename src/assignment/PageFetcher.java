@@ -0,0 +1,291 @@
+package assignment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Fetches pages as raw bytes into pooled direct ByteBuffers, works out what charset they are in,
+ * and decodes them into a char[] that is reused from page to page, ready to hand to attoparser.
+ * Files are read straight from a FileChannel; anything else goes through the URL's own stream.
+ * <p>
+ * Fetching is safe to do from several threads, but decoding is not, since every page is decoded
+ * into the same array.
+ */
+public class PageFetcher {
+    // pages larger than this are almost certainly not web pages
+    static final int MAX_PAGE_SIZE = 64 * 1024 * 1024;
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED = 16;
+    // how far into the page to look for a <meta charset>, as the HTML spec suggests
+    private static final int SNIFF_LENGTH = 1024;
+
+    private final ArrayDeque<ByteBuffer> pool = new ArrayDeque<>();
+    private final HashMap<Charset, CharsetDecoder> decoders = new HashMap<>();
+    private char[] chars = new char[DEFAULT_BUFFER_SIZE];
+
+    /**
+     * The raw bytes of a fetched page, and whatever the server told us about their type
+     */
+    public static class Body {
+        public final URL url;
+        // flipped, so the page runs from position to limit
+        public final ByteBuffer bytes;
+        // the Content-Type header, or null if there wasn't one (files don't have one)
+        public final String contentType;
+
+        public Body(URL url, ByteBuffer bytes, String contentType) {
+            this.url = url;
+            this.bytes = bytes;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * reads the whole page at the given URL into a pooled buffer
+     * @param url the page to fetch
+     * @return the page's bytes, which must be given back with release() once they're decoded
+     * @throws IOException if the page can't be read
+     */
+    public Body fetch(URL url) throws IOException {
+        if (url.getProtocol().equals("file")) {
+            try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+                long size = channel.size();
+                if (size > MAX_PAGE_SIZE) {
+                    throw new IOException(url + " is too large to be a page");
+                }
+
+                return new Body(url, readFully(channel, (int) size + 1), null);
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // not a plain file path; let the URL deal with it
+            }
+        }
+
+        URLConnection connection = url.openConnection();
+        try (InputStream in = connection.getInputStream();
+             ReadableByteChannel channel = Channels.newChannel(in)) {
+            int length = connection.getContentLength();
+            if (length > MAX_PAGE_SIZE) {
+                throw new IOException(url + " is too large to be a page");
+            }
+
+            return new Body(url, readFully(channel, length > 0 ? length + 1 : DEFAULT_BUFFER_SIZE),
+                    connection.getContentType());
+        }
+    }
+
+    /**
+     * returns a page's buffer to the pool
+     * @param body a page from fetch(); its bytes must not be used afterwards
+     */
+    public void release(Body body) {
+        release(body.bytes);
+    }
+
+    /**
+     * takes a buffer from the pool, or allocates one if none of the free ones are big enough
+     * @param capacity the smallest capacity that will do
+     * @return an empty buffer
+     */
+    public ByteBuffer acquire(int capacity) {
+        synchronized (pool) {
+            for (int i = pool.size(); i > 0; i--) {
+                ByteBuffer buffer = pool.poll();
+                if (buffer.capacity() >= capacity) {
+                    buffer.clear();
+                    return buffer;
+                }
+                pool.offer(buffer);
+            }
+        }
+
+        // direct, so channels can read into it without copying through a temporary buffer
+        return ByteBuffer.allocateDirect(Math.max(capacity, DEFAULT_BUFFER_SIZE));
+    }
+
+    /**
+     * returns a buffer to the pool, unless it's one that was grown for an unusually large page
+     * @param buffer a buffer from acquire(), which must not be used afterwards
+     */
+    public void release(ByteBuffer buffer) {
+        // keeping large buffers around would tie up up to MAX_POOLED * MAX_PAGE_SIZE of direct memory
+        if (!buffer.isDirect() || buffer.capacity() > DEFAULT_BUFFER_SIZE) {
+            return;
+        }
+
+        synchronized (pool) {
+            if (pool.size() < MAX_POOLED) {
+                pool.offer(buffer);
+            }
+        }
+    }
+
+    /**
+     * decodes a page into characters, using the charset from its byte order mark, its
+     * Content-Type, or its {@code <meta>} tags, in that order, and UTF-8 if none of them say
+     * @param body the page to decode; its buffer's position is not changed
+     * @return the page's text, backed by an array that is overwritten by the next call
+     */
+    public CharBuffer decode(Body body) throws CharacterCodingException {
+        ByteBuffer bytes = body.bytes.duplicate();
+        Charset charset = detectCharset(bytes, body.contentType);
+
+        CharsetDecoder decoder = decoders.computeIfAbsent(charset, (Charset c) -> c.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE));
+        decoder.reset();
+
+        int needed = (int) Math.min(Integer.MAX_VALUE - 8, (long) (bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1);
+        if (chars.length < needed) {
+            chars = new char[Math.max(needed, chars.length * 2)];
+        }
+
+        CharBuffer out = CharBuffer.wrap(chars);
+        CoderResult result = decoder.decode(bytes, out, true);
+        if (result.isUnderflow()) {
+            result = decoder.flush(out);
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+
+        out.flip();
+        return out;
+    }
+
+    /**
+     * reads the channel until it's done, growing the buffer as needed
+     */
+    private ByteBuffer readFully(ReadableByteChannel channel, int sizeHint) throws IOException {
+        ByteBuffer buffer = acquire(sizeHint);
+        try {
+            while (channel.read(buffer) >= 0) {
+                if (!buffer.hasRemaining()) {
+                    if (buffer.capacity() >= MAX_PAGE_SIZE) {
+                        throw new IOException("page is too large");
+                    }
+
+                    ByteBuffer bigger = acquire(Math.min(buffer.capacity() * 2, MAX_PAGE_SIZE));
+                    buffer.flip();
+                    bigger.put(buffer);
+                    release(buffer);
+                    buffer = bigger;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            release(buffer);
+            throw e;
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * works out a page's charset, skipping over the byte order mark if there is one
+     * @param bytes the page; its position is moved past any byte order mark
+     * @param contentType the Content-Type header, or null
+     * @return the page's charset
+     */
+    static Charset detectCharset(ByteBuffer bytes, String contentType) {
+        int start = bytes.position();
+        int b0 = bytes.remaining() > 0 ? bytes.get(start) & 0xff : -1;
+        int b1 = bytes.remaining() > 1 ? bytes.get(start + 1) & 0xff : -1;
+        int b2 = bytes.remaining() > 2 ? bytes.get(start + 2) & 0xff : -1;
+
+        if (b0 == 0xef && b1 == 0xbb && b2 == 0xbf) {
+            bytes.position(start + 3);
+            return StandardCharsets.UTF_8;
+        } else if (b0 == 0xfe && b1 == 0xff) {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16BE;
+        } else if (b0 == 0xff && b1 == 0xfe) {
+            bytes.position(start + 2);
+            return StandardCharsets.UTF_16LE;
+        }
+
+        Charset charset = contentType == null ? null : charsetParameter(contentType, 0, contentType.length());
+        if (charset != null) {
+            return charset;
+        }
+
+        charset = sniffMetaCharset(bytes);
+        return charset != null ? charset : StandardCharsets.UTF_8;
+    }
+
+    /**
+     * looks for {@code <meta charset=...>} or {@code <meta http-equiv=... content="...; charset=...">}
+     * near the start of the page, treating the bytes as ASCII (which every charset we could
+     * sensibly detect this way agrees with)
+     */
+    private static Charset sniffMetaCharset(ByteBuffer bytes) {
+        int start = bytes.position();
+        int end = Math.min(bytes.limit(), start + SNIFF_LENGTH);
+
+        StringBuilder head = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            head.append((char) (bytes.get(i) & 0xff));
+        }
+        String lower = head.toString().toLowerCase();
+
+        int meta = lower.indexOf("<meta");
+        while (meta >= 0) {
+            int close = lower.indexOf('>', meta);
+            if (close < 0) {
+                close = lower.length();
+            }
+
+            Charset charset = charsetParameter(lower, meta, close);
+            if (charset != null) {
+                return charset;
+            }
+            meta = lower.indexOf("<meta", close);
+        }
+
+        return null;
+    }
+
+    /**
+     * finds "charset=name" between start and end, with the name optionally quoted
+     */
+    private static Charset charsetParameter(String str, int start, int end) {
+        int idx = str.toLowerCase().indexOf("charset", start);
+        if (idx < 0 || idx >= end) {
+            return null;
+        }
+
+        int i = idx + "charset".length();
+        while (i < end && (str.charAt(i) == ' ' || str.charAt(i) == '=' || str.charAt(i) == '"' || str.charAt(i) == '\'')) {
+            i++;
+        }
+
+        int nameStart = i;
+        while (i < end && (Character.isLetterOrDigit(str.charAt(i)) || "-_.:".indexOf(str.charAt(i)) >= 0)) {
+            i++;
+        }
+
+        try {
+            return i > nameStart ? Charset.forName(str.substring(nameStart, i)) : null;
+        } catch (IllegalArgumentException e) {
+            // an unknown or illegal name; carry on as if it wasn't there
+            return null;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package assignment;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Computes PageRank over a LinkGraph by power iteration. Each iteration pulls rank along the
+ * in-links of every page rather than pushing it along out-links, so pages can be split between
+ * threads with no two threads ever writing the same entry.
+ */
+public class PageRank {
+    public static final double DAMPING = 0.85;
+    public static final double TOLERANCE = 1e-9;
+    public static final int MAX_ITERATIONS = 100;
+
+    // how many pages each parallel task handles at a time
+    private static final int CHUNK = 1024;
+
+    private PageRank() {}
+
+    /**
+     * computes PageRank with the usual damping factor, until it converges
+     * @param graph the links between pages
+     * @return each page's rank, indexed by doc ID; the ranks add up to 1
+     */
+    public static float[] compute(LinkGraph graph) {
+        return compute(graph, DAMPING, TOLERANCE, MAX_ITERATIONS);
+    }
+
+    /**
+     * @param graph the links between pages
+     * @param damping the chance of following a link rather than jumping to a random page
+     * @param tolerance stop once the ranks change by less than this in total (L1 distance)
+     * @param maxIterations stop after this many iterations regardless
+     * @return each page's rank, indexed by doc ID; the ranks add up to 1
+     */
+    public static float[] compute(LinkGraph graph, double damping, double tolerance, int maxIterations) {
+        int n = graph.size();
+        if (n == 0) {
+            return new float[0];
+        }
+
+        // the in-links of every page, as plain CSR, since they're read on every iteration
+        int[] inOffsets = new int[n + 1];
+        int[] inLinks = transpose(graph, inOffsets);
+
+        double[] rank = new double[n];
+        double[] next = new double[n];
+        double[] contribution = new double[n];
+        Arrays.fill(rank, 1.0 / n);
+        int chunks = (n + CHUNK - 1) / CHUNK;
+
+        for (int iteration = 0; iteration < maxIterations; iteration++) {
+            // pages with no out-links spread their rank evenly over every page
+            double dangling = IntStream.range(0, chunks).parallel().mapToDouble((int chunk) -> {
+                double sum = 0;
+                for (int page = chunk * CHUNK; page < Math.min(n, (chunk + 1) * CHUNK); page++) {
+                    int degree = graph.outDegree(page);
+                    if (degree == 0) {
+                        sum += rank[page];
+                        contribution[page] = 0;
+                    } else {
+                        contribution[page] = rank[page] / degree;
+                    }
+                }
+                return sum;
+            }).sum();
+
+            double base = (1 - damping) / n + damping * dangling / n;
+            double change = IntStream.range(0, chunks).parallel().mapToDouble((int chunk) -> {
+                double delta = 0;
+                for (int page = chunk * CHUNK; page < Math.min(n, (chunk + 1) * CHUNK); page++) {
+                    double sum = 0;
+                    for (int i = inOffsets[page]; i < inOffsets[page + 1]; i++) {
+                        sum += contribution[inLinks[i]];
+                    }
+                    next[page] = base + damping * sum;
+                    delta += Math.abs(next[page] - rank[page]);
+                }
+                return delta;
+            }).sum();
+
+            System.arraycopy(next, 0, rank, 0, n);
+            if (change < tolerance) {
+                break;
+            }
+        }
+
+        float[] result = new float[n];
+        for (int page = 0; page < n; page++) {
+            result[page] = (float) rank[page];
+        }
+        return result;
+    }
+
+    /**
+     * @param inOffsets filled in with where each page's in-links start
+     * @return the in-links of every page, one page after another
+     */
+    private static int[] transpose(LinkGraph graph, int[] inOffsets) {
+        int n = graph.size();
+        int[] targets = new int[Math.max(1, graph.maxOutDegree())];
+
+        for (int page = 0; page < n; page++) {
+            int degree = graph.outLinks(page, targets);
+            for (int i = 0; i < degree; i++) {
+                inOffsets[targets[i] + 1]++;
+            }
+        }
+        for (int page = 0; page < n; page++) {
+            inOffsets[page + 1] += inOffsets[page];
+        }
+
+        int[] inLinks = new int[inOffsets[n]];
+        int[] fill = Arrays.copyOf(inOffsets, n);
+        for (int page = 0; page < n; page++) {
+            int degree = graph.outLinks(page, targets);
+            for (int i = 0; i < degree; i++) {
+                inLinks[fill[targets[i]]++] = page;
+            }
+        }
+        return inLinks;
+    }
+}
@@ -0,0 +1,108 @@
+package assignment;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Everything the index knows about its pages, stored by column and indexed by doc ID: each
+ * page's URL, title, word count, when it was fetched, and its static score. Pages from the table
+ * are views onto a row, so they cost a few bytes each and compare by doc ID.
+ */
+public class PageTable implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String[] urls = new String[1024];
+    private String[] titles = new String[1024];
+    private int[] tokenCounts = new int[1024];
+    private long[] fetchTimes = new long[1024];
+    // the URL's String.hashCode(), so views can hash without touching the URL
+    private int[] urlHashes = new int[1024];
+    private float[] staticScores = new float[0];
+    // views are made once per page, so the same doc ID always gives the same Page
+    private Page[] views = new Page[1024];
+    private int size;
+
+    /**
+     * adds a row for a page
+     * @param url the page's URL
+     * @param title the page's title, or null if it doesn't have one
+     * @param tokenCount how many words it has
+     * @param fetchTime when it was fetched, in milliseconds since the epoch
+     * @return the page's doc ID
+     */
+    public int add(String url, String title, int tokenCount, long fetchTime) {
+        if (size == urls.length) {
+            int capacity = size * 2;
+            urls = Arrays.copyOf(urls, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            tokenCounts = Arrays.copyOf(tokenCounts, capacity);
+            fetchTimes = Arrays.copyOf(fetchTimes, capacity);
+            urlHashes = Arrays.copyOf(urlHashes, capacity);
+            views = Arrays.copyOf(views, capacity);
+        }
+
+        int doc = size++;
+        urls[doc] = url;
+        titles[doc] = title;
+        tokenCounts[doc] = tokenCount;
+        fetchTimes[doc] = fetchTime;
+        urlHashes[doc] = url.hashCode();
+        views[doc] = new Page(this, doc);
+        return doc;
+    }
+
+    /**
+     * @return how many pages there are
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param doc a doc ID
+     * @return the page with that doc ID
+     */
+    public Page getPage(int doc) {
+        return views[doc];
+    }
+
+    public String getURL(int doc) {
+        return urls[doc];
+    }
+
+    /**
+     * @return the page's title, or null if it doesn't have one
+     */
+    public String getTitle(int doc) {
+        return titles[doc];
+    }
+
+    public int getTokenCount(int doc) {
+        return tokenCounts[doc];
+    }
+
+    /**
+     * @return when the page was fetched, in milliseconds since the epoch
+     */
+    public long getFetchTime(int doc) {
+        return fetchTimes[doc];
+    }
+
+    int getURLHash(int doc) {
+        return urlHashes[doc];
+    }
+
+    /**
+     * @param scores every page's static score, by doc ID
+     */
+    public void setStaticScores(float[] scores) {
+        staticScores = scores;
+    }
+
+    /**
+     * @return the page's query-independent score, higher being better, or 0 if it has none
+     */
+    public float getStaticScore(int doc) {
+        return doc < staticScores.length ? staticScores[doc] : 0;
+    }
+}
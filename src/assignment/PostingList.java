@@ -0,0 +1,381 @@
+package assignment;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * The pages a word is on, and where on them, compressed. Postings are kept in doc ID order, in
+ * blocks of BLOCK_SIZE pages. Each page is stored as the gap from the doc ID before it and how many
+ * times the word is on it, all VByte encoded. Most words are only on a page once, so a lone
+ * position is stored right there too; otherwise the positions go, as gaps, in a separate stream,
+ * and the page's entry says how many bytes they take, so pages can be stepped over without
+ * decoding their positions. A skip table holds the last doc ID of each block and where its docs
+ * and positions start, so looking up one page only decodes the block it would be in.
+ *
+ * A list can also be written out as one record, with writeTo(), and read back in place, with
+ * view(), so a PostingStore can keep lists off the heap without copying them back onto it.
+ */
+public class PostingList implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int BLOCK_SIZE = 128;
+    // what a Cursor's doc is once it's gone past the last page
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    // for each page: the gap from the doc before, minus one, how many positions it has, minus one,
+    // and then either its position, if it only has one, or how many bytes its positions take
+    private VByte docs;
+    // for each page with more than one position: its positions, as the gaps between them
+    private VByte positions;
+    // the skip table: for each block, its last doc ID and where it starts in docs and positions
+    private int[] blockLastDocs;
+    private int[] blockDocOffsets;
+    private int[] blockPositionOffsets;
+    private int blockCount;
+    private int docCount;
+    private int lastDoc = -1;
+    // for a view of a record: the record's docs, positions and skip table, in place of the above
+    private transient ByteBuffer storedDocs, storedPositions;
+    private transient IntBuffer storedLastDocs, storedDocOffsets, storedPositionOffsets;
+
+    public PostingList() {
+        docs = new VByte(0);
+        positions = new VByte(0);
+        blockLastDocs = new int[1];
+        blockDocOffsets = new int[1];
+        blockPositionOffsets = new int[1];
+    }
+
+    private PostingList(ByteBuffer record) {
+        IntBuffer header = record.asIntBuffer();
+        docCount = header.get(0);
+        blockCount = header.get(1);
+        lastDoc = header.get(2);
+        int docsLength = header.get(3);
+        int positionsLength = header.get(4);
+        storedLastDocs = slice(header, 5, blockCount);
+        storedDocOffsets = slice(header, 5 + blockCount, blockCount);
+        storedPositionOffsets = slice(header, 5 + 2 * blockCount, blockCount);
+
+        int start = record.position() + 4 * (5 + 3 * blockCount);
+        storedDocs = record.duplicate().position(start).limit(start + docsLength).slice();
+        storedPositions = record.duplicate().position(start + docsLength)
+                .limit(start + docsLength + positionsLength).slice();
+    }
+
+    /**
+     * @param record a list written by writeTo(), starting at the buffer's position, which must be
+     *               a multiple of 4 bytes from where the buffer starts, in the byte order it was
+     *               written in
+     * @return the list, read where it is rather than copied; it can't be added to
+     */
+    public static PostingList view(ByteBuffer record) {
+        return new PostingList(record);
+    }
+
+    private static IntBuffer slice(IntBuffer buffer, int start, int length) {
+        return buffer.duplicate().position(start).limit(start + length).slice();
+    }
+
+    /**
+     * adds a page to the end of the list
+     * @param doc the page's doc ID, which must be higher than any already in the list
+     * @param locations where the word is on the page, in increasing order
+     * @param count how many of them there are, at least one
+     */
+    public void add(int doc, int[] locations, int count) {
+        if (docs == null) {
+            throw new IllegalStateException("a view of a stored list can't be added to");
+        } else if (doc <= lastDoc) {
+            throw new IllegalArgumentException("doc " + doc + " added after " + lastDoc);
+        }
+
+        if (docCount % BLOCK_SIZE == 0) {
+            if (blockCount == blockLastDocs.length) {
+                int capacity = blockCount * 2;
+                blockLastDocs = Arrays.copyOf(blockLastDocs, capacity);
+                blockDocOffsets = Arrays.copyOf(blockDocOffsets, capacity);
+                blockPositionOffsets = Arrays.copyOf(blockPositionOffsets, capacity);
+            }
+            blockDocOffsets[blockCount] = docs.length();
+            blockPositionOffsets[blockCount] = positions.length();
+            blockCount++;
+        }
+
+        docs.write(doc - lastDoc - 1);
+        docs.write(count - 1);
+        if (count == 1) {
+            docs.write(locations[0]);
+        } else {
+            int start = positions.length();
+            positions.writeDeltas(locations, count);
+            docs.write(positions.length() - start);
+        }
+
+        blockLastDocs[blockCount - 1] = doc;
+        lastDoc = doc;
+        docCount++;
+    }
+
+    /**
+     * @return how many pages the word is on
+     */
+    public int size() {
+        return docCount;
+    }
+
+    /**
+     * decodes every doc ID in the list
+     * @param out where to put them, which must have room for size() of them
+     */
+    public void docs(int[] out) {
+        VByte.Reader reader = new VByte.Reader(docBuffer(), 0);
+        int doc = -1;
+        for (int i = 0; i < docCount; i++) {
+            doc += reader.next() + 1;
+            reader.skip(2);
+            out[i] = doc;
+        }
+    }
+
+    /**
+     * @return a cursor at the start of the list
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * @return roughly how many bytes the list takes up
+     */
+    public long sizeInBytes() {
+        if (docs == null) {
+            return recordSize();
+        }
+        return docs.array().length + positions.array().length + 12L * blockLastDocs.length + 64;
+    }
+
+    /**
+     * @return how many bytes writeTo() writes, which is always a multiple of 4
+     */
+    public int recordSize() {
+        long size = 4L * (5 + 3 * blockCount) + docsLength() + positionsLength();
+        if (size > Integer.MAX_VALUE - 3) {
+            throw new IllegalStateException("posting list of " + size + " bytes is too big for a record");
+        }
+        return ((int) size + 3) & ~3;
+    }
+
+    /**
+     * writes the list as one record, which view() can read back
+     * @param out where to write it, from its position on, which is moved past the record
+     */
+    public void writeTo(ByteBuffer out) {
+        int start = out.position();
+        IntBuffer header = out.asIntBuffer();
+        header.put(docCount).put(blockCount).put(lastDoc).put(docsLength()).put(positionsLength());
+        header.put(lastDocBuffer().limit(blockCount));
+        header.put(docOffsetBuffer().limit(blockCount));
+        header.put(positionOffsetBuffer().limit(blockCount));
+
+        out.position(start + 4 * header.position());
+        out.put(docBuffer().limit(docsLength()));
+        out.put(positionBuffer().limit(positionsLength()));
+        out.position(start + recordSize());
+    }
+
+    private int docsLength() {
+        return docs != null ? docs.length() : storedDocs.capacity();
+    }
+
+    private int positionsLength() {
+        return positions != null ? positions.length() : storedPositions.capacity();
+    }
+
+    // the list's bytes and skip table, whether they're its own arrays or a stored record
+    private ByteBuffer docBuffer() {
+        return docs != null ? ByteBuffer.wrap(docs.array()) : storedDocs.duplicate();
+    }
+
+    private ByteBuffer positionBuffer() {
+        return positions != null ? ByteBuffer.wrap(positions.array()) : storedPositions.duplicate();
+    }
+
+    private IntBuffer lastDocBuffer() {
+        return blockLastDocs != null ? IntBuffer.wrap(blockLastDocs) : storedLastDocs.duplicate();
+    }
+
+    private IntBuffer docOffsetBuffer() {
+        return blockDocOffsets != null ? IntBuffer.wrap(blockDocOffsets) : storedDocOffsets.duplicate();
+    }
+
+    private IntBuffer positionOffsetBuffer() {
+        return blockPositionOffsets != null ? IntBuffer.wrap(blockPositionOffsets)
+                : storedPositionOffsets.duplicate();
+    }
+
+    /**
+     * drops any unused capacity before the list is written out
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (docs == null) {
+            throw new NotSerializableException("views of stored posting lists can't be serialized");
+        }
+        docs.trim();
+        positions.trim();
+        blockLastDocs = Arrays.copyOf(blockLastDocs, Math.max(1, blockCount));
+        blockDocOffsets = Arrays.copyOf(blockDocOffsets, Math.max(1, blockCount));
+        blockPositionOffsets = Arrays.copyOf(blockPositionOffsets, Math.max(1, blockCount));
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Walks through a PostingList in doc ID order. It starts before the first page, so nextDoc()
+     * or advance() has to be called before anything else.
+     */
+    public class Cursor {
+        private final ByteBuffer docs = docBuffer();
+        private final ByteBuffer positions = positionBuffer();
+        private final IntBuffer lastDocs = lastDocBuffer();
+        private final IntBuffer docOffsets = docOffsetBuffer();
+        private final IntBuffer positionOffsets = positionOffsetBuffer();
+        private final VByte.Reader docReader = new VByte.Reader(docs, 0);
+        private int block = -1;
+        // how far into the block the cursor is, and where the current page's positions start
+        private int indexInBlock = BLOCK_SIZE;
+        private int positionsOffset;
+        private int doc = -1;
+        private int frequency;
+        // the current page's position, if it only has one, or how many bytes its positions take
+        private int positionOrLength;
+
+        /**
+         * @return the current doc ID, -1 before the start, or NO_MORE_DOCS after the end
+         */
+        public int doc() {
+            return doc;
+        }
+
+        /**
+         * @return how many times the word is on the current page
+         */
+        public int frequency() {
+            return frequency;
+        }
+
+        /**
+         * moves to the next page in the list
+         * @return its doc ID, or NO_MORE_DOCS if there are no more
+         */
+        public int nextDoc() {
+            if (doc == NO_MORE_DOCS) {
+                return doc;
+            }
+
+            if (indexInBlock + 1 >= BLOCK_SIZE || block * BLOCK_SIZE + indexInBlock + 1 >= docCount) {
+                if (block + 1 >= blockCount) {
+                    return doc = NO_MORE_DOCS;
+                }
+                startBlock(block + 1);
+            } else {
+                if (frequency > 1) {
+                    positionsOffset += positionOrLength;
+                }
+                indexInBlock++;
+            }
+
+            readDoc();
+            return doc;
+        }
+
+        /**
+         * moves to the first page at or after a doc ID, skipping whole blocks that end before it
+         * @param target the doc ID to look for
+         * @return the doc ID moved to, or NO_MORE_DOCS if there are none at or after the target
+         */
+        public int advance(int target) {
+            if (doc >= target) {
+                return doc;
+            }
+
+            // the first block from the current one that could hold the target
+            int low = Math.max(block, 0), high = blockCount;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (lastDocs.get(mid) < target) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            if (low == blockCount) {
+                return doc = NO_MORE_DOCS;
+            }
+
+            if (low != block) {
+                startBlock(low);
+                readDoc();
+            }
+            while (doc < target) {
+                nextDoc();
+            }
+            return doc;
+        }
+
+        /**
+         * decodes where the word is on the current page
+         * @param out where to put the positions, in increasing order, which must have room for
+         *            frequency() of them
+         * @return how many there are
+         */
+        public int positions(int[] out) {
+            return positions(out, Integer.MAX_VALUE);
+        }
+
+        /**
+         * decodes where the word is on the current page, up to some position
+         * @param out where to put the positions, in increasing order, which must have room for
+         *            frequency() of them
+         * @param max the highest position that's needed; decoding stops at the first one at or past it
+         * @return how many were decoded
+         */
+        public int positions(int[] out, int max) {
+            if (frequency == 1) {
+                out[0] = positionOrLength;
+                return 1;
+            }
+
+            VByte.Reader reader = new VByte.Reader(positions, positionsOffset);
+            int position = 0;
+            int count = 0;
+            do {
+                position += reader.next();
+                out[count++] = position;
+            } while (count < frequency && position < max);
+            return count;
+        }
+
+        private void readDoc() {
+            doc += docReader.next() + 1;
+            frequency = docReader.next() + 1;
+            positionOrLength = docReader.next();
+        }
+
+        /**
+         * moves to just before the first page of a block
+         */
+        private void startBlock(int next) {
+            block = next;
+            indexInBlock = 0;
+            positionsOffset = positionOffsets.get(block);
+            frequency = 0;
+            docReader.seek(docOffsets.get(block));
+            doc = block == 0 ? -1 : lastDocs.get(block - 1);
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package assignment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Every word's postings, and the dictionary from words to them, in direct (off-heap) buffers.
+ * The heap only holds a handful of buffer objects however many words there are, so the garbage
+ * collector has nothing to trace in here, where a WebIndex on the heap has a String, an Integer,
+ * a map entry and a PostingList (with its arrays) for every word.
+ *
+ * A store can hold several sets of postings over the same dictionary, such as a WebIndex's body
+ * postings and those of each Field; a word needn't have postings in every set. Each word's
+ * postings in each set are one record, as written by PostingList.writeTo(), packed into segments
+ * of up to SEGMENT_SIZE bytes. The dictionary is every word's UTF-8 bytes, one after another,
+ * and an open-addressing hash table from them to term IDs. Stores are read-only once built, and
+ * can be read by any number of threads at once.
+ */
+public class PostingStore {
+    // a record never spans two segments, so this is also the most a word's postings can take
+    private static final int SEGMENT_SIZE = 1 << 30;
+
+    private final ByteBuffer[] segments;
+    // for each set of postings, and in it each term ID: which segment its record is in, in the
+    // high half, and where, in the low; -1 if the word has no postings in that set
+    private final LongBuffer records;
+    // every word's UTF-8 bytes, and where each starts, by term ID, with one more for the end
+    private final ByteBuffer termBytes;
+    private final IntBuffer termStarts;
+    // term ID + 1 for each word, at its hash or the next free slot after it; 0 for an empty slot
+    private final IntBuffer table;
+    private final int termCount;
+    private final long size;
+
+    /**
+     * copies postings off the heap
+     * @param terms every word, by term ID
+     * @param sets the sets of postings to store, each a list of every word's postings by term ID;
+     *             a list can have nulls for words without postings, and end before the last words
+     */
+    public PostingStore(List<String> terms, List<? extends List<PostingList>> sets) {
+        termCount = terms.size();
+        records = allocate(8L * termCount * sets.size()).asLongBuffer();
+
+        // pack the records into as few segments as they'll fit in
+        ArrayList<Long> segmentSizes = new ArrayList<>();
+        long segmentSize = 0;
+        for (int set = 0; set < sets.size(); set++) {
+            List<PostingList> postings = sets.get(set);
+            for (int term = 0; term < termCount; term++) {
+                int index = set * termCount + term;
+                if (term >= postings.size() || postings.get(term) == null) {
+                    records.put(index, -1);
+                    continue;
+                }
+
+                int recordSize = postings.get(term).recordSize();
+                if (recordSize > SEGMENT_SIZE) {
+                    throw new IllegalArgumentException("postings of " + terms.get(term) + " are too big to store");
+                } else if (segmentSize + recordSize > SEGMENT_SIZE) {
+                    segmentSizes.add(segmentSize);
+                    segmentSize = 0;
+                }
+                records.put(index, ((long) segmentSizes.size() << 32) | segmentSize);
+                segmentSize += recordSize;
+            }
+        }
+        segmentSizes.add(segmentSize);
+
+        segments = new ByteBuffer[segmentSizes.size()];
+        long total = 0;
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = allocate(segmentSizes.get(i));
+            total += segmentSizes.get(i);
+        }
+        for (int set = 0; set < sets.size(); set++) {
+            for (int term = 0; term < termCount; term++) {
+                long record = records.get(set * termCount + term);
+                if (record >= 0) {
+                    sets.get(set).get(term).writeTo(segments[(int) (record >>> 32)].position((int) record));
+                }
+            }
+        }
+
+        byte[][] encoded = new byte[termCount][];
+        long bytes = 0;
+        for (int term = 0; term < termCount; term++) {
+            encoded[term] = terms.get(term).getBytes(StandardCharsets.UTF_8);
+            bytes += encoded[term].length;
+        }
+        termBytes = allocate(bytes);
+        termStarts = allocate(4L * (termCount + 1)).asIntBuffer();
+        for (int term = 0; term < termCount; term++) {
+            termStarts.put(term, termBytes.position());
+            termBytes.put(encoded[term]);
+        }
+        termStarts.put(termCount, termBytes.position());
+
+        // at most half full, so probes stay short
+        int capacity = Integer.highestOneBit(Math.max(termCount, 1) * 2 - 1) * 2;
+        table = allocate(4L * capacity).asIntBuffer();
+        for (int term = 0; term < termCount; term++) {
+            int slot = hash(encoded[term]) & (capacity - 1);
+            while (table.get(slot) != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            table.put(slot, term + 1);
+        }
+
+        size = total + bytes + 8L * termCount * sets.size() + 4L * (termCount + 1) + 4L * capacity;
+    }
+
+    private static ByteBuffer allocate(long bytes) {
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("can't allocate a buffer of " + bytes + " bytes");
+        }
+        return ByteBuffer.allocateDirect((int) bytes).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * @return how many words there are; their term IDs are 0 up to this
+     */
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * @param word a word
+     * @return its term ID, or -1 if it isn't in the store
+     */
+    public int getTermId(String word) {
+        byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+        int mask = table.capacity() - 1;
+        for (int slot = hash(bytes) & mask; table.get(slot) != 0; slot = (slot + 1) & mask) {
+            int term = table.get(slot) - 1;
+            if (matches(term, bytes)) {
+                return term;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param term a term ID
+     * @return the word with that ID
+     */
+    public String getTerm(int term) {
+        int start = termStarts.get(term);
+        byte[] bytes = new byte[termStarts.get(term + 1) - start];
+        termBytes.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param set which of the sets of postings the store was built with to look in
+     * @param term a term ID
+     * @return the word's postings in that set, read in place, or null if it has none there
+     */
+    public PostingList getPostings(int set, int term) {
+        long record = records.get(set * termCount + term);
+        if (record < 0) {
+            return null;
+        }
+        // a duplicate is always big-endian, whatever the buffer it's of is
+        ByteBuffer segment = segments[(int) (record >>> 32)].duplicate().order(ByteOrder.nativeOrder());
+        return PostingList.view(segment.position((int) record));
+    }
+
+    /**
+     * @return how many bytes the store takes up, off the heap
+     */
+    public long sizeInBytes() {
+        return size;
+    }
+
+    private boolean matches(int term, byte[] bytes) {
+        int start = termStarts.get(term);
+        if (termStarts.get(term + 1) - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (termBytes.get(start + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * FNV-1a, then MurmurHash3's finalizer so every bit is used
+     */
+    private static int hash(byte[] bytes) {
+        int hash = 0x811c9dc5;
+        for (byte b : bytes) {
+            hash ^= b;
+            hash *= 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
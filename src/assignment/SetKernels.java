@@ -0,0 +1,129 @@
+package assignment;
+
+/**
+ * The inner loops of DocSet's &, | and ! over containers: intersecting sorted arrays, and
+ * combining bitmaps while counting their bits. These are the plain Java versions, which the JIT
+ * already compiles to SIMD instructions where it can. VectorSetKernels, in src/vector, does the
+ * bitmaps with the Vector API instead; it's used if it was compiled, the jdk.incubator.vector
+ * module is loaded (java --add-modules jdk.incubator.vector) and -Dassignment.vector=true is
+ * given. It isn't the default, as on JDK 17 KernelBenchmark finds it slower than these.
+ */
+public class SetKernels {
+    private static final SetKernels instance = load();
+
+    /**
+     * @return the kernels picked at startup
+     */
+    public static SetKernels get() {
+        return instance;
+    }
+
+    /**
+     * @return the Vector API kernels, or null if they can't be used in this JVM
+     */
+    public static SetKernels vector() {
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            return null;
+        }
+
+        try {
+            return (SetKernels) Class.forName("assignment.VectorSetKernels").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    private static SetKernels load() {
+        SetKernels vector = null;
+        if (Boolean.getBoolean("assignment.vector")) {
+            vector = vector();
+        }
+        return vector != null ? vector : new SetKernels();
+    }
+
+    /**
+     * @return what these kernels are, for reporting
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * Merges the arrays. Which of them is behind is hard to predict, so rather than branching on
+     * it, each step writes a's value and only keeps it if it matched, then moves on in whichever
+     * arrays were behind; this measured about twice as fast as branching.
+     * @param a sorted values, with no repeats
+     * @param b sorted values, with no repeats
+     * @param out where to put the values in both, which must have room for the shorter of them
+     * @return how many values are in both
+     */
+    public int intersect(char[] a, char[] b, char[] out) {
+        int i = 0, j = 0, count = 0;
+        while (i < a.length && j < b.length) {
+            char x = a[i];
+            char y = b[j];
+            out[count] = x;
+            count += x == y ? 1 : 0;
+            i += x <= y ? 1 : 0;
+            j += y <= x ? 1 : 0;
+        }
+        return count;
+    }
+
+    /**
+     * @param a a bitmap
+     * @param b a bitmap the same length
+     * @param out where to put the bits in both, which may be a or b
+     * @return how many bits are set in out
+     */
+    public int and(long[] a, long[] b, long[] out) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            out[i] = a[i] & b[i];
+            count += Long.bitCount(out[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @param a a bitmap
+     * @param b a bitmap the same length
+     * @param out where to put the bits in either, which may be a or b
+     * @return how many bits are set in out
+     */
+    public int or(long[] a, long[] b, long[] out) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            out[i] = a[i] | b[i];
+            count += Long.bitCount(out[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @param a a bitmap
+     * @param b a bitmap the same length
+     * @param out where to put the bits in a but not b, which may be a or b
+     * @return how many bits are set in out
+     */
+    public int andNot(long[] a, long[] b, long[] out) {
+        int count = 0;
+        for (int i = 0; i < a.length; i++) {
+            out[i] = a[i] & ~b[i];
+            count += Long.bitCount(out[i]);
+        }
+        return count;
+    }
+
+    /**
+     * @param words a bitmap
+     * @return how many bits are set in it
+     */
+    public int cardinality(long[] words) {
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+}
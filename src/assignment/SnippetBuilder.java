@@ -0,0 +1,185 @@
+package assignment;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Builds keyword-in-context snippets for search results out of the index's forward index, with the
+ * query's words highlighted. Snippets are plain text with the highlights' offsets alongside, so
+ * the HTML results page and the JSON API can each show them their own way. Where the query's words are on a page comes from their postings, so
+ * the snippet's window is picked before any of the page's text is decoded, and then only the page
+ * up to the end of the window is decoded.
+ */
+public class SnippetBuilder {
+    // how many words a snippet shows
+    public static final int WINDOW = 24;
+    // how many words to show before the first match in the window
+    private static final int LEAD = 4;
+
+    // marks where the page's text goes on beyond the snippet
+    private static final char ELLIPSIS = '\u2026';
+
+    private final WebIndex index;
+
+    /**
+     * A snippet of a page's text, as plain text, and where the query's words are in it
+     */
+    public static class Snippet {
+        static final Snippet EMPTY = new Snippet("", new int[0]);
+
+        // the words, separated by spaces, with an ellipsis before or after them if the page's
+        // text goes on that way
+        public final String text;
+        // the start and end of each highlighted word in text, one after the other, as char offsets
+        public final int[] highlights;
+
+        Snippet(String text, int[] highlights) {
+            this.text = text;
+            this.highlights = highlights;
+        }
+
+        /**
+         * The page's words only contain letters, digits, '_' and '-', so they are safe to put in
+         * HTML as they are.
+         * @return the snippet as HTML, with the highlighted words in bold
+         */
+        public String toHtml() {
+            StringBuilder html = new StringBuilder(text.length() + highlights.length * 4);
+            int at = 0;
+            for (int i = 0; i < highlights.length; i += 2) {
+                appendHtml(html, at, highlights[i]);
+                html.append("<b>");
+                appendHtml(html, highlights[i], highlights[i + 1]);
+                html.append("</b>");
+                at = highlights[i + 1];
+            }
+            appendHtml(html, at, text.length());
+            return html.toString();
+        }
+
+        private void appendHtml(StringBuilder html, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                if (c == ELLIPSIS) {
+                    html.append("&hellip;");
+                } else {
+                    html.append(c);
+                }
+            }
+        }
+    }
+
+    public SnippetBuilder(WebIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * builds a snippet for a page
+     * @param page a page from the index
+     * @param terms the words to highlight
+     * @return the snippet, which is empty if the page isn't indexed
+     */
+    public Snippet build(Page page, Collection<String> terms) {
+        int doc = index.getDocId(page);
+        if (doc < 0) {
+            return Snippet.EMPTY;
+        }
+
+        // every match on the page, as its position in the high half and which term it is in the
+        // low half, so sorting puts them in page order. The postings only decode the block
+        // holding this page.
+        long[] matches = new long[16];
+        int count = 0;
+        int termNumber = 0;
+        for (String term : terms) {
+            for (int location : index.getPositions(term, doc)) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = ((long) location << 32) | termNumber;
+            }
+            termNumber++;
+        }
+        Arrays.sort(matches, 0, count);
+
+        int start = bestWindow(matches, count, termNumber);
+        int total = index.getTokenCount(doc);
+        start = Math.max(0, Math.min(start - LEAD, total - WINDOW));
+        int end = Math.min(total, start + WINDOW);
+
+        int[] tokens = new int[end];
+        index.getTokens(doc, tokens, end);
+
+        StringBuilder snippet = new StringBuilder();
+        if (start > 0) {
+            snippet.append(ELLIPSIS).append(' ');
+        }
+        int[] highlights = new int[16];
+        int highlightCount = 0;
+
+        int next = 0;
+        while (next < count && (int) (matches[next] >>> 32) < start) {
+            next++;
+        }
+        for (int i = start; i < end; i++) {
+            if (i > start) {
+                snippet.append(' ');
+            }
+
+            boolean matched = next < count && (int) (matches[next] >>> 32) == i;
+            while (next < count && (int) (matches[next] >>> 32) == i) {
+                next++;
+            }
+
+            if (matched) {
+                if (highlightCount == highlights.length) {
+                    highlights = Arrays.copyOf(highlights, highlightCount * 2);
+                }
+                highlights[highlightCount++] = snippet.length();
+                snippet.append(index.getTerm(tokens[i]));
+                highlights[highlightCount++] = snippet.length();
+            } else {
+                snippet.append(index.getTerm(tokens[i]));
+            }
+        }
+
+        if (end < total) {
+            snippet.append(' ').append(ELLIPSIS);
+        }
+        return new Snippet(snippet.toString(), Arrays.copyOf(highlights, highlightCount));
+    }
+
+    /**
+     * finds the window of WINDOW words holding the most distinct terms, and then the most
+     * matches, by sliding it from match to match
+     * @return the position of the first match in the best window, or 0 if there are no matches
+     */
+    private static int bestWindow(long[] matches, int count, int termCount) {
+        int[] inWindow = new int[termCount];
+        int distinct = 0;
+        int bestStart = 0, bestDistinct = 0, bestMatches = 0;
+
+        int left = 0;
+        for (int right = 0; right < count; right++) {
+            if (inWindow[(int) matches[right]]++ == 0) {
+                distinct++;
+            }
+
+            int rightPosition = (int) (matches[right] >>> 32);
+            while ((int) (matches[left] >>> 32) <= rightPosition - WINDOW) {
+                if (--inWindow[(int) matches[left]] == 0) {
+                    distinct--;
+                }
+                left++;
+            }
+
+            if (distinct > bestDistinct || (distinct == bestDistinct && right - left + 1 > bestMatches)) {
+                bestDistinct = distinct;
+                bestMatches = right - left + 1;
+                bestStart = (int) (matches[left] >>> 32);
+            }
+        }
+
+        return bestStart;
+    }
+}
@@ -0,0 +1,191 @@
+package assignment;
+
+import java.util.Arrays;
+
+/**
+ * Corrects misspelled words to the indexed word nearest them, with the symmetric delete
+ * algorithm of SymSpell: two words are within MAX_DISTANCE edits of each other only if deleting
+ * at most MAX_DISTANCE characters from each can make them the same. So every word's deletes are
+ * worked out once, up front, and a misspelling only needs its own deletes looked up, rather than
+ * comparing it to every word. As in SymSpell, only the first PREFIX_LENGTH characters of a word
+ * are used for its deletes, which keeps their number small, and candidates are then checked
+ * against the whole word.
+ * <p>
+ * Each delete is kept as its hash and the term ID of the word it came from, packed into one long,
+ * in a single sorted array: no Strings, and nothing for the garbage collector to trace. Hashes
+ * that collide only add candidates, which are checked anyway.
+ */
+public class SpellChecker {
+    public static final int MAX_DISTANCE = 2;
+    private static final int PREFIX_LENGTH = 7;
+
+    private final WebIndex index;
+    // how many pages each word is on, by term ID
+    private final int[] frequencies;
+    // the low idBits of each entry are a term ID; the rest are the top bits of a delete's hash
+    private final int idBits;
+    private final long[] deletes;
+
+    /**
+     * works out the deletes of every word in an index
+     * @param index the index
+     */
+    public SpellChecker(WebIndex index) {
+        this.index = index;
+        int count = index.getTermCount();
+        idBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(count));
+        frequencies = new int[count];
+
+        long[] entries = new long[Math.max(16, count * 8)];
+        int size = 0;
+        long[] hashes = new long[maxDeletes(PREFIX_LENGTH)];
+        for (int term = 0; term < count; term++) {
+            String word = index.getTerm(term);
+            frequencies[term] = index.getDocFrequency(word);
+            // words only in the text of links aren't on any page to correct to
+            if (frequencies[term] == 0) {
+                continue;
+            }
+
+            int n = deletes(word, hashes);
+            if (size + n > entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(entries.length * 3 / 2, size + n));
+            }
+            for (int i = 0; i < n; i++) {
+                entries[size++] = (hashes[i] >>> idBits << idBits) | term;
+            }
+        }
+
+        // a word with repeated letters has the same delete more than once
+        Arrays.sort(entries, 0, size);
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || entries[i] != entries[distinct - 1]) {
+                entries[distinct++] = entries[i];
+            }
+        }
+        deletes = Arrays.copyOf(entries, distinct);
+    }
+
+    /**
+     * @param word a word, in lower case
+     * @return the indexed word fewest edits from it, and of those the one on the most pages, or
+     *         null if none are within MAX_DISTANCE edits; the word itself, if it's indexed
+     */
+    public String correct(String word) {
+        if (index.getDocFrequency(word) > 0) {
+            return word;
+        }
+
+        long[] hashes = new long[maxDeletes(PREFIX_LENGTH)];
+        int n = deletes(word, hashes);
+
+        String best = null;
+        int bestDistance = MAX_DISTANCE + 1, bestFrequency = 0;
+        for (int i = 0; i < n; i++) {
+            long key = hashes[i] >>> idBits << idBits;
+            int at = Arrays.binarySearch(deletes, key);
+            for (at = at < 0 ? -at - 1 : at; at < deletes.length && deletes[at] >>> idBits == key >>> idBits; at++) {
+                int term = (int) (deletes[at] & ((1L << idBits) - 1));
+                int frequency = frequencies[term];
+                if (bestDistance == 1 && frequency <= bestFrequency) {
+                    // the word isn't indexed, so this can't be any nearer than what's been found
+                    continue;
+                }
+
+                String candidate = index.getTerm(term);
+                int distance = distance(word, candidate, Math.min(bestDistance, MAX_DISTANCE));
+                if (distance <= MAX_DISTANCE && (distance < bestDistance ||
+                        (distance == bestDistance && frequency > bestFrequency))) {
+                    best = candidate;
+                    bestDistance = distance;
+                    bestFrequency = frequency;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the most deletes a word of the given length can have
+     */
+    private static int maxDeletes(int length) {
+        return 1 + length + length * (length - 1) / 2;
+    }
+
+    /**
+     * hashes the word, and the word without each one and each two of its characters, using only
+     * its first PREFIX_LENGTH characters
+     * @param hashes where to put the hashes
+     * @return how many there are
+     */
+    private static int deletes(String word, long[] hashes) {
+        int length = Math.min(word.length(), PREFIX_LENGTH);
+        int n = 0;
+        hashes[n++] = hash(word, length, -1, -1);
+        for (int i = 0; i < length; i++) {
+            hashes[n++] = hash(word, length, i, -1);
+            for (int j = i + 1; j < length; j++) {
+                hashes[n++] = hash(word, length, i, j);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * FNV-1a over the first length characters of the word, skipping two of them, with
+     * PostingStore's finalizer so the top bits are well mixed
+     */
+    private static long hash(String word, int length, int skip1, int skip2) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            if (i != skip1 && i != skip2) {
+                h = (h ^ word.charAt(i)) * 0x100000001b3L;
+            }
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * The optimal string alignment distance (Levenshtein, plus swapping two neighbouring
+     * characters) between two words, giving up once it's sure to be more than max.
+     * @return the distance, or max + 1 if it's more than max
+     */
+    static int distance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+
+        int[] before = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int d = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d = Math.min(d, before[j - 2] + 1);
+                }
+                current[j] = d;
+                rowMin = Math.min(rowMin, d);
+            }
+            if (rowMin > max) {
+                return max + 1;
+            }
+
+            int[] oldest = before;
+            before = previous;
+            previous = current;
+            current = oldest;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+}
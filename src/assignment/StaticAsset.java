@@ -0,0 +1,139 @@
+package assignment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A resource that never changes while the server is running, such as the logo or the homepage.
+ * Everything needed to answer a request for it (headers included) is rendered once, up front, so
+ * serving it is a single write of a byte array.
+ */
+public class StaticAsset {
+    private final String etag;
+    private final boolean gzipUseful;
+
+    // complete responses, status line and headers included
+    private final byte[] plainResponse, gzipResponse, notModifiedResponse;
+    // where the headers end in each response, so HEAD requests can skip the body
+    private final int plainHeaderLength, gzipHeaderLength;
+
+    /**
+     * pre-renders the responses for the given content
+     * @param contentType the value of the Content-Type header
+     * @param cacheControl the value of the Cache-Control header
+     * @param content the raw bytes of the asset
+     */
+    public StaticAsset(String contentType, String cacheControl, byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, content.length);
+        etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(content.length) + "\"";
+
+        byte[] gzipped = gzip(content);
+        // images are usually compressed already, in which case gzip just costs the client cpu
+        gzipUseful = gzipped.length < content.length;
+
+        String headers = "Server: 314H/0.1\r\n" +
+                "Content-Type: " + contentType + "\r\n" +
+                "Cache-Control: " + cacheControl + "\r\n" +
+                "ETag: " + etag + "\r\n" +
+                "Vary: Accept-Encoding\r\n";
+
+        String plainHeaders = "HTTP/1.0 200 OK\r\n" + headers +
+                "Content-Length: " + content.length + "\r\n\r\n";
+        plainHeaderLength = plainHeaders.length();
+        plainResponse = concat(plainHeaders.getBytes(StandardCharsets.ISO_8859_1), content);
+
+        String gzipHeaders = "HTTP/1.0 200 OK\r\n" + headers +
+                "Content-Encoding: gzip\r\n" +
+                "Content-Length: " + gzipped.length + "\r\n\r\n";
+        gzipHeaderLength = gzipHeaders.length();
+        gzipResponse = concat(gzipHeaders.getBytes(StandardCharsets.ISO_8859_1), gzipped);
+
+        notModifiedResponse = ("HTTP/1.0 304 Not Modified\r\n" +
+                "Server: 314H/0.1\r\n" +
+                "Cache-Control: " + cacheControl + "\r\n" +
+                "ETag: " + etag + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * creates an asset from an HTML string
+     * @param html the page to serve
+     * @param cacheControl the value of the Cache-Control header
+     * @return the pre-rendered asset
+     */
+    public static StaticAsset fromHTML(String html, String cacheControl) {
+        return new StaticAsset("text/html; charset=UTF-8", cacheControl,
+                html.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * creates an asset from a file on disk
+     * @param file the file to serve
+     * @param contentType the value of the Content-Type header
+     * @param cacheControl the value of the Cache-Control header
+     * @return the pre-rendered asset
+     * @throws IOException if the file can't be read
+     */
+    public static StaticAsset fromFile(File file, String contentType, String cacheControl) throws IOException {
+        return new StaticAsset(contentType, cacheControl, Files.readAllBytes(file.toPath()));
+    }
+
+    /**
+     * writes the pre-rendered response for this asset
+     * @param out the client's output stream
+     * @param ifNoneMatch the client's If-None-Match header, or null
+     * @param acceptsGzip whether the client accepts gzip content encoding
+     * @param headOnly true for HEAD requests, where only the headers are sent
+     * @return true if the client's cached copy was still valid and a 304 was sent
+     */
+    public boolean writeTo(OutputStream out, String ifNoneMatch, boolean acceptsGzip,
+                           boolean headOnly) throws IOException {
+        if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(etag))) {
+            out.write(notModifiedResponse);
+            return true;
+        }
+
+        if (acceptsGzip && gzipUseful) {
+            out.write(gzipResponse, 0, headOnly ? gzipHeaderLength : gzipResponse.length);
+        } else {
+            out.write(plainResponse, 0, headOnly ? plainHeaderLength : plainResponse.length);
+        }
+
+        return false;
+    }
+
+    /**
+     * compresses the content with the best compression available, since it only happens once
+     * @param content the bytes to compress
+     * @return the gzipped bytes
+     */
+    private static byte[] gzip(byte[] content) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            out.write(content);
+        } catch (IOException e) {
+            // a ByteArrayOutputStream doesn't throw
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = new byte[first.length + second.length];
+        System.arraycopy(first, 0, result, 0, first.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,198 @@
+package assignment;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+
+/**
+ * Puts URLs into a canonical form, so that the different ways of writing the same page (relative
+ * links, "..", fragments, upper case hosts, default ports, reordered query parameters) all come
+ * out as the same string. Works on the parts of a java.net.URI, so it handles http: and file: URLs
+ * alike, unlike resolving links as filesystem paths.
+ * <p>
+ * The canonical form is the same as URL.toString() would give for it, so it can be compared with
+ * the URLs of Pages directly.
+ */
+public class UrlCanonicalizer {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private UrlCanonicalizer() {}
+
+    /**
+     * canonicalizes an absolute URL
+     * @param url the URL
+     * @return the canonical form, or null if it isn't an http:, https: or file: URL we can parse
+     */
+    public static String canonicalize(String url) {
+        return canonicalize(null, url);
+    }
+
+    /**
+     * resolves a link against the page it was found on, and canonicalizes the result
+     * @param base the URL of the page, or null if href is absolute
+     * @param href the link, as written in the page
+     * @return the canonical form, or null if the link isn't to an http:, https: or file: URL, or
+     *         can't be parsed
+     */
+    public static String canonicalize(URI base, String href) {
+        URI uri;
+        try {
+            // browsers let spaces in links slide, so we do too
+            uri = new URI(href.trim().replace(" ", "%20"));
+            if (base != null) {
+                uri = base.resolve(uri);
+            }
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+
+        if (uri.isOpaque() || uri.getScheme() == null) {
+            return null;
+        }
+
+        String scheme = uri.getScheme().toLowerCase();
+        int defaultPort;
+        if (scheme.equals("http")) {
+            defaultPort = 80;
+        } else if (scheme.equals("https")) {
+            defaultPort = 443;
+        } else if (scheme.equals("file")) {
+            defaultPort = -1;
+        } else {
+            return null;
+        }
+
+        String host = uri.getHost();
+        if (host == null && defaultPort != -1) {
+            return null;
+        }
+
+        StringBuilder canonical = new StringBuilder(href.length() + 32);
+        canonical.append(scheme).append(':');
+        if (host != null) {
+            canonical.append("//").append(host.toLowerCase());
+            if (uri.getPort() != -1 && uri.getPort() != defaultPort) {
+                canonical.append(':').append(uri.getPort());
+            }
+        }
+
+        String path = removeDotSegments(uri.getRawPath() == null ? "" : uri.getRawPath());
+        if (path.isEmpty()) {
+            path = "/";
+        }
+        appendEncoded(canonical, path);
+
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            String[] params = query.split("&");
+            Arrays.sort(params);
+            canonical.append('?');
+            boolean first = true;
+            for (String param : params) {
+                if (param.isEmpty()) {
+                    continue;
+                }
+                if (!first) {
+                    canonical.append('&');
+                }
+                appendEncoded(canonical, param);
+                first = false;
+            }
+            if (first) {
+                // every parameter was empty
+                canonical.setLength(canonical.length() - 1);
+            }
+        }
+
+        // the fragment never changes which page is fetched, so it's dropped
+        return canonical.toString();
+    }
+
+    /**
+     * a 64-bit hash of a (canonical) URL, used instead of the URL itself to remember which pages
+     * have been seen. With 64 bits, a crawl of a billion pages has about a 3% chance of a single
+     * collision, which would just mean one page being skipped.
+     * @param url the URL
+     * @return the fingerprint
+     */
+    public static long fingerprint(CharSequence url) {
+        // FNV-1a, which mixes poorly on its own, followed by MurmurHash3's finalizer
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= FNV_PRIME;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * removes "." and ".." segments from a path, as in RFC 3986 section 5.2.4. Unlike
+     * URI.normalize(), ".." at the root is dropped rather than kept.
+     */
+    static String removeDotSegments(String path) {
+        if (path.indexOf('.') < 0) {
+            return path;
+        }
+
+        String[] segments = path.split("/", -1);
+        String[] out = new String[segments.length];
+        int size = 0;
+        // whether the path should end in a slash because the last segment was "." or ".."
+        boolean trailingSlash = false;
+
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            trailingSlash = false;
+            if (segment.equals(".")) {
+                trailingSlash = true;
+            } else if (segment.equals("..")) {
+                // never pop the empty segment before the leading slash
+                if (size > 1 || (size == 1 && !out[0].isEmpty())) {
+                    size--;
+                }
+                trailingSlash = true;
+            } else {
+                out[size++] = segment;
+            }
+        }
+
+        StringBuilder result = new StringBuilder(path.length());
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                result.append('/');
+            }
+            result.append(out[i]);
+        }
+        if (trailingSlash) {
+            result.append('/');
+        }
+        if (path.startsWith("/") && (result.length() == 0 || result.charAt(0) != '/')) {
+            result.insert(0, '/');
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * appends a raw path or query, with the hex digits of percent escapes upper-cased
+     */
+    private static void appendEncoded(StringBuilder out, String raw) {
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c == '%' && i + 2 < raw.length()) {
+                out.append('%').append(Character.toUpperCase(raw.charAt(i + 1)))
+                        .append(Character.toUpperCase(raw.charAt(i + 2)));
+                i += 2;
+            } else {
+                out.append(c);
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package assignment;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growable array of variable-byte encoded ints: 7 bits per byte, with the high bit set on every
+ * byte but the last. Small numbers (such as the gaps between sorted IDs) take a single byte.
+ */
+public class VByte implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private byte[] bytes;
+    private int length;
+
+    public VByte() {
+        this(64);
+    }
+
+    /**
+     * @param capacity how many bytes to make room for at first
+     */
+    public VByte(int capacity) {
+        bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * appends a non-negative int
+     * @param value the value
+     */
+    public void write(int value) {
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+        }
+
+        while ((value & ~0x7f) != 0) {
+            bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        bytes[length++] = (byte) value;
+    }
+
+    /**
+     * appends sorted ints as the gaps between them
+     * @param values the values, in increasing order
+     * @param count how many of them to write
+     */
+    public void writeDeltas(int[] values, int count) {
+        int prev = 0;
+        for (int i = 0; i < count; i++) {
+            write(values[i] - prev);
+            prev = values[i];
+        }
+    }
+
+    /**
+     * @return how many bytes have been written
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return the bytes written so far; the array may be longer than length()
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * empties the array, keeping its capacity, so it can be written again
+     */
+    public void clear() {
+        length = 0;
+    }
+
+    /**
+     * drops any unused capacity, for once nothing more will be written
+     */
+    public void trim() {
+        if (bytes.length != length) {
+            bytes = Arrays.copyOf(bytes, length);
+        }
+    }
+
+    /**
+     * @param value a non-negative int
+     * @return how many bytes it takes to encode
+     */
+    public static int size(int value) {
+        return value < (1 << 7) ? 1 : value < (1 << 14) ? 2 : value < (1 << 21) ? 3 : value < (1 << 28) ? 4 : 5;
+    }
+
+    /**
+     * Reads ints back out of an array of bytes, or a buffer of them, which may be off the heap
+     */
+    public static class Reader {
+        private final ByteBuffer bytes;
+        private int position;
+
+        /**
+         * @param bytes the encoded ints
+         * @param position where to start reading
+         */
+        public Reader(byte[] bytes, int position) {
+            this(ByteBuffer.wrap(bytes), position);
+        }
+
+        /**
+         * @param bytes the encoded ints, read from index 0 whatever the buffer's position is
+         * @param position where to start reading
+         */
+        public Reader(ByteBuffer bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        /**
+         * @return the next int
+         */
+        public int next() {
+            byte b = bytes.get(position++);
+            int value = b & 0x7f;
+            for (int shift = 7; b < 0; shift += 7) {
+                b = bytes.get(position++);
+                value |= (b & 0x7f) << shift;
+            }
+            return value;
+        }
+
+        /**
+         * reads ints written by writeDeltas
+         * @param out where to put them
+         * @param count how many there are
+         */
+        public void nextDeltas(int[] out, int count) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                value += next();
+                out[i] = value;
+            }
+        }
+
+        /**
+         * moves past ints without decoding them
+         * @param count how many to skip
+         */
+        public void skip(int count) {
+            while (count > 0) {
+                if (bytes.get(position++) >= 0) {
+                    count--;
+                }
+            }
+        }
+
+        /**
+         * @return where the next int starts
+         */
+        public int position() {
+            return position;
+        }
+
+        /**
+         * moves to a different place in the bytes
+         */
+        public void seek(int position) {
+            this.position = position;
+        }
+    }
+}
@@ -2,25 +2,40 @@ package assignment;
 
 import java.io.*;
 import java.net.*;
+import java.nio.CharBuffer;
 import java.util.*;
+import java.util.concurrent.LinkedBlockingQueue;
 
 import org.attoparser.simple.*;
 import org.attoparser.config.ParseConfiguration;
 
 /**
  * The entry-point for WebCrawler; takes in a list of URLs to start crawling from and saves an index
- * to index.db.
+ * to index.db. Every page is logged to crawl.journal as it's done with, so a crawl that dies part
+ * way can be picked up where it left off with --resume, instead of starting over; the journal is
+ * deleted once the index is saved.
+ * <p>
+ * Usage: java assignment.WebCrawler [--resume] URL...
  */
 public class WebCrawler {
+    // the most pages that can be being fetched, or fetched but not yet parsed, at once
+    private static final int MAX_PENDING = 128;
+    private static final String JOURNAL_PATH = "crawl.journal";
 
     /**
     * The WebCrawler's main method starts crawling a set of pages.  You can change this method as
     * you see fit, as long as it takes URLs as inputs and saves an Index at "index.db".
     */
     public static void main(String[] args) {
-        // Basic usage information
-        if (args.length == 0) {
+        boolean resume = args.length > 0 && args[0].equals("--resume");
+        if (resume) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        // Basic usage information; a resumed crawl already knows where it was going
+        if (args.length == 0 && !resume) {
             System.err.println("Error: No URLs specified.");
+            System.err.println("Usage: java assignment.WebCrawler [--resume] URL...");
             System.exit(1);
         }
 
@@ -38,31 +53,91 @@ public class WebCrawler {
         // Create a parser from the attoparser library, and our handler for markup.
         ISimpleMarkupParser parser = new SimpleMarkupParser(ParseConfiguration.htmlConfiguration());
         CrawlingMarkupHandler handler = new CrawlingMarkupHandler();
-        // Try to start crawling, adding new URLS as we see them.
+        CrawlJournal journal = new CrawlJournal(new File(JOURNAL_PATH));
+        try {
+            if (resume) {
+                resume(journal, handler, remaining);
+            }
+            journal.start();
+        } catch (IOException e) {
+            System.err.println("Error: couldn't open the crawl journal " + JOURNAL_PATH + ": " + e);
+            System.exit(1);
+        }
+        handler.setJournal(journal);
+        // whatever's been crawled survives being killed, too
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                journal.checkpoint();
+            } catch (IOException e) {
+                System.err.println("Error: couldn't checkpoint the crawl journal: " + e);
+            }
+        }));
+
+        PageFetcher pages = new PageFetcher();
+        HttpFetcher fetcher = new HttpFetcher(pages);
+        CrawlStats stats = new CrawlStats();
+        handler.setStats(stats);
+        stats.setSizes(remaining::size, handler::seenCount);
+        stats.startReporting(System.err, 10);
+
+        // Try to start crawling, adding new URLS as we see them. Pages are fetched concurrently,
+        // but parsed one at a time on this thread as they arrive, since the handler isn't
+        // thread-safe.
+        LinkedBlockingQueue<HttpFetcher.Result> fetched = new LinkedBlockingQueue<>();
+        int pending = 0;
         int totalPages = 0;
         try {
-            while (!remaining.isEmpty()) {
-                // pass the current URL to the handler so it can keep track of the information
-                URL currURL = remaining.poll();
-                handler.setURL(currURL);
-                // Parse the next URL's page
+            while (!remaining.isEmpty() || pending > 0) {
+                // keep the fetcher busy, without letting fetched pages pile up faster than they
+                // can be parsed
+                while (!remaining.isEmpty() && pending < MAX_PENDING) {
+                    fetcher.fetch(remaining.poll()).thenAccept(fetched::add);
+                    pending++;
+                }
+
+                HttpFetcher.Result result = fetched.take();
+                pending--;
+                URL currURL = result.url;
+
+                boolean parsed = false;
                 try {
-                    parser.parse(new InputStreamReader(currURL.openStream()), handler);
+                    if (result.error != null) {
+                        throw result.error;
+                    }
+                    stats.pageFetched(result.body.bytes.remaining(), result.nanos);
+
+                    // pass the current URL to the handler so it can keep track of the information
+                    handler.setURL(currURL);
+                    CharBuffer text = pages.decode(result.body);
+                    parser.parse(text.array(), text.arrayOffset() + text.position(), text.remaining(), handler);
+                    parsed = true;
                     totalPages++;
                 } catch (FileNotFoundException e) {
-                    System.err.printf("Could not find file %s\n", currURL.toString());
+                    stats.error("not_found", currURL, e);
                 } catch (org.attoparser.ParseException e) {
-                    System.err.printf("Could not parse %s\n", currURL.toString());
+                    stats.error("parse", currURL, e);
+                } catch (IOException e) {
+                    stats.error("io", currURL, e);
                 } catch (Exception e) {
-                    System.err.printf("%s with %s\n", e.getClass(), currURL.toString());
+                    stats.error("other", currURL, e);
+                } finally {
+                    fetcher.release(result);
+                    // logged all the same, so a resumed crawl doesn't try it again
+                    if (!parsed) {
+                        handler.pageFailed(currURL);
+                    }
                 }
 
                 // Add any new URLs
                 remaining.addAll(handler.newURLs());
             }
 
+            stats.stopReporting();
+            System.err.println(stats.summary());
+
             System.out.println("Writing to index");
             handler.getIndex().save("index.db");
+            journal.delete();
             System.out.println(totalPages);
         } catch (Exception e) {
             // Bad exception handling :(
@@ -71,4 +146,25 @@ public class WebCrawler {
             System.exit(1);
         }
     }
+
+    /**
+     * Replays a crawl's journal into the handler, and works out what that crawl had left to do:
+     * every URL it found that isn't in the journal, and any of the given URLs that aren't either.
+     * @param journal the journal of the crawl being resumed
+     * @param handler a new handler, to index the journal's pages
+     * @param remaining the URLs given; the rest of the crawl's frontier is added to it
+     */
+    private static void resume(CrawlJournal journal, CrawlingMarkupHandler handler, Queue<URL> remaining)
+            throws IOException {
+        long start = System.nanoTime();
+        HashSet<String> done = new HashSet<>();
+        int count = journal.replay((CrawlJournal.Entry entry) -> {
+            handler.replay(entry);
+            remaining.addAll(handler.newURLs());
+            done.add(entry.url);
+        });
+        remaining.removeIf((URL url) -> done.contains(CrawlingMarkupHandler.canonicalize(url).toString()));
+        System.err.printf("Resumed %d pages from %s in %.1fs, with %d left to crawl%n", count, JOURNAL_PATH,
+                (System.nanoTime() - start) / 1e9, remaining.size());
+    }
 }
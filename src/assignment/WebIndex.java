@@ -1,50 +1,464 @@
 package assignment;
 
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A web-index which efficiently stores information about pages. Serialization is done automatically
  * via the superclass "Index" and Java's Serializable interface.
  */
 public class WebIndex extends Index {
-    private static final long serialVersionUID = 1L;
+    // bumped whenever the fields below change, so an index saved by an older version fails to
+    // load with an InvalidClassException rather than loading with nulls
+    private static final long serialVersionUID = 3L;
+    // words on fewer pages than this are decoded from their postings each time they're looked up
+    private static final int CACHED_DOC_SET_MIN = 1024;
 
-    // We use a HashMap because of its O(1) lookup time
-    // Store pages for easier querying
-    // HashSet of positions so we know where the word is in the page
-    private HashMap<String, HashMap<Page, HashSet<Integer>>> index;
+    // the pages each word is on and where, by term ID, compressed
+    private ArrayList<PostingList> postings;
+    // for each Field, by ordinal: the pages each word is in that field of, by term ID, compressed,
+    // or null if it isn't in that field of any. Where a field's words are isn't kept, so a page's
+    // positions are just 0 up to how many times the word is in the field.
+    private ArrayList<PostingList[]> fields;
+    // every indexed page, by doc ID
+    private PageTable pages;
+    private HashMap<String, Integer> docIds;
+    // every distinct word, by term ID
+    private ArrayList<String> terms;
+    private HashMap<String, Integer> termIds;
+    // the forward index: each page's words as VByte term IDs, one page after another, so a page's
+    // text can be rebuilt (for snippets) without fetching it again
+    private VByte forward;
+    private int[] forwardOffsets;
+    // the links between pages, by doc ID
+    private LinkGraph links;
+    // the most common words starting with each prefix, for suggestions; built when the index is
+    // saved, and dropped whenever a page is added
+    private Completions completions;
+    // field words added since the field's postings were last built, for each field: the term ID
+    // in the high half and the doc ID in the low half, once for each time the word is in the field
+    private transient long[][] fieldEntries;
+    private transient int[] fieldEntryCounts;
+    // the pages of common words, keyed by term ID, with the field's ordinal + 1 above it for those
+    // in a field, and every page, as DocSets; dropped whenever a page or field word is added
+    private transient ConcurrentHashMap<Long, DocSet> docSets;
+    private transient volatile DocSet allDocs;
+    // every word's postings, in the body and then in each field, and the dictionary, once
+    // moveOffHeap() has moved them off the heap
+    private transient PostingStore store;
+    // every word's deletes, for correcting misspellings; large, and quick to work out again, so
+    // built when it's first needed rather than saved
+    private transient SpellChecker spellChecker;
 
     public WebIndex() {
-        index = new HashMap<>();
+        postings = new ArrayList<>();
+        fields = new ArrayList<>();
+        for (int i = 0; i < Field.values().length; i++) {
+            fields.add(new PostingList[0]);
+        }
+        fieldEntries = new long[Field.values().length][16];
+        fieldEntryCounts = new int[Field.values().length];
+        pages = new PageTable();
+        docIds = new HashMap<>();
+        terms = new ArrayList<>();
+        termIds = new HashMap<>();
+        forward = new VByte(1 << 16);
+        forwardOffsets = new int[1024];
+        docSets = new ConcurrentHashMap<>();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        fieldEntries = new long[Field.values().length][16];
+        fieldEntryCounts = new int[Field.values().length];
+        docSets = new ConcurrentHashMap<>();
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (store != null) {
+            throw new NotSerializableException("WebIndex has been moved off the heap");
+        }
+        for (Field field : Field.values()) {
+            getFieldPostings(field);
+        }
+        getCompletions();
+        out.defaultWriteObject();
+    }
+
+    /**
+     * Moves every word's postings, in the body and in each field, and the dictionary from words to
+     * them, into a PostingStore off the heap, so the garbage collector no longer has to trace
+     * them. Call this once the index is complete: no more pages or field words can be added, and
+     * it can't be saved, afterwards.
+     */
+    public synchronized void moveOffHeap() {
+        if (store != null) {
+            return;
+        }
+        ArrayList<List<PostingList>> sets = new ArrayList<>();
+        sets.add(postings);
+        for (Field field : Field.values()) {
+            sets.add(Arrays.asList(getFieldPostings(field)));
+        }
+        store = new PostingStore(terms, sets);
+        postings = null;
+        fields = null;
+        terms = null;
+        termIds = null;
+        docSets.clear();
+    }
+
+    /**
+     * adds a page and all of its words to the index
+     * @param url the page's URL
+     * @param title the page's title, or null if it doesn't have one
+     * @param fetchTime when the page was fetched, in milliseconds since the epoch
+     * @param words the words on the page, in order
+     * @return the page's doc ID
+     */
+    public int addDocument(String url, String title, long fetchTime, List<String> words) {
+        if (store != null) {
+            throw new IllegalStateException("can't add pages once the index is off the heap");
+        }
+        int doc = pages.add(url, title, words.size(), fetchTime);
+        docIds.put(url, doc);
+        docSets.clear();
+        allDocs = null;
+        completions = null;
+        spellChecker = null;
+
+        if (doc == forwardOffsets.length) {
+            forwardOffsets = Arrays.copyOf(forwardOffsets, doc * 2);
+        }
+        forwardOffsets[doc] = forward.length();
+
+        // every word on the page as its term ID in the high half and its location in the low half,
+        // so sorting groups each word's locations together, in order
+        long[] entries = new long[words.size()];
+        for (int location = 0; location < words.size(); location++) {
+            int term = addTerm(words.get(location));
+            forward.write(term);
+            entries[location] = ((long) term << 32) | location;
+        }
+        Arrays.sort(entries);
+
+        int[] locations = new int[entries.length];
+        for (int i = 0; i < entries.length; ) {
+            int term = (int) (entries[i] >>> 32);
+            int count = 0;
+            while (i < entries.length && (int) (entries[i] >>> 32) == term) {
+                locations[count++] = (int) entries[i++];
+            }
+            postings.get(term).add(doc, locations, count);
+        }
+
+        return doc;
+    }
+
+    /**
+     * @param word a word
+     * @return its term ID, which it's given if it doesn't have one yet
+     */
+    private int addTerm(String word) {
+        Integer term = termIds.get(word);
+        if (term == null) {
+            term = terms.size();
+            terms.add(word);
+            termIds.put(word, term);
+            postings.add(new PostingList());
+            completions = null;
+            spellChecker = null;
+        }
+        return term;
+    }
+
+    /**
+     * @return how many pages have been indexed
+     */
+    public int getDocCount() {
+        return pages.size();
+    }
+
+    /**
+     * @param doc a doc ID
+     * @return the page with that doc ID
+     */
+    public Page getPage(int doc) {
+        return pages.getPage(doc);
+    }
+
+    /**
+     * @param page any page
+     * @return its doc ID, or -1 if it isn't in the index
+     */
+    public int getDocId(Page page) {
+        if (page.getTable() == pages) {
+            return page.getDocId();
+        }
+
+        Integer doc = docIds.get(page.toString());
+        return doc == null ? -1 : doc;
+    }
+
+    /**
+     * @param doc a doc ID
+     * @return how many words the page has
+     */
+    public int getTokenCount(int doc) {
+        return pages.getTokenCount(doc);
+    }
+
+    /**
+     * decodes the start of a page's text from the forward index, without touching any other page
+     * @param doc a doc ID
+     * @param out where to put the term IDs of the page's words
+     * @param limit how many words to decode at most
+     * @return how many were decoded
+     */
+    public int getTokens(int doc, int[] out, int limit) {
+        int count = Math.min(limit, pages.getTokenCount(doc));
+        VByte.Reader reader = new VByte.Reader(forward.array(), forwardOffsets[doc]);
+        for (int i = 0; i < count; i++) {
+            out[i] = reader.next();
+        }
+        return count;
+    }
+
+    /**
+     * @param term a term ID
+     * @return the word with that ID
+     */
+    public String getTerm(int term) {
+        return store != null ? store.getTerm(term) : terms.get(term);
+    }
+
+    /**
+     * @return how many distinct words have been indexed; their term IDs are 0 up to this
+     */
+    public int getTermCount() {
+        return store != null ? store.getTermCount() : terms.size();
+    }
+
+    /**
+     * Indexes saved before completions were kept build them when they're first asked for.
+     * @return the completions of every word in the index
+     */
+    public synchronized Completions getCompletions() {
+        if (completions == null) {
+            completions = new Completions(this);
+        }
+        return completions;
+    }
+
+    /**
+     * @return a spelling corrector for the words in the index
+     */
+    public synchronized SpellChecker getSpellChecker() {
+        if (spellChecker == null) {
+            spellChecker = new SpellChecker(this);
+        }
+        return spellChecker;
+    }
+
+    /**
+     * stores the link graph and the static score of every page in it
+     * @param links the links between pages, by doc ID
+     * @param scores the score for each doc ID
+     */
+    public void setLinkGraph(LinkGraph links, float[] scores) {
+        this.links = links;
+        pages.setStaticScores(scores);
+    }
+
+    /**
+     * @return the links between pages, or null if the index was built without them
+     */
+    public LinkGraph getLinkGraph() {
+        return links;
+    }
+
+    /**
+     * @param page a page in the index
+     * @return its query-independent score, higher being better, or 0 if it has none
+     */
+    public float getStaticScore(Page page) {
+        int doc = getDocId(page);
+        return doc >= 0 ? pages.getStaticScore(doc) : 0;
+    }
+
+    /**
+     * adds words to one of a page's fields
+     * @param doc the page's doc ID
+     * @param field the field the words are in
+     * @param words the words
+     */
+    public void addFieldWords(int doc, Field field, List<String> words) {
+        for (String word : words) {
+            addFieldWord(doc, field, word, 1);
+        }
+    }
+
+    /**
+     * adds a word to one of a page's fields
+     * @param doc the page's doc ID
+     * @param field the field the word is in
+     * @param word the word
+     * @param count how many times it's in the field
+     */
+    public synchronized void addFieldWord(int doc, Field field, String word, int count) {
+        if (store != null) {
+            throw new IllegalStateException("can't add words once the index is off the heap");
+        }
+        int f = field.ordinal();
+        long entry = ((long) addTerm(word) << 32) | doc;
+        if (fieldEntryCounts[f] + count > fieldEntries[f].length) {
+            fieldEntries[f] = Arrays.copyOf(fieldEntries[f], Math.max(fieldEntries[f].length * 2, fieldEntryCounts[f] + count));
+        }
+        Arrays.fill(fieldEntries[f], fieldEntryCounts[f], fieldEntryCounts[f] + count, entry);
+        fieldEntryCounts[f] += count;
+        docSets.clear();
+    }
+
+    /**
+     * Pages get words in their fields in any order (anchor text goes to pages indexed long
+     * before), but postings have to be added in doc ID order, so field words are collected and
+     * only turned into postings when they're needed.
+     * @param field a field
+     * @return the field's postings, by term ID; shorter than the dictionary if the last words
+     *         aren't in the field
+     */
+    private synchronized PostingList[] getFieldPostings(Field field) {
+        int f = field.ordinal();
+        if (fieldEntryCounts[f] > 0) {
+            fields.set(f, buildFieldPostings(fields.get(f), fieldEntries[f], fieldEntryCounts[f]));
+            fieldEntries[f] = new long[16];
+            fieldEntryCounts[f] = 0;
+        }
+        return fields.get(f);
     }
 
     /**
-     * marks a string and it's location on a page
-     * @param str the word string
-     * @param currPage the current page
-     * @param location the location on the page
+     * @param lists a field's postings so far
+     * @param entries the words added to the field since, as term ID and doc ID pairs
+     * @param count how many entries there are
+     * @return the field's postings with the new words added
      */
-    public void add(String str, Page currPage, int location) {
-        if (index.containsKey(str)) {
-            HashMap<Page, HashSet<Integer>> map = index.get(str);
+    private PostingList[] buildFieldPostings(PostingList[] lists, long[] entries, int count) {
+        // postings can only be added to in doc ID order, so the ones already built go back in too
+        for (int term = 0; term < lists.length; term++) {
+            if (lists[term] == null) {
+                continue;
+            }
+            PostingList.Cursor cursor = lists[term].cursor();
+            while (cursor.nextDoc() != PostingList.NO_MORE_DOCS) {
+                if (count + cursor.frequency() > entries.length) {
+                    entries = Arrays.copyOf(entries, Math.max(entries.length * 2, count + cursor.frequency()));
+                }
+                Arrays.fill(entries, count, count + cursor.frequency(), ((long) term << 32) | cursor.doc());
+                count += cursor.frequency();
+            }
+        }
+        Arrays.sort(entries, 0, count);
 
-            if (map.containsKey(currPage)) {
-                map.get(currPage).add(location); }
-                else {
-                    HashSet<Integer> locations = new HashSet<>();
-                    locations.add(location);map.put(currPage, locations);
+        PostingList[] built = new PostingList[terms.size()];
+        int[] positions = new int[16];
+        for (int i = 0; i < count; ) {
+            long entry = entries[i];
+            int frequency = 0;
+            while (i < count && entries[i] == entry) {
+                if (frequency == positions.length) {
+                    positions = Arrays.copyOf(positions, frequency * 2);
                 }
+                positions[frequency] = frequency;
+                frequency++;
+                i++;
+            }
+
+            int term = (int) (entry >>> 32);
+            if (built[term] == null) {
+                built[term] = new PostingList();
+            }
+            built[term].add((int) entry, positions, frequency);
+        }
+        return built;
+    }
 
-                index.put(str, map);
-        } else {
-            HashMap<Page, HashSet<Integer>> map = new HashMap<>();
-            HashSet<Integer> locations = new HashSet<>();
-            locations.add(location);
-            map.put(currPage, locations);
-            index.put(str, map);
+    /**
+     * @param field a field
+     * @param str the word we are looking for
+     * @return a set of all pages with the word in that field
+     */
+    public Set<Page> getPagesWith(Field field, String str) {
+        return toPages(getDocSet(field, str));
+    }
+
+    /**
+     * @param field a field
+     * @param str a word
+     * @return the doc IDs of every page with the word in that field
+     */
+    public DocSet getDocSet(Field field, String str) {
+        int term = getTermId(str);
+        PostingList list = term < 0 ? null : getPostings(field, term);
+        return list == null ? DocSet.EMPTY : getDocSet(1 + field.ordinal(), term, list);
+    }
+
+    /**
+     * @param field a field
+     * @param str a word
+     * @return the pages with the word in that field, each with how many times it's in it as its
+     *         frequency, or null if it isn't in that field of any
+     */
+    public PostingList getPostings(Field field, String str) {
+        int term = getTermId(str);
+        return term < 0 ? null : getPostings(field, term);
+    }
+
+    private PostingList getPostings(Field field, int term) {
+        if (store != null) {
+            return store.getPostings(1 + field.ordinal(), term);
         }
+        PostingList[] lists = getFieldPostings(field);
+        return term < lists.length ? lists[term] : null;
+    }
+
+    /**
+     * @param str a word
+     * @return the pages it's on, or null if it isn't on any
+     */
+    public PostingList getPostings(String str) {
+        int term = getTermId(str);
+        return term < 0 ? null : getPostings(term);
+    }
+
+    private int getTermId(String str) {
+        if (store != null) {
+            return store.getTermId(str);
+        }
+        Integer term = termIds.get(str);
+        return term == null ? -1 : term;
+    }
+
+    private PostingList getPostings(int term) {
+        return store != null ? store.getPostings(0, term) : postings.get(term);
+    }
+
+    /**
+     * @param str a word
+     * @return how many pages it's on
+     */
+    public int getDocFrequency(String str) {
+        PostingList list = getPostings(str);
+        return list == null ? 0 : list.size();
     }
 
     /**
@@ -53,11 +467,39 @@ public class WebIndex extends Index {
      * @return a set of all pages containing the word
      */
     public Set<Page> getPagesWith(String str) {
-        if (!index.containsKey(str)) {
-            return new HashSet<>();
+        return toPages(getDocSet(str));
+    }
+
+    /**
+     * The doc IDs of common words are kept once they've been worked out; those of rarer words
+     * are quick enough to decode each time.
+     * @param str a word
+     * @return the doc IDs of every page the word is on
+     */
+    public DocSet getDocSet(String str) {
+        int term = getTermId(str);
+        if (term < 0) {
+            return DocSet.EMPTY;
+        }
+
+        return getDocSet(0, term, getPostings(term));
+    }
+
+    /**
+     * @param kind 0 for a word's postings, or a field's ordinal + 1 for its postings in that field
+     */
+    private DocSet getDocSet(int kind, int term, PostingList list) {
+        if (list.size() < CACHED_DOC_SET_MIN) {
+            return decodeDocs(list);
         }
 
-        return new HashSet<>(index.get(str).keySet());
+        return docSets.computeIfAbsent(((long) kind << 32) | term, (Long key) -> decodeDocs(list));
+    }
+
+    private static DocSet decodeDocs(PostingList list) {
+        int[] docs = new int[list.size()];
+        list.docs(docs);
+        return DocSet.of(docs, docs.length);
     }
 
     /**
@@ -65,26 +507,84 @@ public class WebIndex extends Index {
      * @return a set containing all the pages in the index
      */
     public Set<Page> getAllPages() {
-        HashSet<Page> all = new HashSet<>();
-        for (String str : index.keySet()) {
-            all.addAll(index.get(str).keySet());
-        }
+        return toPages(getAllDocs());
+    }
 
+    /**
+     * @return the doc IDs of every page that has any words, and so could match a query
+     */
+    public DocSet getAllDocs() {
+        DocSet all = allDocs;
+        if (all == null) {
+            DocSet.Builder builder = new DocSet.Builder();
+            for (int doc = 0; doc < pages.size(); doc++) {
+                // pages without any words can't be found by any word
+                if (pages.getTokenCount(doc) > 0) {
+                    builder.add(doc);
+                }
+            }
+            all = builder.build();
+            allDocs = all;
+        }
         return all;
     }
 
-    public Set<Integer> getLocationsOnPage(String str, Page page) {
-        if (!index.containsKey(str)) {
-            return new HashSet<>();
+    /**
+     * @param docs doc IDs
+     * @return the pages with those doc IDs
+     */
+    public Set<Page> toPages(DocSet docs) {
+        HashSet<Page> result = new HashSet<>(docs.size() * 4 / 3 + 1);
+        docs.forEach((int doc) -> result.add(pages.getPage(doc)));
+        return result;
+    }
+
+    /**
+     * @param str a word
+     * @param doc a doc ID
+     * @return where the word is on the page, in increasing order; empty if it isn't on it
+     */
+    public int[] getPositions(String str, int doc) {
+        PostingList list = getPostings(str);
+        if (list == null || doc < 0) {
+            return new int[0];
         }
 
-        HashSet<Integer> result = index.get(str).get(page);
+        PostingList.Cursor cursor = list.cursor();
+        if (cursor.advance(doc) != doc) {
+            return new int[0];
+        }
+
+        int[] positions = new int[cursor.frequency()];
+        cursor.positions(positions);
+        return positions;
+    }
 
-        if (result == null) {
-            return new HashSet<>();
-        } else {
-            return result;
+    public Set<Integer> getLocationsOnPage(String str, Page page) {
+        HashSet<Integer> result = new HashSet<>();
+        for (int location : getPositions(str, getDocId(page))) {
+            result.add(location);
+        }
+        return result;
+    }
+
+    /**
+     * @return roughly how many bytes the postings of every word take up, in the body and in fields
+     */
+    public long getPostingsSize() {
+        if (store != null) {
+            return store.sizeInBytes();
+        }
+        long size = 0;
+        for (PostingList list : postings) {
+            size += list.sizeInBytes();
         }
+        for (Field field : Field.values()) {
+            for (PostingList list : getFieldPostings(field)) {
+                size += list == null ? 0 : list.sizeInBytes();
+            }
+        }
+        return size;
     }
 
     /**
@@ -94,15 +594,20 @@ public class WebIndex extends Index {
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
-        for (String key : index.keySet()) {
-            result.append(key);
+        for (int term = 0; term < getTermCount(); term++) {
+            result.append(getTerm(term));
             result.append("\n");
-            HashMap<Page, HashSet<Integer>> map = index.get(key);
-            for (Page page : map.keySet()) {
+            PostingList.Cursor cursor = getPostings(term).cursor();
+            int[] positions = new int[16];
+            while (cursor.nextDoc() != PostingList.NO_MORE_DOCS) {
+                if (positions.length < cursor.frequency()) {
+                    positions = new int[cursor.frequency()];
+                }
+                cursor.positions(positions);
                 result.append("\t");
-                result.append(page.toString());
+                result.append(pages.getPage(cursor.doc()).toString());
                 result.append(" ");
-                result.append(map.get(page));
+                result.append(Arrays.toString(Arrays.copyOf(positions, cursor.frequency())));
                 result.append("\n");
             }
         }
@@ -1,6 +1,10 @@
 package assignment;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
 
 /**
  * A query engine which holds an underlying web index and can answer textual queries with a
@@ -30,36 +34,280 @@ public class WebQueryEngine {
         return new WebQueryEngine(index);
     }
 
+    // timings for each phase of a query; recorded into a private registry until setMetrics is called
+    private Histogram tokenizeTime, buildTime, evaluateTime;
+    private LongAdder parseErrors, sharedHits, sharedMisses;
+
     public WebQueryEngine(WebIndex index) {
         this.index = index;
+        setMetrics(new Metrics());
+    }
+
+    /**
+     * Records query timings and counts into the given registry from now on.
+     *
+     * @param metrics the registry to use
+     */
+    public void setMetrics(Metrics metrics) {
+        String phaseHelp = "Time spent in each phase of answering a query";
+        tokenizeTime = metrics.histogram("query_phase_seconds", phaseHelp, "phase=\"tokenize\"");
+        buildTime = metrics.histogram("query_phase_seconds", phaseHelp, "phase=\"build_ast\"");
+        evaluateTime = metrics.histogram("query_phase_seconds", phaseHelp, "phase=\"evaluate\"");
+        parseErrors = metrics.counter("query_parse_errors_total", "Queries that couldn't be parsed", "");
+
+        String cacheHelp = "Lookups in each cache, by whether they hit";
+        sharedHits = metrics.counter("cache_requests_total", cacheHelp, "cache=\"batch\",result=\"hit\"");
+        sharedMisses = metrics.counter("cache_requests_total", cacheHelp, "cache=\"batch\",result=\"miss\"");
     }
 
     /**
      * Returns a Collection of URLs (as Strings) of web pages satisfying the query expression.
      *
      * @param query A query expression.
-     * @return A collection of web pages satisfying the query.
+     * @return A list of web pages satisfying the query, best first.
      */
-    public Collection<Page> query(String query) {
+    public List<Page> query(String query) {
         if (query == null) {
-            return new HashSet<>();
+            return new ArrayList<>();
         }
 
         if (query.length() == 0) {
-            return new HashSet<>();
+            return new ArrayList<>();
+        }
+
+        ASTNode root = parse(query);
+
+        long start = System.nanoTime();
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+        collectTerms(root, terms);
+        List<Page> result = rank(parseTree(root), terms);
+        evaluateTime.recordSince(start);
+        return result;
+    }
+
+    /**
+     * orders pages by how well they match the query's words and by their static score, best
+     * first. The scores are worked out once per page and packed with the page's position into
+     * longs, so the sort is of primitives.
+     * @param docs the doc IDs of the pages matching a query
+     * @param terms the words the query looks for
+     * @return the pages, in order
+     */
+    private List<Page> rank(DocSet docs, Collection<String> terms) {
+        int[] matchingDocs = docs.toArray();
+        Page[] matches = new Page[matchingDocs.length];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = index.getPage(matchingDocs[i]);
+        }
+        double[] text = textScores(matchingDocs, terms);
+        long[] keys = new long[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            // scaled by the page's static score, relative to the average page's
+            double popularity = Math.log1p(index.getDocCount() * (double) index.getStaticScore(matches[i]));
+            // non-negative floats order the same way as their bits do as ints
+            float score = (float) Math.max(0, text[i] * (1 + popularity));
+            keys[i] = ((long) Float.floatToIntBits(score) << 32) | (Integer.MAX_VALUE - i);
+        }
+        Arrays.sort(keys);
+
+        ArrayList<Page> ranked = new ArrayList<>(matches.length);
+        for (int i = keys.length - 1; i >= 0; i--) {
+            ranked.add(matches[Integer.MAX_VALUE - (int) keys[i]]);
         }
+        return ranked;
+    }
+
+    /**
+     * scores pages by how well they match a query's words. Each word counts for more the more
+     * times it's on the page, and for more again in the page's title, headings, or the text of
+     * links to it, by each field's boost. The pages are visited in doc ID order, so each word's
+     * postings are walked through once, however many pages there are.
+     * @param docs the doc IDs of the pages matching the query, in increasing order
+     * @param terms the words the query looks for
+     * @return each page's score, at least 1
+     */
+    private double[] textScores(int[] docs, Collection<String> terms) {
+        double[] text = new double[docs.length];
+        Arrays.fill(text, 1);
+
+        for (String term : terms) {
+            PostingList postings = index.getPostings(term);
+            if (postings == null) {
+                continue;
+            }
+
+            PostingList.Cursor cursor = postings.cursor();
+            for (int i = 0; i < docs.length; i++) {
+                if (cursor.advance(docs[i]) == docs[i]) {
+                    text[i] += Field.BODY_BOOST * Math.log1p(cursor.frequency());
+                }
+            }
+
+            for (Field field : Field.values()) {
+                PostingList fieldPostings = index.getPostings(field, term);
+                if (fieldPostings == null) {
+                    continue;
+                }
+
+                PostingList.Cursor fieldCursor = fieldPostings.cursor();
+                for (int i = 0; i < docs.length && fieldCursor.doc() != PostingList.NO_MORE_DOCS; i++) {
+                    if (fieldCursor.advance(docs[i]) == docs[i]) {
+                        text[i] += field.getBoost() * Math.log1p(fieldCursor.frequency());
+                    }
+                }
+            }
+        }
+
+        return text;
+    }
+
+    /**
+     * Answers a batch of queries at once. Sub-expressions that appear in more than one query
+     * (most commonly single words) are only evaluated once across the whole batch, and the queries
+     * themselves are evaluated in parallel.
+     *
+     * @param queries the query expressions
+     * @return the results of each query, in the same order, each ranked as query() ranks them.
+     *         The lists are unmodifiable.
+     */
+    public List<Collection<Page>> queryBatch(List<String> queries) {
+        // every distinct sub-expression in the batch maps to the (eventual) set of pages it matches
+        ConcurrentHashMap<String, CompletableFuture<DocSet>> shared = new ConcurrentHashMap<>();
+        ArrayList<Collection<Page>> results = new ArrayList<>(Collections.nCopies(queries.size(), null));
+
+        IntStream.range(0, queries.size()).parallel().forEach((int i) -> {
+            String query = queries.get(i);
+            List<Page> result;
+            if (query == null || query.length() == 0) {
+                result = new ArrayList<>();
+            } else {
+                ASTNode root = parse(query);
+                long start = System.nanoTime();
+                LinkedHashSet<String> terms = new LinkedHashSet<>();
+                collectTerms(root, terms);
+                result = root == null ? new ArrayList<>() : rank(evaluateShared(root, shared), terms);
+                evaluateTime.recordSince(start);
+            }
+
+            results.set(i, Collections.unmodifiableList(result));
+        });
+
+        return results;
+    }
 
+    /**
+     * finds the words a query looks for, which are the ones worth highlighting in its results:
+     * every word in it, apart from those that are negated, without any field it's restricted to
+     * @param query a query expression
+     * @return the words, in the order they appear, or an empty set if the query can't be parsed
+     */
+    public Set<String> queryTerms(String query) {
+        LinkedHashSet<String> terms = new LinkedHashSet<>();
+        if (query == null || query.isEmpty()) {
+            return terms;
+        }
+
+        ArrayList<Token> tokens = getTokens(query.toLowerCase());
+        collectTerms(tokens == null ? null : buildAST(tokens), terms);
+        return terms;
+    }
+
+    /**
+     * suggests another query for one that matched nothing, with each word that isn't in the
+     * index replaced by the nearest one that is. Operators, including near/k, and field names
+     * before a ':', are kept as they were.
+     * @param query a query expression
+     * @return the corrected query, or null if no word could be corrected
+     */
+    public String correctSpelling(String query) {
+        if (query == null) {
+            return null;
+        }
+
+        query = query.toLowerCase();
+        SpellChecker checker = index.getSpellChecker();
+        StringBuilder corrected = new StringBuilder(query.length());
+        boolean changed = false;
+        int i = 0;
+        while (i < query.length()) {
+            int end = i;
+            while (end < query.length() && isWordChar(query.charAt(end))) {
+                end++;
+            }
+            if (end == i) {
+                corrected.append(query.charAt(i++));
+                continue;
+            }
+
+            String word = query.substring(i, end);
+            String correction = null;
+            // very short words are within a couple of edits of too much to guess at
+            if (word.length() > SpellChecker.MAX_DISTANCE && (end == query.length() ||
+                    (query.charAt(end) != ':' && query.charAt(end) != '/'))) {
+                correction = checker.correct(word);
+            }
+            if (correction != null && !correction.equals(word)) {
+                corrected.append(correction);
+                changed = true;
+            } else {
+                corrected.append(word);
+            }
+            i = end;
+        }
+        return changed ? corrected.toString() : null;
+    }
+
+    /**
+     * the characters CrawlingMarkupHandler makes words of: letters, digits, underscores and dashes
+     */
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '-';
+    }
+
+    private void collectTerms(ASTNode node, Set<String> terms) {
+        if (node == null || node.token.token.equals("!")) {
+            return;
+        }
+
+        if (!operators.contains(node.token.token) && node.token.precedence != Token.NEAR) {
+            String word = node.token.token;
+            terms.add(word.substring(word.indexOf(':') + 1));
+        }
+        for (ASTNode child : node.children) {
+            collectTerms(child, terms);
+        }
+    }
+
+    /**
+     * @return the index this engine answers queries from
+     */
+    public WebIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * tokenizes the query and builds its AST
+     * @param query the given query, which must not be empty
+     * @return the root of the AST, or null if the query couldn't be parsed
+     */
+    private ASTNode parse(String query) {
+        long start = System.nanoTime();
         query = query.toLowerCase();
 
         ArrayList<Token> tokens = getTokens(query);
+        start = tokenizeTime.recordSince(start);
         if (tokens == null) {
-            return new HashSet<>();
+            parseErrors.increment();
+            return null;
         }
 
         ASTNode root = buildAST(tokens);
+        buildTime.recordSince(start);
+        if (root == null) {
+            parseErrors.increment();
+        }
 
-        Set<Page> result = parseTree(root);
-        return result;
+        return root;
     }
 
     /**
@@ -83,7 +331,7 @@ public class WebQueryEngine {
                     if (operators.contains(curr)) {
                         Token oper = new Token(curr);
                         if (builder.length() > 0) {
-                            Token tmp = new Token(builder.toString());
+                            Token tmp = wordToken(builder.toString());
                             if (!quotationSeen && needsImplicit(prev, tmp)) {
                                 tokens.add(new Token("&", Token.AND));
                             }
@@ -125,7 +373,7 @@ public class WebQueryEngine {
                 }
 
                 if (builder.length() > 0) {
-                    Token tmp = new Token(builder.toString());
+                    Token tmp = wordToken(builder.toString());
 
                     if (!quotationSeen && needsImplicit(prev, tmp)) {
                         tokens.add(new Token("&", Token.AND));
@@ -145,6 +393,20 @@ public class WebQueryEngine {
         return tokens;
     }
 
+    /**
+     * makes a token of a run of characters that aren't operators, which is a word unless it's a
+     * proximity operator: "near/k" for words at most k positions apart, either way round, and
+     * "onear/k" for the second word at most k positions after the first
+     * @param str the characters
+     * @return the token
+     */
+    private Token wordToken(String str) {
+        if (str.matches("o?near/\\d{1,9}")) {
+            return new Token(str, Token.NEAR);
+        }
+        return new Token(str);
+    }
+
     /**
      * determines whether two tokens are the same kind (operator or word)
      * @param prev the first token
@@ -171,7 +433,7 @@ public class WebQueryEngine {
      * @return true if the token is a word, false otherwise
      */
     private boolean isWord(Token token) {
-        return token.token.matches("[\\w-]+");
+        return token.token.matches("([a-z]+:)?[\\w-]+");
     }
 
     /**
@@ -212,7 +474,7 @@ public class WebQueryEngine {
         boolean quotationSeen = false;
         try {
             for (Token token : tokens) {
-                if (operators.contains(token.token)) {
+                if (operators.contains(token.token) || token.precedence == Token.NEAR) {
                     if (token.token.equals("(")) {
                         operatorStack.push(token);
                     } else if (token.token.equals(")")) {
@@ -296,102 +558,351 @@ public class WebQueryEngine {
     /**
      * parses the given AST
      * @param node the current node
-     * @return a collection of pages conforming to the query
+     * @return the doc IDs of the pages conforming to the query
      */
-    private Set<Page> parseTree(ASTNode node) {
+    private DocSet parseTree(ASTNode node) {
         if (node == null) {
-            return new HashSet<>();
+            return DocSet.EMPTY;
+        }
+
+        if (node.token.precedence == Token.NEAR) {
+            return handleNear(node);
         }
 
         // base case: single word query
         if (!operators.contains(node.token.token)) {
-            return index.getPagesWith(node.token.token);
+            return lookup(node.token.token);
         }
 
         if (node.token.token.equals("\"")) {
             return handlePhrase(node);
         } else if (node.token.token.equals("!")) {
-            Set<Page> result = parseTree(node.children.get(0));
-            return negate(result);
-        } else {
-            Set<Page> left = parseTree(node.children.get(0));
-            Set<Page> right = parseTree(node.children.get(1));
-            if (node.token.token.equals("|")) {
-                left.addAll(right);
-            } else if (node.token.token.equals("&")) {
-                left.removeIf((Page page) -> !right.contains(page));
+            return negate(parseTree(node.children.get(0)));
+        }
+
+        DocSet left = parseTree(node.children.get(0));
+        DocSet right = parseTree(node.children.get(1));
+        return node.token.token.equals("|") ? left.or(right) : left.and(right);
+    }
+
+    /**
+     * finds the pages with a word, in the field its prefix names if it has one, such as
+     * "title:word"; "body:word" is the same as "word"
+     * @param word the word, with or without a field prefix
+     * @return the doc IDs of the pages with the word
+     */
+    private DocSet lookup(String word) {
+        int colon = word.indexOf(':');
+        if (colon > 0) {
+            String prefix = word.substring(0, colon);
+            Field field = Field.fromPrefix(prefix);
+            if (field != null) {
+                return index.getDocSet(field, word.substring(colon + 1));
+            } else if (prefix.equals("body")) {
+                return index.getDocSet(word.substring(colon + 1));
             }
+        }
+
+        return index.getDocSet(word);
+    }
 
-            return left;
+    /**
+     * evaluates the AST like parseTree does, but looks up every sub-expression in (or adds it to)
+     * a table shared by the whole batch, which may be read by several threads at once.
+     * @param node the current node
+     * @param shared the results of sub-expressions evaluated so far, keyed by their canonical form
+     * @return the doc IDs of the pages conforming to the query
+     */
+    private DocSet evaluateShared(ASTNode node, ConcurrentHashMap<String, CompletableFuture<DocSet>> shared) {
+        String key = canonicalForm(node);
+        CompletableFuture<DocSet> future = new CompletableFuture<>();
+        CompletableFuture<DocSet> existing = shared.putIfAbsent(key, future);
+        if (existing != null) {
+            sharedHits.increment();
+            // someone else has it (or is working on it); children are always strictly smaller
+            // expressions, so waiting on them can't deadlock
+            return existing.join();
+        }
+        sharedMisses.increment();
+
+        try {
+            DocSet result;
+            if (node.token.precedence == Token.NEAR) {
+                result = handleNear(node);
+            } else if (!operators.contains(node.token.token)) {
+                result = lookup(node.token.token);
+            } else if (node.token.token.equals("\"")) {
+                result = handlePhrase(node);
+            } else if (node.token.token.equals("!")) {
+                result = negate(evaluateShared(node.children.get(0), shared));
+            } else {
+                DocSet left = evaluateShared(node.children.get(0), shared);
+                DocSet right = evaluateShared(node.children.get(1), shared);
+                result = node.token.token.equals("|") ? left.or(right) : left.and(right);
+            }
+
+            future.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
         }
     }
 
+    /**
+     * builds a string that is the same for any two sub-expressions that always match the same
+     * pages, as far as is cheap to tell; &, | and near are commutative so their operands are sorted
+     * @param node the root of the sub-expression
+     * @return the canonical form of the sub-expression
+     */
+    private String canonicalForm(ASTNode node) {
+        String token = node.token.token;
+        if (!operators.contains(token) && node.token.precedence != Token.NEAR) {
+            return token;
+        }
+
+        if (token.equals("\"")) {
+            // the words of a phrase are stored in reverse, and their order matters
+            StringBuilder phrase = new StringBuilder("\"");
+            for (int i = node.children.size() - 1; i >= 0; i--) {
+                phrase.append(node.children.get(i).token.token);
+                phrase.append(i == 0 ? "\"" : " ");
+            }
+            return phrase.toString();
+        } else if (token.equals("!")) {
+            return "!(" + canonicalForm(node.children.get(0)) + ")";
+        }
+
+        // the operands are stored in reverse, and the order of an onear's matters
+        String left = canonicalForm(node.children.get(1));
+        String right = canonicalForm(node.children.get(0));
+        if (!token.startsWith("onear/") && left.compareTo(right) > 0) {
+            String tmp = left;
+            left = right;
+            right = tmp;
+        }
+
+        return "(" + left + " " + token + " " + right + ")";
+    }
+
     /**
      * finds the set of pages the contains the given phrase query
      * note the that phrase is stored in reverse order
+     * The words' postings are walked together: the rarest word's pages are the candidates, and
+     * the other words' postings skip ahead to each one, so blocks with none of them are never
+     * decoded, and positions are only decoded for pages with every word on them.
      * @param node the phrase query in the tree
-     * @return a set of pages containing the phrase query
+     * @return the doc IDs of the pages containing the phrase query
      */
-    private Set<Page> handlePhrase(ASTNode node) {
+    private DocSet handlePhrase(ASTNode node) {
         ArrayList<ASTNode> children = node.children;
         if (children.size() == 0) {
-            return new HashSet<>();
+            return DocSet.EMPTY;
         }
 
-        // get the child that returns the least number of pages to reduce how many pages we have to check
-        Set<Page> pages = index.getPagesWith(children.get(0).token.token);
-        for (int i = 1; i < children.size(); i++) {
-            Set<Page> curr = index.getPagesWith(children.get(i).token.token);
-            if (curr.size() < pages.size()) {
-                pages = curr;
+        PostingList.Cursor[] cursors = new PostingList.Cursor[children.size()];
+        int rarest = 0;
+        int rarestSize = Integer.MAX_VALUE;
+        for (int i = 0; i < children.size(); i++) {
+            PostingList list = index.getPostings(children.get(i).token.token);
+            if (list == null) {
+                return DocSet.EMPTY;
+            }
+
+            cursors[i] = list.cursor();
+            if (list.size() < rarestSize) {
+                rarest = i;
+                rarestSize = list.size();
             }
         }
 
-        pages.removeIf((Page p) -> {
-            Set<Integer> locations = index.getLocationsOnPage(children.get(0).token.token, p);
-            if (locations.size() == 0) {
+        int[][] positions = new int[children.size()][16];
+        int[] counts = new int[children.size()];
+        DocSet.Builder result = new DocSet.Builder();
+        PostingList.Cursor lead = cursors[rarest];
+        int doc = lead.nextDoc();
+        while (doc != PostingList.NO_MORE_DOCS) {
+            int next = doc;
+            for (int i = 0; i < cursors.length && next == doc; i++) {
+                next = cursors[i].advance(doc);
+            }
+
+            if (next != doc) {
+                // some word isn't on this page; skip to the next page it is on
+                doc = lead.advance(next);
+                continue;
+            }
+
+            if (phraseOnPage(cursors, positions, counts)) {
+                result.add(doc);
+            }
+            doc = lead.nextDoc();
+        }
+
+        return result.build();
+    }
+
+    /**
+     * @param cursors the postings of each word of a phrase, in reverse order, all on the same page
+     * @param positions somewhere to decode each word's positions into, which may be replaced
+     * @param counts somewhere to put how many of each word's positions were decoded
+     * @return whether the words are next to each other, in order, somewhere on the page
+     */
+    private static boolean phraseOnPage(PostingList.Cursor[] cursors, int[][] positions, int[] counts) {
+        for (int i = 0; i < cursors.length; i++) {
+            if (positions[i].length < cursors[i].frequency()) {
+                positions[i] = new int[cursors[i].frequency()];
+            }
+        }
+
+        // the word that's on the page the fewest times is where the phrase could be; the others
+        // only need decoding up to the last place they could be for it
+        int anchor = 0;
+        for (int i = 1; i < cursors.length; i++) {
+            if (cursors[i].frequency() < cursors[anchor].frequency()) {
+                anchor = i;
+            }
+        }
+        counts[anchor] = cursors[anchor].positions(positions[anchor]);
+        int last = positions[anchor][counts[anchor] - 1];
+        for (int i = 0; i < cursors.length; i++) {
+            if (i != anchor) {
+                counts[i] = cursors[i].positions(positions[i], last + anchor - i);
+            }
+        }
+
+        // word i comes i words before the phrase's last word
+        for (int p = 0; p < counts[anchor]; p++) {
+            int end = positions[anchor][p] + anchor;
+            boolean found = true;
+            for (int i = 0; i < cursors.length && found; i++) {
+                found = i == anchor || Arrays.binarySearch(positions[i], 0, counts[i], end - i) >= 0;
+            }
+
+            if (found) {
                 return true;
             }
+        }
 
-            for (int i = 1; i < children.size(); i++) {
-                ASTNode child = children.get(i);
-                Set<Integer> currLocations = index.getLocationsOnPage(child.token.token, p);
-                boolean wordExists = false;
+        return false;
+    }
 
-                for (int loc : currLocations) {
-                    if (locations.contains(loc + i)) {
-                        wordExists = true;
-                        break;
-                    }
+    /**
+     * finds the pages with two words near each other. Their postings are walked together as a
+     * phrase's are, and on pages with both, their positions are merged like two sorted lists, so
+     * this costs no more than the phrase of the two words. Only single words can be near each
+     * other, as nothing else has positions; "body:" may be given, but no other field.
+     * @param node the near/k or onear/k operator, with its two words stored in reverse order
+     * @return the doc IDs of the pages with the words at most k positions apart
+     */
+    private DocSet handleNear(ASTNode node) {
+        String operator = node.token.token;
+        int distance = Integer.parseInt(operator.substring(operator.indexOf('/') + 1));
+        boolean ordered = operator.startsWith("onear/");
+
+        PostingList.Cursor[] cursors = new PostingList.Cursor[2];
+        String[] words = new String[2];
+        int[] sizes = new int[2];
+        for (int i = 0; i < 2; i++) {
+            ASTNode operand = node.children.get(1 - i);
+            String word = operand.token.token;
+            if (word.startsWith("body:")) {
+                word = word.substring("body:".length());
+            }
+            if (operators.contains(word) || operand.token.precedence == Token.NEAR || word.indexOf(':') >= 0) {
+                return DocSet.EMPTY;
+            }
+
+            PostingList list = index.getPostings(word);
+            if (list == null) {
+                return DocSet.EMPTY;
+            }
+            cursors[i] = list.cursor();
+            words[i] = word;
+            sizes[i] = list.size();
+        }
+        boolean same = words[0].equals(words[1]);
+
+        int[][] positions = {new int[16], new int[16]};
+        DocSet.Builder result = new DocSet.Builder();
+        // the rarer word's pages are the candidates, as for a phrase
+        PostingList.Cursor lead = sizes[0] <= sizes[1] ? cursors[0] : cursors[1];
+        PostingList.Cursor other = lead == cursors[0] ? cursors[1] : cursors[0];
+        int doc = lead.nextDoc();
+        while (doc != PostingList.NO_MORE_DOCS) {
+            int next = other.advance(doc);
+            if (next != doc) {
+                doc = lead.advance(next);
+                continue;
+            }
+
+            for (int i = 0; i < 2; i++) {
+                if (positions[i].length < cursors[i].frequency()) {
+                    positions[i] = new int[cursors[i].frequency()];
                 }
+            }
+            int count0 = cursors[0].positions(positions[0]);
+            int count1 = same ? count0 : cursors[1].positions(positions[1]);
+            if (nearOnPage(positions[0], count0, same ? positions[0] : positions[1], count1, distance, ordered, same)) {
+                result.add(doc);
+            }
+            doc = lead.nextDoc();
+        }
+
+        return result.build();
+    }
 
-                if (!wordExists) {
+    /**
+     * @param first the first word's positions on a page, in order
+     * @param second the second word's
+     * @param same whether they're the same word, which then has to be there twice
+     * @return whether some position of the second word is at most distance after one of the
+     *         first's, or, unless ordered, at most distance before one
+     */
+    private static boolean nearOnPage(int[] first, int firstCount, int[] second, int secondCount,
+                                      int distance, boolean ordered, boolean same) {
+        if (same) {
+            // each occurrence is nearest the next one
+            for (int i = 1; i < firstCount; i++) {
+                if (first[i] - first[i - 1] <= distance) {
                     return true;
                 }
             }
-
             return false;
-        });
+        }
 
-        return pages;
+        // a window sliding along the first word's positions: j is the second word's first
+        // position that isn't more than distance before the current one
+        int j = 0;
+        for (int i = 0; i < firstCount; i++) {
+            int low = ordered ? first[i] + 1 : first[i] - distance;
+            while (j < secondCount && second[j] < low) {
+                j++;
+            }
+            if (j == secondCount) {
+                return false;
+            }
+            if (second[j] <= first[i] + distance) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * 'negates' the given set by removing elements from the set of all pages
-     * probably highly inefficient, but the easiest way to do it
-     * @param pages the result of the non-negated query
-     * @return the set of all pages except those passed in pages
+     * @param docs the result of the non-negated query
+     * @return the doc IDs of all pages except those passed in docs
      */
-    private Set<Page> negate(Set<Page> pages) {
-        Set<Page> all = index.getAllPages();
-        all.removeIf(pages::contains);
-        return all;
+    private DocSet negate(DocSet docs) {
+        return index.getAllDocs().andNot(docs);
     }
 
     /**
      * Helper class to abstract Strings into tokens
      */
     private class Token {
+        static final int NEAR = 4;
         static final int NOT = 3;
         static final int AND = 2;
         static final int OR = 1;
@@ -3,6 +3,13 @@ package assignment;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.text.*;
 
 /**
@@ -15,175 +22,737 @@ public class WebServer {
 
     /**
      * main method to start a server.
-     * Loads a WebIndex from the default save location.
+     * Loads a WebIndex from the default save location, and moves its postings off the heap, as
+     * the server never adds to it.
      */
     public static void main(String[] args) throws Exception {
-        WebQueryEngine wqe = WebQueryEngine.fromIndex(
-                (WebIndex) Index.load("index.db"));
+        WebIndex index = (WebIndex) Index.load("index.db");
+        index.moveOffHeap();
+        WebQueryEngine wqe = WebQueryEngine.fromIndex(index);
         WebServer server = new WebServer(wqe);
         server.serve();
     }
 
     private WebQueryEngine engine;
+    private SnippetBuilder snippets;
+    private Completions completions;
+    // assets that never change, keyed by their path; "/" is the homepage
+    private HashMap<String, StaticAsset> assets;
+    private String logo;
+    // response buffers are borrowed from here rather than allocated per request
+    private BufferPool buffers = new BufferPool(16 * 1024, 64);
+
+    // the paths with handlers of their own, besides the static assets
+    private static final List<String> ROUTES = Arrays.asList("/search", "/api/search", "/api/batch", "/suggest",
+            "/metrics");
+
+    private static final int DEFAULT_PAGE_SIZE = 10;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int MAX_BODY_LENGTH = 16 << 20;
+    private static final int MAX_BATCH_SIZE = 10000;
+    // connections are handled by this many threads, with this many more waiting for one
+    private static final int WORKERS = 16;
+    private static final int MAX_QUEUED = 256;
+
+    // request and query timings, served at /metrics
+    private Metrics metrics = new Metrics();
+    private AtomicInteger inFlight = new AtomicInteger();
+    private LongAdder rejectedRequests, connectionErrors, staticHits, staticMisses;
+    private Histogram renderTime;
 
     public WebServer(WebQueryEngine wqe) {
         engine = wqe;
+        snippets = new SnippetBuilder(engine.getIndex());
+        completions = engine.getIndex().getCompletions();
+        // worked out now, so the first query with a typo doesn't wait for it
+        engine.getIndex().getSpellChecker();
+        assets = new HashMap<>();
+        loadStaticAssets();
+
+        engine.setMetrics(metrics);
+        metrics.gauge("http_connections_in_flight", "Connections currently being handled", "",
+                inFlight::get);
+        rejectedRequests = metrics.counter("http_requests_rejected_total",
+                "Requests that couldn't be parsed, used a method we don't handle, or found every worker busy", "");
+        connectionErrors = metrics.counter("http_connection_errors_total",
+                "Connections that failed while being handled, such as by the client hanging up", "");
+        staticHits = metrics.counter("cache_requests_total",
+                "Lookups in each cache, by whether they hit", "cache=\"static\",result=\"hit\"");
+        staticMisses = metrics.counter("cache_requests_total",
+                "Lookups in each cache, by whether they hit", "cache=\"static\",result=\"miss\"");
+        renderTime = metrics.histogram("query_phase_seconds",
+                "Time spent in each phase of answering a query", "phase=\"render\"");
+    }
+
+    /**
+     * Loads everything that doesn't depend on the query once, at startup, so no request ever
+     * touches the disk or re-encodes the logo.
+     */
+    private void loadStaticAssets() {
+        try {
+            assets.put("/static/tsoogle.png", StaticAsset.fromFile(new File("tsoogle.png"),
+                    "image/png", "public, max-age=86400"));
+            logo = "<img src='/static/tsoogle.png' style='display: block; margin:0 auto;'>";
+        } catch (IOException e) {
+            // Guess we can't show the image
+            logo = "<h1>TSoogle</h1>";
+        }
+
+        // the homepage only changes when the server is restarted, so revalidate with the etag
+        assets.put("/", StaticAsset.fromHTML(layoutHomepage(), "no-cache"));
     }
 
     /**
-     * Open the server to incoming connections, loop and respond.
+     * Open the server to incoming connections, loop and hand each to a worker to respond.
      */
     public void serve() throws IOException {
         int port = 1989;
         ServerSocket serverSocket = new ServerSocket(port);
         System.err.println("Running server on port: " + port);
 
+        // the queue is bounded, so a flood of connections is turned away rather than piling up
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED));
+
         // repeatedly wait for connections, and process
         while (true) {
             Socket clientSocket = serverSocket.accept();
+            try {
+                workers.execute(() -> handleConnection(clientSocket));
+            } catch (RejectedExecutionException e) {
+                rejectedRequests.increment();
+                clientSocket.close();
+            }
+        }
+    }
+
+    /**
+     * Reads one request from the connection, responds to it and closes the connection. Anything
+     * that goes wrong is logged and counted, and only loses this connection.
+     */
+    private void handleConnection(Socket clientSocket) {
+        long start = System.nanoTime();
+        inFlight.incrementAndGet();
+        String route = null;
 
+        try {
+            // ISO-8859-1 maps bytes to chars one to one, so Content-Length can be trusted when
+            // reading a request body
             BufferedReader in = new BufferedReader(
-                    new InputStreamReader(clientSocket.getInputStream()));
-            BufferedWriter out = new BufferedWriter(
-                    new OutputStreamWriter(clientSocket.getOutputStream()));
+                    new InputStreamReader(clientSocket.getInputStream(), StandardCharsets.ISO_8859_1));
+            OutputStream out = new BufferedOutputStream(clientSocket.getOutputStream());
 
             HttpRequest request = parseRequest(in);
 
             if (request == null) {
-                continue;
+                rejectedRequests.increment();
             } else {
                 // The most basic of routing tables
                 switch (request.url) {
                     case "/search":
-                        renderSearchResults(out, request.params);
+                        renderSearchResults(out, request);
+                        break;
+                    case "/api/search":
+                        renderApiSearch(out, request);
+                        break;
+                    case "/api/batch":
+                        renderApiBatch(out, request);
+                        break;
+                    case "/suggest":
+                        renderSuggestions(out, request);
+                        break;
+                    case "/metrics":
+                        renderMetrics(out, request);
                         break;
                     case "/":
                     default:
-                        renderHomepage(out);
+                        renderStatic(out, request);
                 }
+                route = request.url;
             }
             out.close();
             in.close();
-            clientSocket.close();
+        } catch (IOException | RuntimeException e) {
+            connectionErrors.increment();
+            System.err.println("Error: couldn't respond to " + clientSocket.getRemoteSocketAddress() + ": " + e);
+        } finally {
+            try {
+                clientSocket.close();
+            } catch (IOException e) {
+                // it's going away either way
+            }
+            inFlight.decrementAndGet();
+            if (route != null) {
+                requestTime(route).recordSince(start);
+            }
         }
     }
 
     /**
-     * This is going to serve the page that shows results of querying the WebIndex.
+     * The latency histogram for a route. Unknown paths all get the homepage, so they share its
+     * histogram rather than each making a new one.
      */
-    private void renderSearchResults(BufferedWriter out,
-                                     HashMap<String, String> params) {
-        String content = "<TITLE>Results</TITLE>" +
-                "<body> <div style='width:800px; margin:0 auto;'>" +
-                "<a href='/'>" + layoutLogo() + "</a>";
+    private Histogram requestTime(String route) {
+        if (!assets.containsKey(route) && !ROUTES.contains(route)) {
+            route = "/";
+        }
 
-        // Probably add a disclaimer about file links
-        Collection<Page> results = engine.query(params.get("query"));
+        return metrics.histogram("http_request_duration_seconds",
+                "Time from accepting a connection to closing it, by route", Metrics.label("route", route));
+    }
 
-        if (results.size() > 0) {
-            content += "<p>Here are the results of your query.<br> " +
-                    "Some browsers don't follow file:// links " +
-                    "for security reasons so you'll have to paste the link " +
-                    "into the URL bar instead of clicking it.</p>";
-        } else {
-            content += "<p>Your query returned no results.</p>";
+    /**
+     * Writes every metric for Prometheus to scrape.
+     */
+    private void renderMetrics(OutputStream out, HttpRequest request) {
+        try (HttpResponse response = startResponse(out, request)) {
+            response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+            metrics.writeTo(response);
+        } catch (IOException e) {
+            // An error with this request might not need to bring down the server
+            e.printStackTrace(System.err);
+        }
+    }
+
+    /**
+     * This is going to serve the page that shows results of querying the WebIndex. The page is
+     * written out as it's generated, so large result lists start arriving before they're done.
+     */
+    private void renderSearchResults(OutputStream out, HttpRequest request) {
+        long renderStart;
+        try (HttpResponse response = startResponse(out, request)) {
+            response.write("<TITLE>Results</TITLE>" +
+                    "<body> <div style='width:800px; margin:0 auto;'>" +
+                    "<a href='/'>").write(layoutLogo()).write("</a>");
+            // the browser can draw the page header while the query is evaluated
+            response.flush();
+
+            // Probably add a disclaimer about file links
+            Collection<Page> results = engine.query(request.params.get("query"));
+            renderStart = System.nanoTime();
+
+            if (results.size() > 0) {
+                response.write("<p>Here are the results of your query.<br> " +
+                        "Some browsers don't follow file:// links " +
+                        "for security reasons so you'll have to paste the link " +
+                        "into the URL bar instead of clicking it.</p>");
+            } else {
+                response.write("<p>Your query returned no results.</p>");
+                String correction = engine.correctSpelling(request.params.get("query"));
+                if (correction != null) {
+                    response.write("<p>Did you mean <a href='/search?query=")
+                            .write(URLEncoder.encode(correction, "ISO-8859-1")).write("'><i>");
+                    writeEscaped(response, correction);
+                    response.write("</i></a>?</p>");
+                }
+            }
+            response.write("<ul>\n");
+            // only the first results get snippets, so the cost of a page of results is bounded
+            Set<String> terms = results.isEmpty() ? null : engine.queryTerms(request.params.get("query"));
+            int shown = 0;
+            for (Page p : results) {
+                response.write("<li>");
+                layoutPageContent(response, p, shown++ < DEFAULT_PAGE_SIZE ? terms : null);
+                response.write("</li>\n");
+                if (shown == DEFAULT_PAGE_SIZE && results.size() > shown) {
+                    // send the first results now, rather than once the rest fill the buffer
+                    response.flush();
+                }
+            }
+            response.write("</ul>\n" + "</div> </body>");
+        } catch (IOException e) {
+            // An error with this request might not need to bring down the server
+            e.printStackTrace(System.err);
+            return;
         }
-        content += "<ul>\n";
+        // after the response is closed, so sending the last of it counts too
+        renderTime.recordSince(renderStart);
+    }
+
+    /**
+     * A JSON version of the search page for programs rather than people. Takes the query, a
+     * cursor from a previous response and a page size, either as URL parameters or (for POST) as a
+     * form or JSON object in the body. The results are written into the response as they're
+     * encoded rather than being built up as a String.
+     */
+    private void renderApiSearch(OutputStream out, HttpRequest request) {
+        long renderStart;
+        try (HttpResponse response = startResponse(out, request)) {
+            response.setContentType("application/json; charset=UTF-8");
+
+            HashMap<String, String> params = request.params;
+            int offset, limit;
+            try {
+                if (request.body != null && isJson(request)) {
+                    params = new HashMap<>(params);
+                    Object body = Json.parse(request.body);
+                    if (!(body instanceof Map)) {
+                        throw new IllegalArgumentException("Expected a JSON object");
+                    }
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) body).entrySet()) {
+                        if (entry.getValue() != null) {
+                            params.put(entry.getKey().toString(), entry.getValue().toString());
+                        }
+                    }
+                }
+
+                offset = parseBoundedInt(params.get("cursor"), 0, 0, Integer.MAX_VALUE);
+                limit = parseBoundedInt(params.get("limit"), DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+            } catch (IllegalArgumentException e) {
+                response.setStatus("400 Bad Request");
+                response.write('{');
+                Json.writeName(response, "error");
+                Json.writeString(response, e.getMessage());
+                response.write('}');
+                return;
+            }
+
+            String query = params.get("query");
+            long start = System.nanoTime();
+            Collection<Page> results = engine.query(query);
+            long took = System.nanoTime() - start;
+            renderStart = start + took;
+
+            response.write('{');
+            Json.writeName(response, "took_ms");
+            writeMillis(response, took);
+            response.write(',');
+            writeResults(response, query, results, offset, limit,
+                    results.isEmpty() ? null : engine.queryTerms(query));
+            String correction = results.isEmpty() ? engine.correctSpelling(query) : null;
+            if (correction != null) {
+                response.write(',');
+                Json.writeName(response, "did_you_mean");
+                Json.writeString(response, correction);
+            }
+            response.write('}');
+        } catch (IOException e) {
+            // An error with this request might not need to bring down the server
+            e.printStackTrace(System.err);
+            return;
+        }
+        renderTime.recordSince(renderStart);
+    }
+
+    /**
+     * Answers a list of queries in one go, for bulk clients. Takes a POSTed JSON object with a
+     * "queries" array and an optional per-query "limit". Common words and sub-expressions are
+     * shared between the queries, which is much cheaper than asking for each one separately.
+     */
+    private void renderApiBatch(OutputStream out, HttpRequest request) {
+        try (HttpResponse response = startResponse(out, request)) {
+            response.setContentType("application/json; charset=UTF-8");
+
+            ArrayList<String> queries = new ArrayList<>();
+            int limit;
+            try {
+                if (request.body == null || !isJson(request)) {
+                    throw new IllegalArgumentException("POST a JSON object with a \"queries\" array");
+                }
+
+                Object body = Json.parse(request.body);
+                Object list = body instanceof Map ? ((Map<?, ?>) body).get("queries") : null;
+                if (!(list instanceof List) || ((List<?>) list).size() > MAX_BATCH_SIZE) {
+                    throw new IllegalArgumentException("\"queries\" must be an array of at most " +
+                            MAX_BATCH_SIZE + " strings");
+                }
+                for (Object query : (List<?>) list) {
+                    queries.add(query == null ? null : query.toString());
+                }
+
+                Object limitValue = ((Map<?, ?>) body).get("limit");
+                limit = parseBoundedInt(limitValue == null ? null : limitValue.toString(),
+                        DEFAULT_PAGE_SIZE, 1, MAX_PAGE_SIZE);
+            } catch (IllegalArgumentException e) {
+                response.setStatus("400 Bad Request");
+                response.write('{');
+                Json.writeName(response, "error");
+                Json.writeString(response, e.getMessage());
+                response.write('}');
+                return;
+            }
+
+            long start = System.nanoTime();
+            List<Collection<Page>> results = engine.queryBatch(queries);
+            long took = System.nanoTime() - start;
+
+            response.write('{');
+            Json.writeName(response, "took_ms");
+            writeMillis(response, took);
+            response.write(',');
+            Json.writeName(response, "responses");
+            response.write('[');
+            for (int i = 0; i < queries.size(); i++) {
+                response.write(i == 0 ? "{" : ",{");
+                writeResults(response, queries.get(i), results.get(i), 0, limit, null);
+                response.write('}');
+            }
+            response.write("]}");
+        } catch (IOException e) {
+            // An error with this request might not need to bring down the server
+            e.printStackTrace(System.err);
+        }
+    }
+
+    /**
+     * Completes the start of a word, as typed into the search box, to the words on the most
+     * pages. Takes the "prefix" and an optional "limit" as URL parameters. The answers come from
+     * the index's Completions, so each takes a couple of binary searches rather than a look at
+     * every word, and they can be cached until the server restarts with a new index.
+     */
+    private void renderSuggestions(OutputStream out, HttpRequest request) {
+        try (HttpResponse response = startResponse(out, request)) {
+            response.setContentType("application/json; charset=UTF-8");
+
+            String prefix = request.params.getOrDefault("prefix", "").toLowerCase(Locale.ROOT);
+            int limit;
+            try {
+                limit = parseBoundedInt(request.params.get("limit"), Completions.TOP_K, 1, Completions.TOP_K);
+            } catch (IllegalArgumentException e) {
+                response.setStatus("400 Bad Request");
+                response.write('{');
+                Json.writeName(response, "error");
+                Json.writeString(response, e.getMessage());
+                response.write('}');
+                return;
+            }
+
+            response.addHeader("Cache-Control", "public, max-age=3600");
+            response.write('{');
+            Json.writeName(response, "prefix");
+            Json.writeString(response, prefix);
+            response.write(',');
+            Json.writeName(response, "suggestions");
+            response.write('[');
+            int written = 0;
+            for (String word : completions.complete(prefix, limit)) {
+                if (written++ > 0) {
+                    response.write(',');
+                }
+                Json.writeString(response, word);
+            }
+            response.write("]}");
+        } catch (IOException e) {
+            // An error with this request might not need to bring down the server
+            e.printStackTrace(System.err);
+        }
+    }
+
+    /**
+     * Writes the fields describing one page of results for a query, without the enclosing braces.
+     * If terms are given, each result gets a snippet, as plain text, and the start and end offset
+     * of each of the terms in it, as "highlights": [[start, end], ...].
+     */
+    private void writeResults(HttpResponse response, String query, Collection<Page> results,
+                              int offset, int limit, Set<String> terms) throws IOException {
+        Json.writeName(response, "query");
+        Json.writeString(response, query);
+        response.write(',');
+        Json.writeName(response, "total");
+        response.write(results.size()).write(',');
+
+        Json.writeName(response, "results");
+        response.write('[');
+        int index = 0, written = 0;
         for (Page p : results) {
-            content += "<li>" + layoutPageContent(p) + "</li>\n";
+            if (index++ < offset) {
+                continue;
+            } else if (written == limit) {
+                break;
+            }
+
+            if (written++ > 0) {
+                response.write(',');
+            }
+            response.write('{');
+            Json.writeName(response, "url");
+            Json.writeString(response, p.getURL().toString());
+            if (p.getTitle() != null) {
+                response.write(',');
+                Json.writeName(response, "title");
+                Json.writeString(response, p.getTitle());
+            }
+            if (terms != null) {
+                SnippetBuilder.Snippet snippet = snippets.build(p, terms);
+                response.write(',');
+                Json.writeName(response, "snippet");
+                Json.writeString(response, snippet.text);
+                response.write(',');
+                Json.writeName(response, "highlights");
+                response.write('[');
+                for (int i = 0; i < snippet.highlights.length; i += 2) {
+                    response.write(i > 0 ? ",[" : "[").write(snippet.highlights[i]).write(',')
+                            .write(snippet.highlights[i + 1]).write(']');
+                }
+                response.write(']');
+            }
+            response.write('}');
+        }
+        response.write("],");
+
+        // the cursor is opaque to clients; it happens to be the offset of the next page
+        Json.writeName(response, "next_cursor");
+        if (offset + written < results.size()) {
+            response.write('"').write(offset + written).write('"');
+        } else {
+            response.write("null");
         }
-        content += "</ul>\n" + "</div> </body>";
+    }
 
-        renderResponse(out, content);
+    /**
+     * Writes a duration in milliseconds with three decimal places.
+     */
+    private void writeMillis(HttpResponse response, long nanos) throws IOException {
+        long micros = (nanos / 1000) % 1000;
+        response.write(nanos / 1000000).write('.')
+                .write(micros < 100 ? (micros < 10 ? "00" : "0") : "").write(micros);
     }
 
     /**
-     * This will render our snazzy homepage.
+     * Parses an optional numeric parameter.
+     * @throws IllegalArgumentException if it's present but not a number in range
      */
-    private void renderHomepage(BufferedWriter out) {
-        String content = "<TITLE>Home</TITLE>" +
+    private int parseBoundedInt(String value, int defaultValue, int min, int max) {
+        if (value == null || value.isEmpty()) {
+            return defaultValue;
+        }
+
+        try {
+            // JSON numbers come through as Longs, but may have been written as 10.0
+            double number = Double.parseDouble(value);
+            if (number < min || number > max || number != Math.floor(number)) {
+                throw new IllegalArgumentException("'" + value + "' must be a whole number from " +
+                        min + " to " + max);
+            }
+            return (int) number;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("'" + value + "' is not a number");
+        }
+    }
+
+    private boolean isJson(HttpRequest request) {
+        String type = request.headers.get("content-type");
+        return type != null && type.toLowerCase().startsWith("application/json");
+    }
+
+    /**
+     * This will render our snazzy homepage. It is the same for every request, so it is only
+     * laid out once and served as a StaticAsset.
+     */
+    private String layoutHomepage() {
+        return "<TITLE>Home</TITLE>" +
                 "<body> <div style='width:800px; margin:0 auto;'>" + layoutLogo() +
                 "<form id='form' method='get' action='search' style='width: 50%; margin:0 auto;'>" +
-                "<input name='query' class='element text medium' style='width: 100%;' type='text' maxlength='255' value=''/>" +
+                "<input name='query' class='element text medium' style='width: 100%;' type='text' maxlength='255' value=''" +
+                " list='suggestions' autocomplete='off'/>" +
+                "<datalist id='suggestions'></datalist>" +
                 "</form> <br>" +
                 "<button type='submit' form='form' value='Submit' style='display: block; margin:0 auto;'>Search</button>" +
-                "</div> </body>";
+                "</div>" + layoutSuggestScript() + "</body>";
+    }
 
-        renderResponse(out, content);
+    /**
+     * A script that completes the last word in the search box from /suggest as it's typed.
+     */
+    private String layoutSuggestScript() {
+        return "<script>" +
+                "var box = document.querySelector('input[name=query]');" +
+                "var list = document.getElementById('suggestions');" +
+                "box.addEventListener('input', function() {" +
+                "  var text = box.value, word = /[\\w-]*$/.exec(text)[0], head = text.slice(0, text.length - word.length);" +
+                "  if (!word) { list.innerHTML = ''; return; }" +
+                "  fetch('/suggest?prefix=' + encodeURIComponent(word)).then(function(r) { return r.json(); })" +
+                "    .then(function(body) {" +
+                "      if (box.value !== text) return;" +
+                "      list.innerHTML = '';" +
+                "      body.suggestions.forEach(function(s) {" +
+                "        var option = document.createElement('option'); option.value = head + s; list.appendChild(option);" +
+                "      });" +
+                "    });" +
+                "});" +
+                "</script>";
     }
 
     /**
-     * This method is going to try and create the logo on the page by loading
-     * an image file. It tries to open the image on each request instead of
-     * holding onto it, which isn't ideal.
+     * Serves a pre-rendered asset, falling back to the homepage for paths we don't know about.
      */
-    private String layoutLogo() {
-        try {
-            byte[] byteArray = new byte[14000];
-            FileInputStream fis = new FileInputStream(new File("tsoogle.png"));
-            Base64.Encoder enc = Base64.getEncoder();
+    private void renderStatic(OutputStream out, HttpRequest request) {
+        StaticAsset asset = assets.get(request.url);
+        if (asset == null) {
+            asset = assets.get("/");
+        }
 
-            // We're assuming that it manages to read all at once
-            int actual_length = fis.read(byteArray);
+        try {
+            boolean cached = asset.writeTo(out, request.headers.get("if-none-match"),
+                    acceptsGzip(request.headers.get("accept-encoding")), request.method.equals("HEAD"));
+            (cached ? staticHits : staticMisses).increment();
+        } catch (IOException e) {
+            // An error with this request might not need to bring down the server
+            e.printStackTrace(System.err);
+        }
+    }
 
-            byte[] exactByteArray = new byte[actual_length];
-            for (int i = 0; i < actual_length; i++) {
-                exactByteArray[i] = byteArray[i];
-            }
+    /**
+     * The logo is served separately from /static/, so the page only has to link to it and
+     * browsers can cache it.
+     */
+    private String layoutLogo() {
+        return logo;
+    }
 
-            String base64String = enc.encodeToString(exactByteArray);
+    /**
+     * Checks the Accept-Encoding header for gzip, ignoring it if the client gave it a q of 0.
+     * @param accept the header's value, or null if there wasn't one
+     */
+    static boolean acceptsGzip(String accept) {
+        if (accept == null) {
+            return false;
+        }
 
-            return "<img src='data:image/png;base64," + base64String +
-                    "' style='display: block; margin:0 auto;'>";
-        } catch (IOException e) {
-            // Guess we can't show the image
-            return "<h1>TSoogle</h1>";
+        for (String coding : accept.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
         }
+
+        return false;
     }
 
     /**
      * We'll use this to get the HTML that represents our Page object.
      * It might be better to Encapsulate this within the Page class itself.
      */
-    private String layoutPageContent(Page p) {
-        return "<a href='" + p.getURL() + "'>" + p.getURL() + "</a>";
+    private void layoutPageContent(HttpResponse response, Page p, Set<String> terms) throws IOException {
+        String url = p.getURL().toString();
+        String title = p.getTitle();
+        response.write("<a href='").write(url).write("'>");
+        writeEscaped(response, title != null ? title : url);
+        response.write("</a>");
+        if (title != null) {
+            response.write("<br><small>").write(url).write("</small>");
+        }
+        if (terms != null) {
+            response.write("<br><small>").write(snippets.build(p, terms).toHtml()).write("</small>");
+        }
     }
 
     /**
-     * This method pretends to be a real webserver by sending valid HTTP headers
-     * in front of the content that we're responding with.
+     * Writes text (such as a page title) into HTML, escaping anything that could be taken as
+     * markup.
      */
-    private void renderResponse(BufferedWriter out, String content) {
-        try {
-            out.write("HTTP/1.0 200 OK\r\n" +
-                    "Date: Fri, 31 Dec 1999 23:59:59 GMT\r\n" +
-                    "Server: 314H/0.1\r\n" +
-                    "Content-Type: text/html\r\n" +
-                    "Content-Length: " + content.length() + "\r\n" +
-                    "Expires: Sat, 01 Jan 2000 00:59:59 GMT\r\n" +
-                    "Last-modified: Fri, 09 Aug 1996 14:21:40 GMT\r\n" +
-                    "\r\n" +
-                    content);
-        } catch (IOException e) {
-            // An error with this request might not need to bring down the server
-            e.printStackTrace(System.err);
+    private static void writeEscaped(HttpResponse response, String text) throws IOException {
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            String escaped;
+            switch (text.charAt(i)) {
+                case '<':
+                    escaped = "&lt;";
+                    break;
+                case '>':
+                    escaped = "&gt;";
+                    break;
+                case '&':
+                    escaped = "&amp;";
+                    break;
+                case '\'':
+                    escaped = "&#39;";
+                    break;
+                case '"':
+                    escaped = "&quot;";
+                    break;
+                default:
+                    continue;
+            }
+
+            response.write(text, start, i).write(escaped);
+            start = i + 1;
         }
+        response.write(text, start, text.length());
+    }
+
+    /**
+     * Starts a response to the given request, gzipped if the client can take it. Headers aren't
+     * sent until the response either fills its buffer or is closed.
+     */
+    private HttpResponse startResponse(OutputStream out, HttpRequest request) {
+        return new HttpResponse(out, buffers, request.version.equals("HTTP/1.1"),
+                acceptsGzip(request.headers.get("accept-encoding")), request.method.equals("HEAD"));
     }
 
     /**
      * This holds the parts of a request we might care about.
      */
     private class HttpRequest {
-        public final String method, url;
+        public final String method, url, version;
         public final HashMap<String, String> headers, params;
+        // the decoded request body, or null if there wasn't one
+        public final String body;
 
-        HttpRequest(String u, String m,
+        HttpRequest(String u, String m, String v,
                     HashMap<String, String> h,
-                    HashMap<String, String> p) {
+                    HashMap<String, String> p,
+                    String b) {
             url = u;
             method = m;
+            version = v;
             headers = h;
             params = p;
+            body = b;
+        }
+    }
+
+    /**
+     * Reads the body of a POST, which is as long as its Content-Length says it is, and decodes it
+     * as UTF-8. Returns null if the length is missing or we can't read that much.
+     */
+    private String readBody(BufferedReader reader, HashMap<String, String> headers) throws IOException {
+        int length;
+        try {
+            length = Integer.parseInt(headers.getOrDefault("content-length", ""));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        if (length < 0 || length > MAX_BODY_LENGTH) {
+            return null;
+        }
+
+        // the reader is ISO-8859-1, so each char is exactly one byte of the body
+        char[] chars = new char[length];
+        int read = 0;
+        while (read < length) {
+            int n = reader.read(chars, read, length - read);
+            if (n < 0) {
+                return null;
+            }
+            read += n;
+        }
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) chars[i];
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Stores URL-encoded parameters (a=b&c=d) in the map.
+     */
+    private void parseParams(String encoded, HashMap<String, String> params) throws UnsupportedEncodingException {
+        String[] prms = encoded.split("&");
+
+        // Store the params in the map
+        for (String param : prms) {
+            String[] temp = param.split("=");
+            if (temp.length == 2) {
+                params.put(URLDecoder.decode(temp[0], "ISO-8859-1"),
+                        URLDecoder.decode(temp[1], "ISO-8859-1"));
+            } else if (temp.length == 1 && param.indexOf('=') == param.length() - 1) {
+                // Empty string is handled separatedly
+                params.put(URLDecoder.decode(temp[0], "ISO-8859-1"), "");
+            }
         }
     }
 
@@ -192,7 +761,7 @@ public class WebServer {
      * section of the input stream, or null if we can't understand it.
      */
     private HttpRequest parseRequest(BufferedReader reader) throws IOException {
-        String method = "", url = "";
+        String method = "", url = "", version = "", body = null;
         HashMap<String, String> headers = new HashMap<>(), params = new HashMap<>();
 
         String initial = reader.readLine();
@@ -207,33 +776,22 @@ public class WebServer {
                 return null;
             } else {
                 method = cmd[0];
+                version = cmd[2];
 
-                // If we have a page request
-                if (cmd[0].equals("GET") || cmd[0].equals("HEAD")) {
+                // If we have a page request, or a POST to the API
+                if (cmd[0].equals("GET") || cmd[0].equals("HEAD") || cmd[0].equals("POST")) {
                     int idx = cmd[1].indexOf('?');
                     if (idx < 0) {
                         // There aren't any params
                         url = URLDecoder.decode(cmd[1], "ISO-8859-1");
                     } else {
                         url = URLDecoder.decode(cmd[1].substring(0, idx), "ISO-8859-1");
-                        String[] prms = cmd[1].substring(idx + 1).split("&");
-
-                        // Store the params in the map
-                        for (String param : prms) {
-                            String[] temp = param.split("=");
-                            if (temp.length == 2) {
-                                params.put(URLDecoder.decode(temp[0], "ISO-8859-1"),
-                                        URLDecoder.decode(temp[1], "ISO-8859-1"));
-                            } else if (temp.length == 1 && param.indexOf('=') == param.length() - 1) {
-                                // Empty string is handled separatedly
-                                params.put(URLDecoder.decode(temp[0], "ISO-8859-1"), "");
-                            }
-                        }
+                        parseParams(cmd[1].substring(idx + 1), params);
                     }
 
                     // Read the headers into the map
                     String line = reader.readLine();
-                    while (!line.equals("")) {
+                    while (line != null && !line.equals("")) {
                         idx = line.indexOf(':');
                         if (idx >= 0) {
                             headers.put(line.substring(0, idx).toLowerCase(),
@@ -241,15 +799,25 @@ public class WebServer {
                         }
                         line = reader.readLine();
                     }
+
+                    if (method.equals("POST")) {
+                        body = readBody(reader, headers);
+                        if (body == null) {
+                            return null;
+                        }
+
+                        String type = headers.get("content-type");
+                        if (type != null && type.toLowerCase().startsWith("application/x-www-form-urlencoded")) {
+                            parseParams(body, params);
+                        }
+                    }
                 } else {
-                    // Non-GET request, which we aren't handling right now
-                    // If you want your server to respond to POST with a
-                    // JSON API then you'll need parsing code here
+                    // Any other method, which we aren't handling right now
                     return null;
                 }
             }
         }
 
-        return new HttpRequest(url, method, headers, params);
+        return new HttpRequest(url, method, version, headers, params, body);
     }
 }
@@ -0,0 +1,55 @@
+package assignment;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompletionsTest {
+    @Test
+    public void matchesSortingEveryWord() {
+        // short words from a small alphabet, so prefixes are shared by many words and few
+        Random random = new Random(1);
+        WebIndex index = new WebIndex();
+        for (int doc = 0; doc < 300; doc++) {
+            String[] words = new String[50];
+            for (int i = 0; i < words.length; i++) {
+                StringBuilder word = new StringBuilder();
+                int length = 1 + random.nextInt(Math.min(6, 1 + random.nextInt(8)));
+                for (int j = 0; j < length; j++) {
+                    word.append("abcde".charAt(Math.min(4, (int) Math.abs(random.nextGaussian() * 2))));
+                }
+                words[i] = word.toString();
+            }
+            index.addDocument("http://example.com/" + doc + ".html", null, 0, Arrays.asList(words));
+        }
+
+        Completions completions = index.getCompletions();
+        List<String> all = new ArrayList<>();
+        for (int term = 0; term < index.getTermCount(); term++) {
+            all.add(index.getTerm(term));
+        }
+        all.sort(Comparator.comparing((String word) -> -index.getDocFrequency(word))
+                .thenComparing(Comparator.naturalOrder()));
+
+        List<String> prefixes = new ArrayList<>(Arrays.asList("", "z", "abcdee", "eeeeeee"));
+        for (String word : all) {
+            for (int i = 1; i <= word.length(); i++) {
+                prefixes.add(word.substring(0, i));
+            }
+        }
+        for (String prefix : prefixes) {
+            List<String> expected = new ArrayList<>();
+            for (String word : all) {
+                if (word.startsWith(prefix) && expected.size() < 7) {
+                    expected.add(word);
+                }
+            }
+            assertEquals(prefix, expected, completions.complete(prefix, 7));
+        }
+    }
+}
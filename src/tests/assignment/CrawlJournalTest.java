@@ -0,0 +1,77 @@
+package assignment;
+
+import org.junit.Test;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CrawlJournalTest {
+    private static CrawlJournal.Entry page(int i) {
+        return new CrawlJournal.Entry("http://example.com/" + i + ".html", 1000L * i, i % 2 == 0 ? "Page " + i : null,
+                Arrays.asList("the", "page", "number", "n" + i, "the"), Collections.singletonList("page"),
+                Collections.emptyList(),
+                Arrays.asList("http://example.com/" + (i + 1) + ".html", "http://example.com/dir/" + i + ".html"),
+                new int[] {1}, Collections.singletonList(Arrays.asList("next", "n" + i)));
+    }
+
+    private static List<CrawlJournal.Entry> replay(File file) throws IOException {
+        List<CrawlJournal.Entry> entries = new ArrayList<>();
+        new CrawlJournal(file).replay(entries::add);
+        return entries;
+    }
+
+    @Test
+    public void tornEntryDroppedAndOverwritten() throws IOException {
+        File file = File.createTempFile("crawl", ".journal");
+        file.deleteOnExit();
+
+        CrawlJournal journal = new CrawlJournal(file);
+        journal.start();
+        for (int i = 0; i < 10; i++) {
+            journal.write(page(i));
+        }
+        journal.write(new CrawlJournal.Entry("http://example.com/broken.html",
+                Collections.singletonList("http://example.com/found.html")));
+        journal.close();
+
+        // what a crash part way through writing an entry leaves behind
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[] {0, 0, 1, 0, 12, 34, 56, 78, 1, 2, 3});
+        }
+
+        List<CrawlJournal.Entry> entries = replay(file);
+        assertEquals(11, entries.size());
+        for (int i = 0; i < 10; i++) {
+            CrawlJournal.Entry expected = page(i);
+            CrawlJournal.Entry entry = entries.get(i);
+            assertTrue(entry.parsed);
+            assertEquals(expected.url, entry.url);
+            assertEquals(expected.fetchTime, entry.fetchTime);
+            assertEquals(expected.title, entry.title);
+            assertEquals(expected.words, entry.words);
+            assertEquals(expected.titleWords, entry.titleWords);
+            assertEquals(expected.links, entry.links);
+            assertArrayEquals(expected.anchorLinks, entry.anchorLinks);
+            assertEquals(expected.anchorWords, entry.anchorWords);
+        }
+        assertFalse(entries.get(10).parsed);
+        assertEquals(Collections.singletonList("http://example.com/found.html"), entries.get(10).links);
+
+        // resuming writes over the torn entry, and goes on using the same dictionary
+        journal = new CrawlJournal(file);
+        journal.replay((CrawlJournal.Entry entry) -> { });
+        journal.start();
+        journal.write(page(10));
+        journal.close();
+
+        entries = replay(file);
+        assertEquals(12, entries.size());
+        assertEquals(page(10).words, entries.get(11).words);
+    }
+}
@@ -0,0 +1,97 @@
+package assignment;
+
+import org.attoparser.ParseException;
+import org.attoparser.config.ParseConfiguration;
+import org.attoparser.simple.ISimpleMarkupParser;
+import org.attoparser.simple.SimpleMarkupParser;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import java.io.StringReader;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+public class CrawlingMarkupHandlerTest {
+    private static WebIndex index;
+
+    // pages with text that isn't meant to be read, in every place it can hide; every word that
+    // shouldn't be indexed starts with "junk"
+    private static final String[][] CORPUS = {
+        {"http://example.com/script.html",
+            "<html><head><title>Scripts</title><script>var junkone = '<p>junktwo</p>';</script></head>"
+            + "<body><script src=\"app.js\"></script><p>loaded</p><p>before</p><SCRIPT type=\"text/javascript\">" + longScript() + "</SCRIPT>"
+            + "<p>after</p></body></html>"},
+        {"http://example.com/style.html",
+            "<html><head><style>.junkclass { color: red; }</style></head><body>styled<style>"
+            + "p::before { content: \"junkcontent\"; }</style> text</body></html>"},
+        {"http://example.com/noscript.html",
+            "<html><body><noscript><p>junkenable <b>junkjavascript</b></p></noscript>"
+            + "<p>fallback</p></body></html>"},
+        {"http://example.com/template.html",
+            "<html><body><template><div><h1>junkheading</h1><script>junkinner</script>junkrow</div>"
+            + "</template><p>rendered</p></body></html>"},
+        {"http://example.com/comment.html",
+            "<html><body>visible<!-- junkcomment <p>junkmarkup</p> --> text"
+            + "<![CDATA[ junkcdata ]]></body></html>"},
+        {"http://example.com/unclosed.html",
+            "<html><body><div><noscript><p>junkunclosed</div><p>recovered</p></body></html>"},
+    };
+
+    @BeforeClass
+    public static void setUp() throws MalformedURLException, ParseException {
+        ISimpleMarkupParser parser = new SimpleMarkupParser(ParseConfiguration.htmlConfiguration());
+        CrawlingMarkupHandler handler = new CrawlingMarkupHandler();
+        for (String[] page : CORPUS) {
+            handler.setURL(new URL(page[0]));
+            // parsed from a reader, as it would be from a stream, so nothing depends on how the
+            // parser happens to split up text
+            parser.parse(new StringReader(page[1]), handler);
+        }
+        index = (WebIndex) handler.getIndex();
+    }
+
+    /**
+     * @return a script far longer than the parser's buffer, full of words that aren't text
+     */
+    private static String longScript() {
+        StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            script.append("function junkfunction").append(i).append("() { return junkvalue; }\n");
+        }
+        return script.toString();
+    }
+
+    @Test
+    public void noJunkIndexed() {
+        for (int term = 0; term < index.getTermCount(); term++) {
+            String word = index.getTerm(term);
+            assertFalse(word, word.startsWith("junk"));
+        }
+    }
+
+    @Test
+    public void textAroundSkippedElementsIndexed() throws MalformedURLException {
+        String[][] expected = {
+            {"script.html", "loaded", "before", "after", "scripts"},
+            {"style.html", "styled", "text"},
+            {"noscript.html", "fallback"},
+            {"template.html", "rendered"},
+            {"comment.html", "visible", "text"},
+            {"unclosed.html", "recovered"},
+        };
+
+        for (String[] words : expected) {
+            Page page = new Page(new URL("http://example.com/" + words[0]));
+            for (int i = 1; i < words.length; i++) {
+                assertTrue(words[0] + " " + words[i], index.getPagesWith(words[i]).contains(page));
+            }
+        }
+    }
+
+    @Test
+    public void skippedTextNotInFields() {
+        assertTrue(index.getPagesWith(Field.HEADING, "junkheading").isEmpty());
+        assertEquals(1, index.getPagesWith(Field.TITLE, "scripts").size());
+    }
+}
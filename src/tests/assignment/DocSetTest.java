@@ -0,0 +1,82 @@
+package assignment;
+
+import org.junit.Test;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class DocSetTest {
+    // enough doc IDs for a few chunks, so some are arrays and some are bitmaps
+    private static final int MAX_DOC = 4 << 16;
+
+    /**
+     * makes a random set of docs, with each chunk either sparse or dense
+     */
+    private static TreeSet<Integer> randomDocs(Random random) {
+        TreeSet<Integer> docs = new TreeSet<>();
+        for (int chunk = 0; chunk < MAX_DOC >>> 16; chunk++) {
+            double density = new double[] {0, 0.001, 0.05, 0.5, 1}[random.nextInt(5)];
+            for (int low = 0; low < 1 << 16; low++) {
+                if (random.nextDouble() < density) {
+                    docs.add((chunk << 16) | low);
+                }
+            }
+        }
+        return docs;
+    }
+
+    private static DocSet toDocSet(TreeSet<Integer> docs) {
+        DocSet.Builder builder = new DocSet.Builder();
+        for (int doc : docs) {
+            builder.add(doc);
+        }
+        return builder.build();
+    }
+
+    private static void assertSameDocs(TreeSet<Integer> expected, DocSet actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.isEmpty(), actual.isEmpty());
+        int i = 0;
+        int[] docs = actual.toArray();
+        for (int doc : expected) {
+            assertEquals(doc, docs[i++]);
+        }
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        Random random = new Random(1);
+        for (int trial = 0; trial < 20; trial++) {
+            TreeSet<Integer> left = randomDocs(random);
+            TreeSet<Integer> right = randomDocs(random);
+            DocSet leftSet = toDocSet(left);
+            DocSet rightSet = toDocSet(right);
+            assertSameDocs(left, leftSet);
+
+            TreeSet<Integer> and = new TreeSet<>(left);
+            and.retainAll(right);
+            assertSameDocs(and, leftSet.and(rightSet));
+
+            TreeSet<Integer> or = new TreeSet<>(left);
+            or.addAll(right);
+            assertSameDocs(or, leftSet.or(rightSet));
+
+            TreeSet<Integer> andNot = new TreeSet<>(left);
+            andNot.removeAll(right);
+            assertSameDocs(andNot, leftSet.andNot(rightSet));
+        }
+    }
+
+    @Test
+    public void contains() {
+        Random random = new Random(2);
+        TreeSet<Integer> docs = randomDocs(random);
+        DocSet set = toDocSet(docs);
+        for (int i = 0; i < 10000; i++) {
+            int doc = random.nextInt(MAX_DOC + (1 << 16));
+            assertEquals(docs.contains(doc), set.contains(doc));
+        }
+        assertFalse(DocSet.EMPTY.contains(0));
+    }
+}
@@ -0,0 +1,92 @@
+package assignment;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+    private static final double[] QUANTILES = {0.01, 0.5, 0.9, 0.99, 0.999, 1};
+
+    /**
+     * quantiles of uniform, exponential and long-tailed values, from microseconds to seconds,
+     * should be within 3% of the exact ones
+     */
+    @Test
+    public void quantilesWithinThreePercent() {
+        Random random = new Random(1);
+        int n = 200000;
+        long[][] distributions = new long[3][n];
+        for (int i = 0; i < n; i++) {
+            distributions[0][i] = 1000 + random.nextInt(1000000);
+            distributions[1][i] = (long) (-Math.log(1 - random.nextDouble()) * 2e6);
+            // log-normal, like request latencies
+            distributions[2][i] = (long) Math.exp(14 + 1.5 * random.nextGaussian());
+        }
+
+        for (long[] values : distributions) {
+            Histogram histogram = new Histogram();
+            long sum = 0;
+            for (long value : values) {
+                histogram.record(value);
+                sum += value;
+            }
+
+            long[] sorted = values.clone();
+            Arrays.sort(sorted);
+            for (double quantile : QUANTILES) {
+                long exact = sorted[(int) Math.max(0, Math.ceil(quantile * n) - 1)];
+                long reported = histogram.getValueAtQuantile(quantile);
+                assertEquals("p" + quantile, exact, reported, exact * 0.03 + 1);
+                // the bucket's highest value is reported, so it never understates the tail
+                assertTrue("p" + quantile, reported >= exact);
+            }
+
+            assertEquals(n, histogram.getCount());
+            assertEquals(sum, histogram.getSum());
+            assertEquals(sorted[n - 1], histogram.getMax());
+            assertEquals((double) sum / n, histogram.getMean(), 1e-6);
+        }
+    }
+
+    /**
+     * small values each get their own bucket, so are exact
+     */
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int value = 0; value < 50; value++) {
+            histogram.record(value);
+        }
+        histogram.record(-5);
+
+        assertEquals(0, histogram.getValueAtQuantile(0));
+        assertEquals(24, histogram.getValueAtQuantile(0.5));
+        assertEquals(49, histogram.getValueAtQuantile(1));
+        assertEquals(0, new Histogram().getValueAtQuantile(0.99));
+    }
+
+    /**
+     * adding one histogram to another should be the same as recording everything in one
+     */
+    @Test
+    public void addMerges() {
+        Random random = new Random(2);
+        Histogram all = new Histogram(), first = new Histogram(), second = new Histogram();
+        for (int i = 0; i < 10000; i++) {
+            long value = (long) Math.exp(10 + 2 * random.nextGaussian());
+            all.record(value);
+            (i % 3 == 0 ? first : second).record(value);
+        }
+        first.add(second);
+
+        assertEquals(all.getCount(), first.getCount());
+        assertEquals(all.getSum(), first.getSum());
+        assertEquals(all.getMax(), first.getMax());
+        for (double quantile : QUANTILES) {
+            assertEquals(all.getValueAtQuantile(quantile), first.getValueAtQuantile(quantile));
+        }
+    }
+}
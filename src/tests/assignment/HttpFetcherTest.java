@@ -0,0 +1,240 @@
+package assignment;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fetches HTMLBuilder pages from a local HTTP server
+ */
+public class HttpFetcherTest {
+    private static final int NUM_PAGES = 50;
+    private static final int MAX_PER_HOST = 3;
+
+    private static HttpServer server;
+    private static String base;
+    private static final AtomicInteger active = new AtomicInteger();
+    private static final AtomicInteger maxActive = new AtomicInteger();
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        new HTMLBuilder(NUM_PAGES, 20);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", HttpFetcherTest::serve);
+        server.createContext("/huge", HttpFetcherTest::serveHuge);
+        server.createContext("/endless", HttpFetcherTest::serveEndless);
+        server.createContext("/slow", HttpFetcherTest::serveSlow);
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        server.stop(0);
+    }
+
+    /**
+     * serves files out of testhtml, slowly enough that requests overlap
+     */
+    private static void serve(HttpExchange exchange) throws IOException {
+        int now = active.incrementAndGet();
+        maxActive.accumulateAndGet(now, Math::max);
+        try {
+            File file = new File("testhtml", exchange.getRequestURI().getPath());
+            if (!file.isFile()) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            Thread.sleep(5);
+            byte[] content = Files.readAllBytes(file.toPath());
+            exchange.getResponseHeaders().set("Content-Type", "text/html; charset=utf-8");
+            exchange.sendResponseHeaders(200, content.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(content);
+            }
+        } catch (InterruptedException e) {
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            active.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    /**
+     * claims a body far too large to be a page, but sends only a little of it
+     */
+    private static void serveHuge(HttpExchange exchange) throws IOException {
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, 3L << 30);
+            out.write(new byte[1024]);
+        } catch (IOException e) {
+            // the client hung up, as it should
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * sends a chunked body until the client hangs up
+     */
+    private static void serveEndless(HttpExchange exchange) {
+        byte[] chunk = new byte[1 << 20];
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, 0);
+            for (int i = 0; i < 1024; i++) {
+                out.write(chunk);
+            }
+        } catch (IOException e) {
+            // the client hung up, as it should
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * sends the headers and a little of the body, then stalls
+     */
+    private static void serveSlow(HttpExchange exchange) {
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.sendResponseHeaders(200, 0);
+            out.write(new byte[1024]);
+            out.flush();
+            Thread.sleep(5000);
+        } catch (IOException | InterruptedException e) {
+            // the client hung up, as it should
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * fetches every page at once, and checks they all arrive intact without going over the
+     * per-host limit
+     */
+    @Test
+    public void testFetchesEveryPage() throws Exception {
+        PageFetcher pages = new PageFetcher();
+        HttpFetcher fetcher = new HttpFetcher(pages, 16, MAX_PER_HOST, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        maxActive.set(0);
+
+        List<CompletableFuture<HttpFetcher.Result>> results = new ArrayList<>();
+        for (int i = 0; i < NUM_PAGES; i++) {
+            results.add(fetcher.fetch(new URL(base + "doc" + i + ".html")));
+        }
+
+        for (int i = 0; i < NUM_PAGES; i++) {
+            HttpFetcher.Result result = results.get(i).get();
+            assertNull(result.error);
+            assertEquals(200, result.status);
+            assertArrayEquals(Files.readAllBytes(new File("testhtml", "doc" + i + ".html").toPath()), toArray(result.body.bytes));
+            assertTrue(pages.decode(result.body).toString().contains("<html>"));
+            fetcher.release(result);
+        }
+
+        assertTrue(maxActive.get() <= MAX_PER_HOST);
+        assertEquals(0, fetcher.inFlight());
+    }
+
+    /**
+     * missing pages should come back as errors rather than throwing
+     */
+    @Test
+    public void testMissingPage() throws Exception {
+        HttpFetcher fetcher = new HttpFetcher(new PageFetcher());
+        HttpFetcher.Result result = fetcher.fetch(new URL(base + "missing.html")).get();
+        assertEquals(404, result.status);
+        assertNull(result.body);
+        assertTrue(result.error instanceof java.io.FileNotFoundException);
+    }
+
+    /**
+     * bodies over the size limit, whether announced or not, should fail without keeping their
+     * buffers, and large buffers shouldn't go back in the pool
+     */
+    @Test
+    public void testTooLarge() throws Exception {
+        CountingPageFetcher pages = new CountingPageFetcher();
+        HttpFetcher fetcher = new HttpFetcher(pages, 4, MAX_PER_HOST, Duration.ofSeconds(5), Duration.ofSeconds(10));
+
+        for (String path : new String[] {"huge", "endless"}) {
+            HttpFetcher.Result result = fetcher.fetch(new URL(base + path)).get();
+            assertNull(result.body);
+            assertTrue(path, result.error instanceof IOException);
+            assertEquals(path, 0, pages.outstanding.get());
+        }
+
+        // a grown buffer is dropped rather than pooled, so the next page gets a default-sized one
+        assertTrue(pages.acquire(0).capacity() <= 64 * 1024);
+        assertEquals(0, fetcher.inFlight());
+    }
+
+    /**
+     * a body that stalls should time out, give its buffer back, and only then free its slot
+     */
+    @Test
+    public void testSlowBodyTimesOut() throws Exception {
+        CountingPageFetcher pages = new CountingPageFetcher();
+        HttpFetcher fetcher = new HttpFetcher(pages, 1, 1, Duration.ofSeconds(5), Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        CompletableFuture<HttpFetcher.Result> slow = fetcher.fetch(new URL(base + "slow"));
+        // waits for the only slot
+        CompletableFuture<HttpFetcher.Result> next = fetcher.fetch(new URL(base + "doc0.html"));
+
+        HttpFetcher.Result result = slow.get();
+        assertTrue(result.error instanceof java.net.http.HttpTimeoutException);
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(4).toNanos());
+
+        HttpFetcher.Result page = next.get();
+        assertNull(page.error);
+        fetcher.release(page);
+        assertEquals(0, pages.outstanding.get());
+        assertEquals(0, fetcher.inFlight());
+    }
+
+    /**
+     * counts the buffers handed out and not yet given back
+     */
+    private static class CountingPageFetcher extends PageFetcher {
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        @Override
+        public ByteBuffer acquire(int capacity) {
+            outstanding.incrementAndGet();
+            return super.acquire(capacity);
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+            outstanding.decrementAndGet();
+            super.release(buffer);
+        }
+    }
+}
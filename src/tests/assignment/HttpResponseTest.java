@@ -0,0 +1,242 @@
+package assignment;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes responses into memory and decodes them the way a client would
+ */
+public class HttpResponseTest {
+    // small buffers, so a modest body has to be streamed
+    private static final BufferPool pool = new BufferPool(256, 4);
+
+    @Test
+    public void smallBodyHasContentLength() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HttpResponse response = new HttpResponse(out, pool, true, false, false)) {
+            response.write("héllo ").write(42).write(' ').write("😀");
+        }
+
+        Decoded decoded = new Decoded(out.toByteArray());
+        assertEquals("HTTP/1.1 200 OK", decoded.statusLine);
+        assertNull(decoded.headers.get("transfer-encoding"));
+        assertNull(decoded.headers.get("content-encoding"));
+        assertEquals(Integer.toString(decoded.body.length), decoded.headers.get("content-length"));
+        assertEquals("héllo 42 😀", new String(decoded.body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void largeBodyIsChunkedAndGzipped() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String text = body();
+        try (HttpResponse response = new HttpResponse(out, pool, true, true, false)) {
+            response.write(text);
+        }
+
+        Decoded decoded = new Decoded(out.toByteArray());
+        assertEquals("chunked", decoded.headers.get("transfer-encoding"));
+        assertEquals("gzip", decoded.headers.get("content-encoding"));
+        assertNull(decoded.headers.get("content-length"));
+        assertTrue(decoded.chunks > 1);
+        assertEquals(text, gunzip(decoded.body));
+
+        // the gzip header, and a trailer with the uncompressed size
+        assertEquals(0x1f, decoded.body[0] & 0xff);
+        assertEquals(0x8b, decoded.body[1] & 0xff);
+        int n = decoded.body.length;
+        int size = (decoded.body[n - 4] & 0xff) | (decoded.body[n - 3] & 0xff) << 8
+                | (decoded.body[n - 2] & 0xff) << 16 | (decoded.body[n - 1] & 0xff) << 24;
+        assertEquals(text.getBytes(StandardCharsets.UTF_8).length, size);
+    }
+
+    @Test
+    public void flushSendsWhatIsWritten() throws IOException {
+        for (boolean gzip : new boolean[] {false, true}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (HttpResponse response = new HttpResponse(out, pool, true, gzip, false)) {
+                response.write("<p>first</p>");
+                response.flush();
+
+                // what has been sent so far can already be decoded, up to the end of its chunks
+                Decoded sent = new Decoded(out.toByteArray());
+                assertEquals("chunked", sent.headers.get("transfer-encoding"));
+                String prefix = gzip ? inflatePrefix(sent.body) : new String(sent.body, StandardCharsets.UTF_8);
+                assertEquals("<p>first</p>", prefix);
+
+                response.write("<p>second</p>");
+            }
+
+            Decoded decoded = new Decoded(out.toByteArray());
+            String text = gzip ? gunzip(decoded.body) : new String(decoded.body, StandardCharsets.UTF_8);
+            assertEquals("<p>first</p><p>second</p>", text);
+        }
+    }
+
+    @Test
+    public void http10IsNotChunked() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        String text = body();
+        try (HttpResponse response = new HttpResponse(out, pool, false, false, false)) {
+            response.write(text);
+        }
+
+        Decoded decoded = new Decoded(out.toByteArray());
+        assertEquals("HTTP/1.0 200 OK", decoded.statusLine);
+        assertNull(decoded.headers.get("transfer-encoding"));
+        assertNull(decoded.headers.get("content-length"));
+        assertEquals(text, new String(decoded.body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void headSendsOnlyHeaders() throws IOException {
+        for (String text : new String[] {"short", body()}) {
+            for (boolean gzip : new boolean[] {false, true}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try (HttpResponse response = new HttpResponse(out, pool, true, gzip, true)) {
+                    response.write(text);
+                }
+
+                Decoded decoded = new Decoded(out.toByteArray());
+                assertEquals(0, decoded.remaining);
+                assertEquals(gzip ? "gzip" : null, decoded.headers.get("content-encoding"));
+                assertTrue(decoded.headers.containsKey("content-length")
+                        || decoded.headers.containsKey("transfer-encoding"));
+            }
+        }
+    }
+
+    @Test
+    public void negotiatesGzip() {
+        assertTrue(WebServer.acceptsGzip("gzip"));
+        assertTrue(WebServer.acceptsGzip("deflate, GZIP;q=0.5, br"));
+        assertFalse(WebServer.acceptsGzip(null));
+        assertFalse(WebServer.acceptsGzip("deflate, br"));
+        assertFalse(WebServer.acceptsGzip("gzip;q=0"));
+        assertFalse(WebServer.acceptsGzip("gzip; q=0.000"));
+    }
+
+    /**
+     * @return a body several buffers long, with some characters that take more than a byte
+     */
+    private static String body() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            text.append("<li>résultat ").append(i).append(" ☃</li>\n");
+        }
+        return text.toString();
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        // reading to the end makes GZIPInputStream check the trailer's CRC and size
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(readAll(in), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * decompresses a gzip stream that has been flushed but not finished, so has no trailer
+     */
+    private static String inflatePrefix(byte[] body) throws IOException {
+        assertEquals(0x1f, body[0] & 0xff);
+        assertEquals(0x8b, body[1] & 0xff);
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(body, 10, body.length - 10);
+        byte[] buffer = new byte[4096];
+        try {
+            int n = inflater.inflate(buffer);
+            return new String(buffer, 0, n, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            bytes.write(buffer, 0, n);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * A response split into its status line, headers and body, with any chunked encoding undone
+     */
+    private static class Decoded {
+        String statusLine;
+        HashMap<String, String> headers = new HashMap<>();
+        byte[] body;
+        int chunks;
+        // bytes past the end of the body
+        int remaining;
+
+        Decoded(byte[] bytes) {
+            int at = 0;
+            int end = indexOf(bytes, at);
+            statusLine = new String(bytes, at, end - at, StandardCharsets.ISO_8859_1);
+            at = end + 2;
+            while ((end = indexOf(bytes, at)) != at) {
+                String header = new String(bytes, at, end - at, StandardCharsets.ISO_8859_1);
+                int colon = header.indexOf(':');
+                headers.put(header.substring(0, colon).toLowerCase(), header.substring(colon + 1).trim());
+                at = end + 2;
+            }
+            at += 2;
+
+            if ("chunked".equals(headers.get("transfer-encoding"))) {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                // a response that has only been flushed so far has no last chunk yet
+                while (at < bytes.length) {
+                    end = indexOf(bytes, at);
+                    int length = Integer.parseInt(new String(bytes, at, end - at, StandardCharsets.ISO_8859_1), 16);
+                    at = end + 2;
+                    if (length == 0) {
+                        assertEquals('\r', bytes[at]);
+                        assertEquals('\n', bytes[at + 1]);
+                        at += 2;
+                        break;
+                    }
+                    body.write(bytes, at, length);
+                    chunks++;
+                    at += length;
+                    assertEquals('\r', bytes[at]);
+                    assertEquals('\n', bytes[at + 1]);
+                    at += 2;
+                }
+                this.body = body.toByteArray();
+            } else if (headers.containsKey("content-length")) {
+                int length = Math.min(Integer.parseInt(headers.get("content-length")), bytes.length - at);
+                body = Arrays.copyOfRange(bytes, at, at + length);
+                at += length;
+            } else {
+                body = Arrays.copyOfRange(bytes, at, bytes.length);
+                at = bytes.length;
+            }
+            remaining = bytes.length - at;
+        }
+
+        private static int indexOf(byte[] bytes, int from) {
+            for (int i = from; i + 1 < bytes.length; i++) {
+                if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                    return i;
+                }
+            }
+            throw new AssertionError("missing CRLF after " + from);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package assignment;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes metrics out and reads them back the way Prometheus would
+ */
+public class MetricsTest {
+    // a metric name, its labels if any, and its value
+    private static final Pattern SAMPLE = Pattern.compile("([a-zA-Z_:][a-zA-Z0-9_:]*)(?:\\{(.*)\\})? (\\S+)");
+
+    @Test
+    public void exposition() throws IOException {
+        Metrics metrics = new Metrics();
+        LongAdder hits = metrics.counter("cache_requests_total", "Lookups in each cache", "result=\"hit\"");
+        LongAdder misses = metrics.counter("cache_requests_total", "Lookups in each cache", "result=\"miss\"");
+        hits.add(7);
+        misses.increment();
+        metrics.gauge("in_flight", "Line one\nand a \\ backslash", "", () -> 3);
+
+        String odd = "/a \"quoted\" \\path\nwith a newline";
+        Histogram plain = metrics.histogram("request_seconds", "Request time", "");
+        Histogram labelled = metrics.histogram("request_seconds", "Request time", Metrics.label("route", odd));
+        for (int i = 1; i <= 1000; i++) {
+            plain.record(i * 1000000L);
+            labelled.record(i * 2000000L);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (HttpResponse response = new HttpResponse(out, new BufferPool(1024, 2), false, false, false)) {
+            metrics.writeTo(response);
+        }
+        String text = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        String body = text.substring(text.indexOf("\r\n\r\n") + 4);
+
+        HashMap<String, String> types = new HashMap<>();
+        HashMap<String, String> helps = new HashMap<>();
+        // each sample, keyed by its name and parsed labels
+        HashMap<String, Double> samples = new HashMap<>();
+        for (String line : body.split("\n")) {
+            if (line.startsWith("# HELP ")) {
+                String[] parts = line.substring(7).split(" ", 2);
+                assertNull("HELP for " + parts[0] + " twice", helps.put(parts[0], parts[1]));
+            } else if (line.startsWith("# TYPE ")) {
+                String[] parts = line.substring(7).split(" ");
+                assertNull("TYPE for " + parts[0] + " twice", types.put(parts[0], parts[1]));
+            } else {
+                Matcher matcher = SAMPLE.matcher(line);
+                assertTrue(line, matcher.matches());
+                String name = matcher.group(1);
+                String family = name.replaceAll("_(sum|count)$", "");
+                assertTrue("no TYPE before " + line, types.containsKey(name) || types.containsKey(family));
+                Map<String, String> labels = parseLabels(matcher.group(2));
+                samples.put(name + labels, Double.parseDouble(matcher.group(3)));
+            }
+        }
+
+        assertEquals("counter", types.get("cache_requests_total"));
+        assertEquals("gauge", types.get("in_flight"));
+        assertEquals("summary", types.get("request_seconds"));
+        assertEquals("Line one\\nand a \\\\ backslash", helps.get("in_flight"));
+
+        assertEquals(7, samples.get("cache_requests_total" + labels("result", "hit")), 0);
+        assertEquals(1, samples.get("cache_requests_total" + labels("result", "miss")), 0);
+        assertEquals(3, samples.get("in_flight" + labels()), 0);
+
+        // recorded in nanoseconds, exported in seconds
+        assertEquals(0.5, samples.get("request_seconds" + labels("quantile", "0.5")), 0.5 * 0.03);
+        assertEquals(0.99, samples.get("request_seconds" + labels("quantile", "0.99")), 0.99 * 0.03);
+        assertEquals(500.5, samples.get("request_seconds_sum" + labels()), 1e-9);
+        assertEquals(1000, samples.get("request_seconds_count" + labels()), 0);
+
+        // the escaped label comes back as it was, alongside the quantile
+        assertEquals(1.0, samples.get("request_seconds" + labels("route", odd, "quantile", "0.5")), 0.03);
+        assertEquals(1.998, samples.get("request_seconds" + labels("route", odd, "quantile", "0.999")), 0.06);
+        assertEquals(1001, samples.get("request_seconds_sum" + labels("route", odd)), 1e-9);
+        assertEquals(1000, samples.get("request_seconds_count" + labels("route", odd)), 0);
+
+        // every quantile of both summaries, plus their sums and counts
+        assertEquals(2 + 1 + 2 * (4 + 2), samples.size());
+    }
+
+    /**
+     * parses name="value" pairs, undoing the escaping of \\, \" and \n in values
+     */
+    private static Map<String, String> parseLabels(String labels) {
+        LinkedHashMap<String, String> parsed = new LinkedHashMap<>();
+        if (labels == null) {
+            return parsed;
+        }
+
+        int at = 0;
+        while (at < labels.length()) {
+            int equals = labels.indexOf('=', at);
+            String name = labels.substring(at, equals);
+            assertEquals('"', labels.charAt(equals + 1));
+            StringBuilder value = new StringBuilder();
+            int i = equals + 2;
+            for (; labels.charAt(i) != '"'; i++) {
+                char c = labels.charAt(i);
+                if (c == '\\') {
+                    c = labels.charAt(++i);
+                    value.append(c == 'n' ? '\n' : c);
+                } else {
+                    assertNotEquals("unescaped newline", '\n', c);
+                    value.append(c);
+                }
+            }
+            parsed.put(name, value.toString());
+            at = i + 1;
+            if (at < labels.length()) {
+                assertEquals(',', labels.charAt(at));
+                at++;
+            }
+        }
+        return parsed;
+    }
+
+    private static Map<String, String> labels(String... pairs) {
+        LinkedHashMap<String, String> labels = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            labels.put(pairs[i], pairs[i + 1]);
+        }
+        return labels;
+    }
+}
@@ -0,0 +1,125 @@
+package assignment;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.junit.Assert.*;
+
+public class NearDuplicateDetectorTest {
+    private static final int PAGES = 100;
+    private static final int PAGE_WORDS = 1000;
+
+    /**
+     * pages with a few words changed should nearly always be found, and only ever as a copy of
+     * the page they came from
+     */
+    @Test
+    public void findsPagesDifferingByAFewWords() {
+        Random random = new Random(1);
+        NearDuplicateDetector<Integer> detector = new NearDuplicateDetector<>();
+        List<List<String>> pages = new ArrayList<>();
+        for (int page = 0; page < PAGES; page++) {
+            List<String> words = randomWords(random, PAGE_WORDS);
+            pages.add(words);
+            assertNull(detector.findOrAdd(NearDuplicateDetector.simHash(words), page, confirm(pages, words)));
+        }
+
+        int found = 0;
+        for (int page = 0; page < PAGES; page++) {
+            List<String> copy = new ArrayList<>(pages.get(page));
+            assertEquals(Integer.valueOf(page),
+                    detector.findOrAdd(NearDuplicateDetector.simHash(copy), -1, confirm(pages, copy)));
+
+            for (int i = 0; i < 3; i++) {
+                copy.set(random.nextInt(copy.size()), "changed" + random.nextInt(1000));
+            }
+            Integer original = detector.findOrAdd(NearDuplicateDetector.simHash(copy), -1, confirm(pages, copy));
+            if (original != null) {
+                assertEquals(page, original.intValue());
+                found++;
+            }
+        }
+
+        // a few edits can still move a fingerprint more than MAX_DISTANCE bits
+        assertTrue("found " + found, found >= PAGES * 9 / 10);
+        assertEquals(PAGES + PAGES - found, detector.size());
+    }
+
+    /**
+     * a page whose fingerprint shares a band with another's, or is even within MAX_DISTANCE bits
+     * of it, is only a duplicate if its words say so
+     */
+    @Test
+    public void ignoresUnrelatedPagesInTheSameBand() {
+        Random random = new Random(2);
+        NearDuplicateDetector<Integer> detector = new NearDuplicateDetector<>();
+        List<List<String>> pages = new ArrayList<>();
+        List<String> first = randomWords(random, PAGE_WORDS);
+        pages.add(first);
+        long fingerprint = NearDuplicateDetector.simHash(first);
+        detector.findOrAdd(fingerprint, 0, confirm(pages, first));
+
+        // close enough to be compared, but nothing alike
+        List<String> unrelated = randomWords(random, PAGE_WORDS);
+        pages.add(unrelated);
+        assertNull(detector.findOrAdd(fingerprint ^ 0b10101, 1, confirm(pages, unrelated)));
+
+        // the same low band, but far apart elsewhere, so never even compared
+        boolean[] compared = {false};
+        assertNull(detector.findOrAdd(fingerprint ^ 0x0f0f0f0f_0f0f0000L, 2, (Integer doc) -> compared[0] = true));
+        assertFalse(compared[0]);
+        assertEquals(3, detector.size());
+    }
+
+    /**
+     * pages are near-duplicates when at least MIN_SIMILARITY of their distinct words are shared
+     */
+    @Test
+    public void similarityThreshold() {
+        List<String> ten = Arrays.asList("a", "b", "c", "d", "e", "f", "g", "h", "i", "j");
+        List<String> eight = ten.subList(0, 8);
+        List<String> eightAndOne = new ArrayList<>(eight);
+        eightAndOne.add("k");
+
+        assertEquals(1.0, NearDuplicateDetector.similarity(ten, ten), 0);
+        // repeated words only count once
+        assertEquals(1.0, NearDuplicateDetector.similarity(ten, concat(ten, ten)), 0);
+        assertEquals(0.8, NearDuplicateDetector.similarity(ten, eight), 1e-12);
+        assertEquals(8.0 / 11, NearDuplicateDetector.similarity(ten, eightAndOne), 1e-12);
+
+        // with the same fingerprint, so only the words decide
+        List<List<String>> pages = new ArrayList<>();
+        pages.add(ten);
+        NearDuplicateDetector<Integer> detector = new NearDuplicateDetector<>();
+        detector.findOrAdd(42, 0, confirm(pages, ten));
+        assertEquals(Integer.valueOf(0), detector.findOrAdd(42, 1, confirm(pages, eight)));
+        assertNull(detector.findOrAdd(42, 1, confirm(pages, eightAndOne)));
+    }
+
+    /**
+     * confirms a match the way CrawlingMarkupHandler does, by comparing the pages' words
+     */
+    private static Predicate<Integer> confirm(List<List<String>> pages, List<String> words) {
+        return (Integer page) -> NearDuplicateDetector.similarity(words, pages.get(page))
+                >= NearDuplicateDetector.MIN_SIMILARITY;
+    }
+
+    private static List<String> randomWords(Random random, int count) {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            words.add("w" + random.nextInt(100000));
+        }
+        return words;
+    }
+
+    private static List<String> concat(List<String> a, List<String> b) {
+        List<String> both = new ArrayList<>(a);
+        both.addAll(b);
+        return both;
+    }
+}
@@ -0,0 +1,165 @@
+package assignment;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.*;
+
+public class PageRankTest {
+    /**
+     * Pages 0 and 1 link to each other, 2 links to both, and 3 links nowhere. Nothing links to 2
+     * or 3, so each gets only the base rank c = (1 - d) / n + d * c / n, which is
+     * (1 - d) / (n - d) = 1/21. Pages 0 and 1 get the rest, 19/42 each.
+     */
+    @Test
+    public void smallGraphByHand() {
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        builder.add(0, new int[] {1}, 1);
+        builder.add(1, new int[] {0}, 1);
+        builder.add(2, new int[] {1, 0, 1, 2}, 4);
+        LinkGraph graph = builder.build(4);
+
+        assertEquals(4, graph.size());
+        assertEquals(2, graph.outDegree(2));
+        assertEquals(0, graph.outDegree(3));
+
+        float[] rank = PageRank.compute(graph);
+        assertEquals(19.0 / 42, rank[0], 1e-6);
+        assertEquals(19.0 / 42, rank[1], 1e-6);
+        assertEquals(1.0 / 21, rank[2], 1e-6);
+        assertEquals(1.0 / 21, rank[3], 1e-6);
+    }
+
+    /**
+     * on a random graph with plenty of dangling pages, the ranks should add up to 1, and stop
+     * changing once they've converged
+     */
+    @Test
+    public void convergesAndSumsToOne() {
+        LinkGraph graph = randomGraph(new Random(1), 3000, 40);
+
+        float[] rank = PageRank.compute(graph);
+        assertEquals(1.0, sum(rank), 1e-5);
+
+        // one iteration from uniform isn't there yet, but going on past the tolerance changes nothing
+        float[] once = PageRank.compute(graph, PageRank.DAMPING, 0, 1);
+        assertEquals(1.0, sum(once), 1e-5);
+        assertTrue(distance(once, rank) > 1e-3);
+        float[] longer = PageRank.compute(graph, PageRank.DAMPING, 0, PageRank.MAX_ITERATIONS * 2);
+        assertTrue(distance(longer, rank) < 1e-6);
+
+        // with no damping every page is a random jump away, so every rank is the same
+        float[] uniform = PageRank.compute(graph, 0, PageRank.TOLERANCE, PageRank.MAX_ITERATIONS);
+        for (float r : uniform) {
+            assertEquals(1.0 / graph.size(), r, 1e-9);
+        }
+    }
+
+    /**
+     * the VByte-compressed adjacency should decode to exactly the links added, without self-links
+     * or repeats, including gaps too big for one byte, and survive being saved with the index
+     */
+    @Test
+    public void adjacencyRoundTrips() throws Exception {
+        Random random = new Random(2);
+        int pages = 40000;
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        List<TreeSet<Integer>> expected = randomLinks(random, pages, 30);
+        for (int page = 0; page < pages; page++) {
+            if (expected.get(page).isEmpty()) {
+                // pages with no links can be skipped
+                continue;
+            }
+            int[] targets = new int[expected.get(page).size() * 2 + 1];
+            int count = 0;
+            for (int target : expected.get(page)) {
+                targets[count++] = target;
+                targets[count++] = target;
+            }
+            targets[count++] = page;
+            builder.add(page, targets, count);
+        }
+        LinkGraph graph = builder.build(pages);
+        assertAdjacency(expected, graph);
+
+        WebIndex index = new WebIndex();
+        index.addDocument("http://example.com/", null, 0, Collections.singletonList("page"));
+        index.setLinkGraph(graph, PageRank.compute(graph));
+        File file = File.createTempFile("pagerank", ".db");
+        try {
+            index.save(file.getPath());
+            WebIndex loaded = (WebIndex) Index.load(file.getPath());
+            assertAdjacency(expected, loaded.getLinkGraph());
+            assertEquals(index.getStaticScore(index.getPage(0)), loaded.getStaticScore(loaded.getPage(0)), 0);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertAdjacency(List<TreeSet<Integer>> expected, LinkGraph graph) {
+        assertEquals(expected.size(), graph.size());
+        int[] out = new int[graph.maxOutDegree()];
+        for (int page = 0; page < expected.size(); page++) {
+            int degree = graph.outLinks(page, out);
+            assertEquals(expected.get(page).size(), graph.outDegree(page));
+            int[] want = expected.get(page).stream().mapToInt(Integer::intValue).toArray();
+            assertArrayEquals(want, Arrays.copyOf(out, degree));
+        }
+    }
+
+    /**
+     * links from each page to a few others, some near and some far, with every fifth page and
+     * the last few linking nowhere
+     */
+    private static List<TreeSet<Integer>> randomLinks(Random random, int pages, int maxDegree) {
+        List<TreeSet<Integer>> links = new ArrayList<>();
+        for (int page = 0; page < pages; page++) {
+            links.add(new TreeSet<>());
+            if (page % 5 == 0 || page >= pages - 3) {
+                continue;
+            }
+            int degree = 1 + random.nextInt(maxDegree);
+            for (int i = 0; i < degree; i++) {
+                int target = random.nextBoolean() ? random.nextInt(pages)
+                        : Math.floorMod(page + random.nextInt(200) - 100, pages);
+                if (target != page) {
+                    links.get(page).add(target);
+                }
+            }
+        }
+        return links;
+    }
+
+    private static LinkGraph randomGraph(Random random, int pages, int maxDegree) {
+        List<TreeSet<Integer>> links = randomLinks(random, pages, maxDegree);
+        LinkGraph.Builder builder = new LinkGraph.Builder();
+        for (int page = 0; page < pages; page++) {
+            int[] targets = links.get(page).stream().mapToInt(Integer::intValue).toArray();
+            builder.add(page, targets, targets.length);
+        }
+        return builder.build(pages);
+    }
+
+    private static double sum(float[] values) {
+        double sum = 0;
+        for (float value : values) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    private static double distance(float[] a, float[] b) {
+        double distance = 0;
+        for (int i = 0; i < a.length; i++) {
+            distance += Math.abs(a[i] - b[i]);
+        }
+        return distance;
+    }
+}
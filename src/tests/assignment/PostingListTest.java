@@ -0,0 +1,126 @@
+package assignment;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PostingListTest {
+    private static final int NUM_DOCS = 1000;
+
+    private static PostingList list;
+    // the doc IDs in the list, and where the word is on each
+    private static int[] docs;
+    private static int[][] positions;
+
+    @BeforeClass
+    public static void setUp() {
+        Random random = new Random(1);
+        list = new PostingList();
+        docs = new int[NUM_DOCS];
+        positions = new int[NUM_DOCS][];
+
+        int doc = -1;
+        for (int i = 0; i < NUM_DOCS; i++) {
+            // mostly small gaps, with the odd large one so some gaps take several bytes
+            doc += 1 + (random.nextInt(10) == 0 ? random.nextInt(100000) : random.nextInt(5));
+            docs[i] = doc;
+
+            // about half the pages have the word once, as most pages do
+            int count = random.nextBoolean() ? 1 : 2 + random.nextInt(300);
+            positions[i] = new int[count];
+            int position = random.nextInt(50);
+            for (int j = 0; j < count; j++) {
+                positions[i][j] = position;
+                position += 1 + random.nextInt(200);
+            }
+            list.add(doc, positions[i], count);
+        }
+    }
+
+    @Test
+    public void nextDocDecodesEverything() {
+        PostingList.Cursor cursor = list.cursor();
+        int[] out = new int[400];
+        for (int i = 0; i < NUM_DOCS; i++) {
+            assertEquals(docs[i], cursor.nextDoc());
+            assertEquals(positions[i].length, cursor.frequency());
+            assertEquals(positions[i].length, cursor.positions(out));
+            assertArrayEquals(positions[i], Arrays.copyOf(out, positions[i].length));
+        }
+        assertEquals(PostingList.NO_MORE_DOCS, cursor.nextDoc());
+
+        int[] all = new int[list.size()];
+        list.docs(all);
+        assertArrayEquals(docs, all);
+    }
+
+    @Test
+    public void advanceSkipsAcrossBlocks() {
+        Random random = new Random(2);
+        int[] out = new int[400];
+        for (int trial = 0; trial < 100; trial++) {
+            PostingList.Cursor cursor = list.cursor();
+            int i = 0;
+            while (true) {
+                i += random.nextInt(2 * PostingList.BLOCK_SIZE);
+                if (i >= NUM_DOCS) {
+                    assertEquals(PostingList.NO_MORE_DOCS, cursor.advance(docs[NUM_DOCS - 1] + 1));
+                    break;
+                }
+
+                // a doc ID that isn't in the list moves to the next one that is
+                int target = random.nextBoolean() ? docs[i] : docs[i] - 1;
+                if (i > 0 && target == docs[i - 1]) {
+                    target = docs[i];
+                }
+                assertEquals(docs[i], cursor.advance(target));
+                assertEquals(positions[i].length, cursor.positions(out));
+                assertEquals(positions[i][positions[i].length - 1], out[positions[i].length - 1]);
+            }
+        }
+    }
+
+    @Test
+    public void storedViewMatches() {
+        // written after another record, so the view doesn't start at the buffer's start
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8 + list.recordSize()).order(ByteOrder.nativeOrder());
+        buffer.putLong(-1);
+        list.writeTo(buffer);
+        assertEquals(buffer.capacity(), buffer.position());
+        PostingList view = PostingList.view(buffer.position(8));
+
+        assertEquals(NUM_DOCS, view.size());
+        PostingList.Cursor cursor = view.cursor();
+        int[] out = new int[400];
+        for (int i = 0; i < NUM_DOCS; i += 7) {
+            assertEquals(docs[i], cursor.advance(docs[i]));
+            assertEquals(positions[i].length, cursor.positions(out));
+            assertArrayEquals(positions[i], Arrays.copyOf(out, positions[i].length));
+        }
+        assertEquals(PostingList.NO_MORE_DOCS, cursor.advance(docs[NUM_DOCS - 1] + 1));
+
+        int[] all = new int[view.size()];
+        view.docs(all);
+        assertArrayEquals(docs, all);
+    }
+
+    @Test
+    public void positionsStopAtMax() {
+        PostingList.Cursor cursor = list.cursor();
+        int i = 0;
+        while (positions[i].length < 10) {
+            i++;
+        }
+        cursor.advance(docs[i]);
+
+        int[] out = new int[400];
+        int count = cursor.positions(out, positions[i][4]);
+        assertEquals(5, count);
+        assertEquals(positions[i][4], out[4]);
+    }
+}
@@ -0,0 +1,46 @@
+package assignment;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SnippetBuilderTest {
+    /**
+     * snippets are plain text, with offsets that pick out exactly the query's words, and the same
+     * snippet rendered as HTML has them in bold
+     */
+    @Test
+    public void plainTextWithHighlights() {
+        List<String> words = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            words.add("w" + i);
+        }
+        words.set(50, "fox");
+        words.set(52, "dog");
+        WebIndex index = new WebIndex();
+        index.addDocument("http://example.com/0.html", null, 0, words);
+        index.addDocument("http://example.com/1.html", null, 0, Arrays.asList("the", "fox"));
+        SnippetBuilder snippets = new SnippetBuilder(index);
+
+        SnippetBuilder.Snippet snippet = snippets.build(index.getPage(0), Arrays.asList("fox", "dog"));
+        assertTrue(snippet.text, snippet.text.startsWith("… w46 w47 w48 w49 fox w51 dog w53"));
+        assertTrue(snippet.text, snippet.text.endsWith(" …"));
+        assertFalse(snippet.text.contains("<"));
+        assertEquals(4, snippet.highlights.length);
+        assertEquals("fox", snippet.text.substring(snippet.highlights[0], snippet.highlights[1]));
+        assertEquals("dog", snippet.text.substring(snippet.highlights[2], snippet.highlights[3]));
+        assertTrue(snippet.toHtml(), snippet.toHtml().startsWith("&hellip; w46 w47 w48 w49 <b>fox</b> w51 <b>dog</b> w53"));
+        assertTrue(snippet.toHtml(), snippet.toHtml().endsWith(" &hellip;"));
+
+        // a whole short page, with nothing cut off
+        snippet = snippets.build(index.getPage(1), Collections.singletonList("fox"));
+        assertEquals("the fox", snippet.text);
+        assertArrayEquals(new int[] {4, 7}, snippet.highlights);
+        assertEquals("the <b>fox</b>", snippet.toHtml());
+    }
+}
@@ -0,0 +1,72 @@
+package assignment;
+
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpellCheckerTest {
+    @Test
+    public void findsNearestCommonestWord() {
+        Random random = new Random(1);
+        WebIndex index = new WebIndex();
+        for (int doc = 0; doc < 200; doc++) {
+            String[] words = new String[40];
+            for (int i = 0; i < words.length; i++) {
+                // a few common words, and many rare ones, some longer than the prefix used
+                int rank = random.nextInt(2) == 0 ? random.nextInt(20) : random.nextInt(5000);
+                words[i] = Integer.toString(rank * 7919 + 100000, 26).replace('0', 'z')
+                        + (rank % 3 == 0 ? "suffixes" : "");
+            }
+            index.addDocument("http://example.com/" + doc + ".html", null, 0, Arrays.asList(words));
+        }
+
+        SpellChecker checker = index.getSpellChecker();
+        for (int trial = 0; trial < 500; trial++) {
+            String word = index.getTerm(random.nextInt(index.getTermCount()));
+            assertEquals(word, checker.correct(word));
+
+            // up to three edits, so some have nothing near enough
+            StringBuilder typo = new StringBuilder(word);
+            for (int edits = random.nextInt(4); edits > 0; edits--) {
+                int at = random.nextInt(typo.length());
+                switch (random.nextInt(3)) {
+                    case 0:
+                        typo.deleteCharAt(at);
+                        break;
+                    case 1:
+                        typo.insert(at, (char) ('a' + random.nextInt(26)));
+                        break;
+                    default:
+                        typo.setCharAt(at, (char) ('a' + random.nextInt(26)));
+                }
+            }
+            String misspelled = typo.toString();
+
+            // the nearest word, and of those the commonest, found by looking at every word
+            String expected = null;
+            int bestDistance = SpellChecker.MAX_DISTANCE + 1, bestFrequency = 0;
+            for (int term = 0; term < index.getTermCount(); term++) {
+                String candidate = index.getTerm(term);
+                int distance = SpellChecker.distance(misspelled, candidate, SpellChecker.MAX_DISTANCE);
+                int frequency = index.getDocFrequency(candidate);
+                if (distance <= SpellChecker.MAX_DISTANCE && (distance < bestDistance ||
+                        (distance == bestDistance && frequency > bestFrequency))) {
+                    expected = candidate;
+                    bestDistance = distance;
+                    bestFrequency = frequency;
+                }
+            }
+
+            String corrected = checker.correct(misspelled);
+            if (expected == null) {
+                assertNull(misspelled, corrected);
+            } else {
+                assertNotNull(misspelled, corrected);
+                assertEquals(misspelled, bestDistance, SpellChecker.distance(misspelled, corrected, SpellChecker.MAX_DISTANCE));
+                assertEquals(misspelled, bestFrequency, index.getDocFrequency(corrected));
+            }
+        }
+    }
+}
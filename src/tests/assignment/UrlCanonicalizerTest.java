@@ -0,0 +1,73 @@
+package assignment;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+public class UrlCanonicalizerTest {
+    private static final URI BASE = URI.create("http://Example.COM:80/a/b/page.html?x=1#top");
+
+    /**
+     * every way of writing the same link should come out the same
+     */
+    @Test
+    public void testAliasesMatch() {
+        String expected = "http://example.com/a/c/doc.html?p=1&q=2";
+        assertEquals(expected, UrlCanonicalizer.canonicalize(BASE, "../c/doc.html?q=2&p=1"));
+        assertEquals(expected, UrlCanonicalizer.canonicalize(BASE, "./../c/./doc.html?p=1&q=2#section"));
+        assertEquals(expected, UrlCanonicalizer.canonicalize(BASE, "/a/b/../../a/c/doc.html?p=1&q=2"));
+        assertEquals(expected, UrlCanonicalizer.canonicalize(BASE, "HTTP://EXAMPLE.com:80/a/c/doc.html?q=2&p=1"));
+        assertEquals(expected, UrlCanonicalizer.canonicalize(null, "http://example.com/a/c/../c/doc.html?p=1&q=2&"));
+    }
+
+    /**
+     * things that aren't the default port or the same path should stay different
+     */
+    @Test
+    public void testDistinctURLs() {
+        assertEquals("https://example.com:8443/", UrlCanonicalizer.canonicalize(null, "https://example.com:8443"));
+        assertEquals("https://example.com/", UrlCanonicalizer.canonicalize(null, "https://example.com:443/"));
+        assertEquals("http://example.com/doc.html", UrlCanonicalizer.canonicalize(BASE, "/../../doc.html"));
+        assertEquals("http://example.com/a/b/a%20b.html", UrlCanonicalizer.canonicalize(BASE, "a b.html"));
+        assertEquals("http://example.com/a/b/%C3%A9.html", UrlCanonicalizer.canonicalize(BASE, "%c3%a9.html"));
+    }
+
+    /**
+     * file URLs should come out the same as URL.toString() gives, and links that can't be fetched
+     * should be rejected
+     */
+    @Test
+    public void testFileAndUnsupportedURLs() throws Exception {
+        URI base = new URL("file:///tmp/testhtml/index.html").toURI();
+        String doc = UrlCanonicalizer.canonicalize(base, "sub/../doc1.html#x");
+        assertEquals("file:/tmp/testhtml/doc1.html", doc);
+        assertEquals(new URL("file:///tmp/testhtml/doc1.html").toString(), doc);
+
+        assertNull(UrlCanonicalizer.canonicalize(BASE, "mailto:someone@example.com"));
+        assertNull(UrlCanonicalizer.canonicalize(BASE, "javascript:void(0)"));
+        assertNull(UrlCanonicalizer.canonicalize(BASE, "ftp://example.com/doc.html"));
+        assertNull(UrlCanonicalizer.canonicalize(BASE, "http://[bad"));
+    }
+
+    /**
+     * fingerprints of different URLs should differ, and the seen map should notice repeats
+     */
+    @Test
+    public void testFingerprints() {
+        LongIntHashMap seen = new LongIntHashMap(16);
+        for (int i = 0; i < 100000; i++) {
+            assertEquals(-1, seen.putIfAbsent(UrlCanonicalizer.fingerprint("http://example.com/doc" + i + ".html"), i));
+        }
+        for (int i = 0; i < 100000; i += 7) {
+            assertEquals(i, seen.putIfAbsent(UrlCanonicalizer.fingerprint("http://example.com/doc" + i + ".html"), 0));
+            assertEquals(i, seen.get(UrlCanonicalizer.fingerprint("http://example.com/doc" + i + ".html")));
+        }
+        assertEquals(100000, seen.size());
+        assertEquals(-1, seen.get(0));
+        assertEquals(-1, seen.putIfAbsent(0, 7));
+        assertEquals(7, seen.get(0));
+    }
+}
@@ -302,4 +302,153 @@ public class WebQueryEngineTest {
             assertTrue(part1 || part2);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * test that a batch with overlapping queries gives the same answers as asking one at a time
+     */
+    @Test
+    public void testBatchMatchesIndividualQueries() {
+        getOperands(3);
+        List<String> queries = Arrays.asList(
+                operands[0],
+                operands[0] + " & " + operands[1],
+                operands[1] + " & " + operands[0],
+                "(" + operands[0] + " & " + operands[1] + ") | " + operands[2],
+                "!" + operands[2],
+                "\"A quick brown fox jumped over the lazy dog\"",
+                operands[0]);
+
+        List<Collection<Page>> results = engine.queryBatch(queries);
+        assertEquals(queries.size(), results.size());
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(new HashSet<>(engine.query(queries.get(i))), new HashSet<>(results.get(i)));
+        }
+    }
+
+    /**
+     * test near/k and onear/k against pages where we know how far apart the words are
+     */
+    @Test
+    public void testNearQuery() {
+        WebIndex index = new WebIndex();
+        List<List<String>> pages = Arrays.asList(
+                Arrays.asList("fox", "x", "x", "dog"),
+                Arrays.asList("dog", "fox", "x"),
+                Arrays.asList("fox", "x", "x", "x", "x", "x", "dog"),
+                Arrays.asList("fox", "fox", "x", "fox", "cat"));
+        for (int i = 0; i < pages.size(); i++) {
+            index.addDocument("http://example.com/" + i + ".html", null, 0, pages.get(i));
+        }
+        WebQueryEngine near = WebQueryEngine.fromIndex(index);
+
+        assertEquals(docs(0, 1), pageNumbers(near.query("fox NEAR/3 dog")));
+        assertEquals(docs(0, 1), pageNumbers(near.query("dog near/3 fox")));
+        assertEquals(docs(0, 1, 2), pageNumbers(near.query("fox near/6 dog")));
+        assertEquals(docs(0), pageNumbers(near.query("fox onear/3 dog")));
+        assertEquals(docs(1), pageNumbers(near.query("dog onear/3 fox")));
+        assertEquals(docs(0, 2), pageNumbers(near.query("fox onear/6 dog")));
+
+        // the same word twice needs two of it
+        assertEquals(docs(3), pageNumbers(near.query("fox near/1 fox")));
+        assertEquals(docs(0, 2), pageNumbers(near.query("x near/1 x")));
+
+        // near binds tighter than & and |, and works inside brackets and under !
+        assertEquals(docs(1), pageNumbers(near.query("fox near/3 dog & !fox onear/3 dog")));
+        assertEquals(docs(0, 1, 3), pageNumbers(near.query("cat | fox near/3 dog")));
+        assertEquals(docs(2, 3), pageNumbers(near.query("fox & !(fox near/3 dog)")));
+
+        // only single words have positions
+        assertEquals(docs(), pageNumbers(near.query("\"fox x\" near/3 dog")));
+
+        // and the operator isn't a word to highlight
+        assertEquals(new HashSet<>(Arrays.asList("x", "dog")), near.queryTerms("x near/2 dog"));
+
+        List<String> queries = Arrays.asList("fox near/3 dog", "dog near/3 fox", "fox onear/3 dog", "dog onear/3 fox");
+        List<Collection<Page>> results = near.queryBatch(queries);
+        for (int i = 0; i < queries.size(); i++) {
+            assertEquals(new HashSet<>(near.query(queries.get(i))), new HashSet<>(results.get(i)));
+        }
+    }
+
+    /**
+     * test that title:, heading: and anchor: only match words in that part of a page, and that a
+     * match in a title counts for more than the same word in a page's body
+     */
+    @Test
+    public void testFieldQueries() {
+        WebIndex index = new WebIndex();
+        // titles and headings are part of the body too; anchor text comes from other pages
+        index.addDocument("http://example.com/0.html", "fox", 0, Arrays.asList("fox", "runs"));
+        index.addFieldWords(0, Field.TITLE, Arrays.asList("fox"));
+        index.addDocument("http://example.com/1.html", null, 0, Arrays.asList("the", "fox"));
+        index.addDocument("http://example.com/2.html", null, 0, Arrays.asList("dog", "fox"));
+        index.addFieldWords(2, Field.HEADING, Arrays.asList("fox"));
+        index.addDocument("http://example.com/3.html", null, 0, Arrays.asList("cat"));
+        index.addFieldWords(3, Field.ANCHOR, Arrays.asList("fox", "cat"));
+        index.addDocument("http://example.com/4.html", null, 0, Arrays.asList("fox", "fox", "fox"));
+        WebQueryEngine fields = WebQueryEngine.fromIndex(index);
+
+        assertEquals(docs(0), pageNumbers(fields.query("title:fox")));
+        assertEquals(docs(2), pageNumbers(fields.query("heading:fox")));
+        assertEquals(docs(3), pageNumbers(fields.query("anchor:fox")));
+        assertEquals(docs(0, 1, 2, 4), pageNumbers(fields.query("fox")));
+        assertEquals(docs(0, 1, 2, 4), pageNumbers(fields.query("body:fox")));
+        assertEquals(docs(), pageNumbers(fields.query("title:dog")));
+
+        // fields combine with the other operators like any word
+        assertEquals(docs(0, 3), pageNumbers(fields.query("title:fox | anchor:fox")));
+        assertEquals(docs(1, 2, 4), pageNumbers(fields.query("fox & !title:fox")));
+        assertEquals(docs(3), pageNumbers(fields.query("cat anchor:cat")));
+
+        // the title match ranks first, even over a page with the word in its body three times;
+        // a heading is worth less than a title but more than that
+        List<Integer> order = new ArrayList<>();
+        for (Page page : fields.query("fox")) {
+            order.addAll(pageNumbers(Collections.singletonList(page)));
+        }
+        assertEquals(Arrays.asList(0, 2, 4, 1), order);
+
+        // anchor text can arrive for earlier pages, and after the field has been searched
+        index.addFieldWord(1, Field.ANCHOR, "fox", 2);
+        index.addFieldWord(0, Field.ANCHOR, "wolf", 1);
+        assertEquals(docs(1, 3), pageNumbers(fields.query("anchor:fox")));
+        assertEquals(docs(0), pageNumbers(fields.query("anchor:wolf")));
+        assertEquals(docs(), pageNumbers(fields.query("wolf")));
+        PostingList.Cursor cursor = index.getPostings(Field.ANCHOR, "fox").cursor();
+        assertEquals(1, cursor.nextDoc());
+        assertEquals(2, cursor.frequency());
+        assertEquals(3, cursor.nextDoc());
+        assertEquals(1, cursor.frequency());
+        assertEquals(PostingList.NO_MORE_DOCS, cursor.nextDoc());
+
+        // fields move off the heap with everything else, and rank the same once they have
+        index.moveOffHeap();
+        assertEquals(docs(0), pageNumbers(fields.query("title:fox")));
+        assertEquals(docs(1, 3), pageNumbers(fields.query("anchor:fox")));
+        assertEquals(docs(0), pageNumbers(fields.query("anchor:wolf")));
+        assertEquals(docs(), pageNumbers(fields.query("heading:wolf")));
+        assertNull(index.getPostings(Field.TITLE, "wolf"));
+        cursor = index.getPostings(Field.ANCHOR, "fox").cursor();
+        assertEquals(1, cursor.advance(1));
+        assertEquals(2, cursor.frequency());
+        // with the word twice in links to it, page 1 now outranks the title match
+        order.clear();
+        for (Page page : fields.query("fox")) {
+            order.addAll(pageNumbers(Collections.singletonList(page)));
+        }
+        assertEquals(Arrays.asList(1, 0, 2, 4), order);
+    }
+
+    private static Set<Integer> docs(Integer... docs) {
+        return new HashSet<>(Arrays.asList(docs));
+    }
+
+    private static Set<Integer> pageNumbers(Collection<Page> pages) {
+        Set<Integer> numbers = new HashSet<>();
+        for (Page page : pages) {
+            String url = page.getURL().toString();
+            numbers.add(Integer.parseInt(url.substring(url.lastIndexOf('/') + 1, url.indexOf(".html"))));
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,80 @@
+package assignment;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The bitmap SetKernels done with the Vector API, at the widest vectors the CPU has (AVX2 or
+ * AVX-512 on x86-64, NEON or SVE on AArch64). This has to be compiled and run with
+ * --add-modules jdk.incubator.vector; SetKernels loads it by name, so nothing else depends on it.
+ * Bits are still counted with Long.bitCount, which the JIT turns into a single instruction, as
+ * JDK 17's Vector API can't count bits lane by lane.
+ *
+ * Sorted arrays are still intersected by SetKernels' merge. Comparing a block of one array with
+ * every value in a block of the other, a vector at a time, was tried, and measured with 256- and
+ * 512-bit vectors at about 1.4 times slower than the branchless merge: it compares every pair of
+ * values in the two blocks, which is many times the work of merging them.
+ */
+public class VectorSetKernels extends SetKernels {
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+
+    @Override
+    public String getName() {
+        return "vector (" + LONGS.vectorBitSize() + "-bit)";
+    }
+
+    @Override
+    public int and(long[] a, long[] b, long[] out) {
+        int i = 0, count = 0;
+        for (int bound = LONGS.loopBound(a.length); i < bound; i += LONGS.length()) {
+            LongVector.fromArray(LONGS, a, i).and(LongVector.fromArray(LONGS, b, i)).intoArray(out, i);
+            count += count(out, i);
+        }
+        for (; i < a.length; i++) {
+            out[i] = a[i] & b[i];
+            count += Long.bitCount(out[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public int or(long[] a, long[] b, long[] out) {
+        int i = 0, count = 0;
+        for (int bound = LONGS.loopBound(a.length); i < bound; i += LONGS.length()) {
+            LongVector.fromArray(LONGS, a, i).or(LongVector.fromArray(LONGS, b, i)).intoArray(out, i);
+            count += count(out, i);
+        }
+        for (; i < a.length; i++) {
+            out[i] = a[i] | b[i];
+            count += Long.bitCount(out[i]);
+        }
+        return count;
+    }
+
+    @Override
+    public int andNot(long[] a, long[] b, long[] out) {
+        int i = 0, count = 0;
+        for (int bound = LONGS.loopBound(a.length); i < bound; i += LONGS.length()) {
+            LongVector.fromArray(LONGS, a, i).lanewise(VectorOperators.AND_NOT, LongVector.fromArray(LONGS, b, i))
+                    .intoArray(out, i);
+            count += count(out, i);
+        }
+        for (; i < a.length; i++) {
+            out[i] = a[i] & ~b[i];
+            count += Long.bitCount(out[i]);
+        }
+        return count;
+    }
+
+    /**
+     * counts the bits in one vector's worth of a bitmap, while it's still in the cache
+     */
+    private static int count(long[] words, int from) {
+        int count = 0;
+        for (int i = from; i < from + LONGS.length(); i++) {
+            count += Long.bitCount(words[i]);
+        }
+        return count;
+    }
+}